@@ -0,0 +1,141 @@
+package org.jenkinsci.plugins.lucene.search;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.jenkinsci.plugins.lucene.search.databackend.ConsoleChunker;
+import org.jenkinsci.plugins.lucene.search.databackend.SearchBackend;
+import org.jenkinsci.plugins.lucene.search.databackend.SearchBackendManager;
+
+/**
+ * Indexes the console of running builds so that a build hanging on a known error can be found before it
+ * completes. The console is cut at line ends into chunks of at most {@link ConsoleChunker#MAX_CHUNK_CHARS} (32K)
+ * chars; only the newest, still growing, chunk is re-indexed on every run, so the cost per build is bounded by the
+ * chunk size and not by the length of the log.
+ */
+@Extension
+public class ConsoleTailer extends PeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(ConsoleTailer.class);
+
+    static final int CHUNK_SIZE = ConsoleChunker.MAX_CHUNK_CHARS;
+
+    private final ConcurrentMap<Run<?, ?>, TailState> running = new ConcurrentHashMap<>();
+
+    @Inject
+    SearchBackendManager searchBackendManager;
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.SECONDS.toMillis(15);
+    }
+
+    public void track(Run<?, ?> run) {
+        running.putIfAbsent(run, new TailState());
+    }
+
+    /**
+     * Stops tailing the build. Waits for a tail of the build that is in progress, so nothing is indexed for the
+     * build after this returns.
+     */
+    public void untrack(Run<?, ?> run) {
+        TailState state = running.remove(run);
+        if (state != null) {
+            state.close();
+        }
+    }
+
+    @Override
+    protected void doRun() {
+        if (!searchBackendManager.hasCapability(SearchBackend.Capability.NEAR_REAL_TIME)) {
+            // the running builds are indexed when they complete
+            return;
+        }
+        for (Map.Entry<Run<?, ?>, TailState> entry : running.entrySet()) {
+            Run<?, ?> run = entry.getKey();
+            if (!run.isBuilding()) {
+                untrack(run);
+                continue;
+            }
+            try {
+                entry.getValue().tail(run);
+            } catch (IOException e) {
+                LOGGER.warn("Could not index the console of running build " + run.getFullDisplayName(), e);
+            }
+        }
+    }
+
+    private class TailState {
+        private long offset;
+        private int chunkNumber;
+        private int firstLine = 1;
+        private final StringBuilder chunk = new StringBuilder();
+        private CharsetDecoder decoder;
+        // the start of a char cut off at the end of the last tail
+        private ByteBuffer pending = ByteBuffer.allocate(0);
+        private boolean closed;
+
+        synchronized void close() {
+            closed = true;
+        }
+
+        synchronized void tail(Run<?, ?> run) throws IOException {
+            if (closed) {
+                return;
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            long newOffset = run.getLogText().writeLogTo(offset, output);
+            if (newOffset == offset) {
+                return;
+            }
+            offset = newOffset;
+            decode(run, output.toByteArray());
+            while (chunk.length() >= CHUNK_SIZE) {
+                int end = chunk.lastIndexOf("\n", CHUNK_SIZE - 1) + 1;
+                if (end <= 0) {
+                    end = CHUNK_SIZE;
+                }
+                String closedChunk = chunk.substring(0, end);
+                searchBackendManager.storeRunningBuildChunk(run, chunkNumber++, firstLine, closedChunk);
+                firstLine += StringUtils.countMatches(closedChunk, "\n");
+                chunk.delete(0, end);
+            }
+            if (chunk.length() > 0) {
+                searchBackendManager.storeRunningBuildChunk(run, chunkNumber, firstLine, chunk.toString());
+            }
+        }
+
+        /**
+         * Appends the bytes in the charset of the build. A char that is not complete yet is kept for the next tail.
+         */
+        private void decode(Run<?, ?> run, byte[] bytes) {
+            if (decoder == null) {
+                decoder = run.getCharset().newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            ByteBuffer in = ByteBuffer.allocate(pending.remaining() + bytes.length);
+            in.put(pending).put(bytes).flip();
+            CharBuffer out = CharBuffer.allocate((int) Math.ceil(in.remaining() * decoder.maxCharsPerByte()));
+            decoder.decode(in, out, false);
+            out.flip();
+            chunk.append(out);
+            pending = in.slice();
+        }
+    }
+}
@@ -3,9 +3,11 @@ package org.jenkinsci.plugins.lucene.search;
 import hudson.model.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
@@ -30,6 +32,13 @@ public enum Field {
         }
     },
 
+    ID("id", DefaultSearchable.FALSE, Persist.TRUE) {
+        @Override
+        public String getValue(Run<?, ?> build) {
+            return PROJECT_NAME.getValue(build) + "#" + build.getNumber();
+        }
+    },
+
     BUILD_DISPLAY_NAME("d", Persist.TRUE) {
         @Override
         public String getValue(Run<?, ?> build) {
@@ -61,6 +70,50 @@ public enum Field {
         }
     },
 
+    RESULT("result", DefaultSearchable.FALSE, Persist.TRUE) {
+        @Override
+        public String getValue(Run<?, ?> build) {
+            Result result = build.getResult();
+            return result != null ? result.toString().toLowerCase(Locale.ENGLISH) : null;
+        }
+    },
+
+    DURATION("duration", DefaultSearchable.FALSE, Numeric.TRUE, Persist.TRUE) {
+        @Override
+        public Long getValue(Run<?, ?> build) {
+            return build.isBuilding() ? null : build.getDuration();
+        }
+    },
+
+    NODE("node", DefaultSearchable.FALSE, Persist.TRUE) {
+        @Override
+        public String getValue(Run<?, ?> build) {
+            if (build instanceof AbstractBuild) {
+                String node = ((AbstractBuild<?, ?>) build).getBuiltOnStr();
+                // the empty name is the master
+                return node == null ? null : node.isEmpty() ? "master" : node;
+            }
+            return null;
+        }
+    },
+
+    /**
+     * The kinds of the causes, like {@code userid}, {@code scmtrigger}, {@code timertrigger} or {@code upstream}.
+     */
+    CAUSE("cause", DefaultSearchable.FALSE, Persist.TRUE) {
+        @Override
+        public List<String> getValue(Run<?, ?> build) {
+            List<String> causes = new ArrayList<String>();
+            for (Cause cause : build.getCauses()) {
+                String kind = cause.getClass().getSimpleName().replaceFirst("Cause$", "").toLowerCase(Locale.ENGLISH);
+                if (!kind.isEmpty() && !causes.contains(kind)) {
+                    causes.add(kind);
+                }
+            }
+            return causes.isEmpty() ? null : causes;
+        }
+    },
+
     CONSOLE("c", Persist.TRUE) {
         @Override
         public String getValue(Run<?, ?> build) {
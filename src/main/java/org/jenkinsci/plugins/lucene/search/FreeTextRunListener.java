@@ -21,8 +21,17 @@ public class FreeTextRunListener extends RunListener<Run<?, ?>> {
     @Inject
     SearchBackendManager searchBackendManager;
 
+    @Inject
+    ConsoleTailer consoleTailer;
+
+    @Override
+    public void onStarted(final Run<?, ?> build, final TaskListener listener) {
+        consoleTailer.track(build);
+    }
+
     @Override
     public void onCompleted(final Run<?, ?> build, @Nonnull final TaskListener listener) {
+        consoleTailer.untrack(build);
         try {
             searchBackendManager.storeBuild(build);
         } catch (IOException e) {
@@ -32,6 +41,7 @@ public class FreeTextRunListener extends RunListener<Run<?, ?>> {
 
     @Override
     public void onDeleted(final Run<?, ?> build) {
+        consoleTailer.untrack(build);
         try {
             searchBackendManager.removeBuild(build);
         } catch (IOException e) {
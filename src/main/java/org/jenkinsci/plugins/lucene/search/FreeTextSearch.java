@@ -1,8 +1,14 @@
 package org.jenkinsci.plugins.lucene.search;
 
 import hudson.search.*;
+import net.sf.json.JSONSerializer;
+import org.apache.commons.lang.math.NumberUtils;
+import org.jenkinsci.plugins.lucene.search.databackend.SearchBackend;
 import org.jenkinsci.plugins.lucene.search.databackend.SearchBackendManager;
+import org.jenkinsci.plugins.lucene.search.databackend.SearchFacets;
 import org.jenkinsci.plugins.lucene.search.databackend.SearchFieldDefinition;
+import org.jenkinsci.plugins.lucene.search.databackend.SearchOptions;
+import org.jenkinsci.plugins.lucene.search.databackend.SearchPage;
 import org.kohsuke.stapler.Ancestor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
@@ -11,6 +17,7 @@ import org.kohsuke.stapler.bind.JavaScriptMethod;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -28,6 +35,13 @@ public class FreeTextSearch extends Search {
 
     private String query;
 
+    private SearchFacets facets = SearchFacets.EMPTY;
+
+    // the builds shown per job, 0 shows all hits
+    private int hitsPerJob;
+
+    private Map<String, Long> jobTotals = Collections.emptyMap();
+
     public FreeTextSearch(final SearchBackendManager manager) {
         this.manager = manager;
         curr_page = 0;
@@ -65,7 +79,11 @@ public class FreeTextSearch extends Search {
     public List<FreeTextSearchItem> getPage() {
         List<FreeTextSearchItem> page = pageMap.get(curr_page);
         if (page == null) {
-            page = new ArrayList<>(manager.getHits(query, true));
+            page = new ArrayList<>();
+            if (hitsPerJob == 0) {
+                // collapsed hits are all on the first page
+                page.addAll(manager.getHits(query, true));
+            }
             if (page.isEmpty()) {
                 max_page = curr_page;
             }
@@ -91,14 +109,50 @@ public class FreeTextSearch extends Search {
     @Override
     public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
         query = req.getParameter("q");
+        hitsPerJob = NumberUtils.toInt(req.getParameter("collapse"), 0);
         if (query != null) {
             List<FreeTextSearchItem> hits = normalSearch(req, query);
-            hits.addAll(manager.getHits(query, false));
+            SearchOptions options = SearchOptions.DEFAULT;
+            if (manager.hasCapability(SearchBackend.Capability.FACETS)) {
+                options = options.withFacets();
+            }
+            if (hitsPerJob > 0) {
+                options = options.withCollapse(hitsPerJob);
+            }
+            SearchPage searchPage = manager.search(query, false, options);
+            hits.addAll(searchPage.getItems());
+            facets = searchPage.getFacets();
+            jobTotals = searchPage.getJobTotals();
             pageMap.put(1, hits);
         }
         req.getView(this, "search-results.jelly").forward(req, rsp);
     }
 
+    /**
+     * The number of matching builds per job, result and day as JSON, for the query {@code q}.
+     */
+    public void doFacets(StaplerRequest req, StaplerResponse rsp, @QueryParameter String q) throws IOException,
+            ServletException {
+        SearchFacets queryFacets = q != null ? manager.getFacets(q) : SearchFacets.EMPTY;
+        Writer writer = rsp.getWriter();
+        JSONSerializer.toJSON(queryFacets).write(writer);
+        rsp.setStatus(200);
+        writer.flush();
+    }
+
+    @JavaScriptMethod
+    public SearchFacets getFacets() {
+        return facets;
+    }
+
+    /**
+     * @return the number of matching builds per job when only the best builds of each job are shown
+     */
+    @JavaScriptMethod
+    public Map<String, Long> getJobTotals() {
+        return jobTotals;
+    }
+
     @Override
     public SearchResult getSuggestions(final StaplerRequest req, @QueryParameter final String query) {
         SearchResult suggestedItems = super.getSuggestions(req, query);
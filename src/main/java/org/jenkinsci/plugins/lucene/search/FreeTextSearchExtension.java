@@ -2,6 +2,10 @@ package org.jenkinsci.plugins.lucene.search;
 
 import hudson.ExtensionPoint;
 import hudson.model.Run;
+
+import java.util.Collections;
+import java.util.List;
+
 import jenkins.model.Jenkins;
 
 /**
@@ -10,8 +14,15 @@ import jenkins.model.Jenkins;
  */
 public abstract class FreeTextSearchExtension implements ExtensionPoint {
 
-    public static hudson.ExtensionList<FreeTextSearchExtension> all() {
-        return Jenkins.getInstance().getExtensionList(FreeTextSearchExtension.class);
+    /**
+     * @return the installed extensions, none when the backend runs without Jenkins, like in a benchmark
+     */
+    public static List<FreeTextSearchExtension> all() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return Collections.emptyList();
+        }
+        return jenkins.getExtensionList(FreeTextSearchExtension.class);
     }
 
     /**
@@ -14,12 +14,23 @@ public class FreeTextSearchItemImplementation extends FreeTextSearchItem {
     private final String projectName;
     private final boolean isShowConsole;
     private final String[] bestFragments;
+    private final int[] fragmentLines;
     private final String url;
     private final String searchName;
 
     public FreeTextSearchItemImplementation(final String searchName, final String projectName,
             final String[] bestFragments, final String url, boolean isShowConsole) {
+        this(searchName, projectName, bestFragments, new int[0], url, isShowConsole);
+    }
+
+    /**
+     * @param fragmentLines the console line number of each fragment, may be shorter than bestFragments when the
+     *                      line is not known
+     */
+    public FreeTextSearchItemImplementation(final String searchName, final String projectName,
+            final String[] bestFragments, final int[] fragmentLines, final String url, boolean isShowConsole) {
         this.searchName = searchName;
+        this.fragmentLines = fragmentLines;
         this.projectName = projectName;
         this.url = url;
         this.isShowConsole = isShowConsole;
@@ -48,6 +59,10 @@ public class FreeTextSearchItemImplementation extends FreeTextSearchItem {
         return bestFragments;
     }
 
+    public int[] getFragmentLines() {
+        return fragmentLines;
+    }
+
     @Override
     public String getIconFileName() {
         // return blue by default; this part could be extended
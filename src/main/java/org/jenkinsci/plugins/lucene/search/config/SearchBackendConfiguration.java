@@ -10,10 +10,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import javax.inject.Inject;
 
@@ -22,26 +25,63 @@ import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.jenkinsci.plugins.lucene.search.databackend.ConsoleRetentionPolicy;
+import org.jenkinsci.plugins.lucene.search.databackend.LuceneSearchBackend;
+import org.jenkinsci.plugins.lucene.search.databackend.LuceneSearchBackendProvider;
 import org.jenkinsci.plugins.lucene.search.databackend.SearchBackendManager;
+import org.jenkinsci.plugins.lucene.search.databackend.SearchBackendProvider;
+import org.jenkinsci.plugins.lucene.search.databackend.SolrSearchBackend;
+import org.jenkinsci.plugins.lucene.search.databackend.SolrSearchBackendProvider;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
 @Extension
 public class SearchBackendConfiguration extends GlobalConfiguration {
+    private static final Logger LOGGER = Logger.getLogger(SearchBackendConfiguration.class.getName());
 
     private static final String LUCENE_PATH = "lucenePath";
     private static final String USE_SECURITY = "useSecurity";
+    private static final String RETENTION_MAX_LINES = "retentionMaxLines";
+    private static final String RETENTION_HEAD_LINES = "retentionHeadLines";
+    private static final String RETENTION_TAIL_LINES = "retentionTailLines";
+    private static final String RETENTION_PATTERN = "retentionPattern";
+    // backends with their own block on the configuration page
+    private static final List<String> BUILT_IN_BACKENDS = Arrays.asList(LuceneSearchBackendProvider.ID,
+            SolrSearchBackendProvider.ID);
 
     @Inject
     private transient SearchBackendManager backendManager;
 
+    private String searchBackend = LuceneSearchBackendProvider.ID;
     private File lucenePath = new File(Jenkins.getInstance().getRootDir(), "luceneIndex");
     private boolean useSecurity;
+    private String solrUrl;
+    private String solrCollection;
+    private String directory = "FS";
+    private int ramMaxMB = 256;
+    private boolean preload;
+    private String storedCompression = "BEST_SPEED";
+    private String consoleAnalyzer = "STANDARD";
+    private String junkTokens = "OFF";
+    private boolean wildcardFields;
+    private boolean caseInsensitiveField;
+    private boolean regexSearch;
+    private boolean consolePreprocessing;
+    private boolean partitionByMonth;
+    private int partitionMonths;
+    private int shards = 1;
+    private int regexMaxChunks = 10000;
+    private int regexMaxMB = 256;
+    private int retentionMaxLines;
+    private int retentionHeadLines = 500;
+    private int retentionTailLines = 1000;
+    private String retentionPattern = "(?i)(error|exception|fail)";
 
     @DataBoundConstructor
     public SearchBackendConfiguration(final String lucenePath,
@@ -76,6 +116,232 @@ public class SearchBackendConfiguration extends GlobalConfiguration {
         }
     }
 
+    public String getSearchBackend() {
+        // null in configurations saved by older versions
+        return searchBackend != null ? searchBackend : LuceneSearchBackendProvider.ID;
+    }
+
+    public void setSearchBackend(String searchBackend) {
+        this.searchBackend = searchBackend;
+    }
+
+    /**
+     * @return the installed backends that have no options of their own on the configuration page
+     */
+    public List<SearchBackendProvider> getOtherProviders() {
+        List<SearchBackendProvider> providers = new ArrayList<SearchBackendProvider>();
+        for (SearchBackendProvider provider : SearchBackendProvider.all()) {
+            if (!BUILT_IN_BACKENDS.contains(provider.getId())) {
+                providers.add(provider);
+            }
+        }
+        return providers;
+    }
+
+    public String getSolrUrl() {
+        return solrUrl;
+    }
+
+    public void setSolrUrl(String solrUrl) {
+        this.solrUrl = solrUrl;
+    }
+
+    public String getSolrCollection() {
+        return solrCollection;
+    }
+
+    public void setSolrCollection(String solrCollection) {
+        this.solrCollection = solrCollection;
+    }
+
+    public ListBoxModel doFillSolrCollectionItems(@QueryParameter final String solrUrl) {
+        ListBoxModel items = new ListBoxModel();
+        if (StringUtils.isBlank(solrUrl)) {
+            return items;
+        }
+        try {
+            for (String collection : getCollections(solrUrl)) {
+                items.add(collection);
+            }
+        } catch (IOException e) {
+            LOGGER.fine("Could not list the Solr collections at " + solrUrl + ": " + e);
+        } catch (RuntimeException e) {
+            LOGGER.fine("Could not list the Solr collections at " + solrUrl + ": " + e);
+        }
+        return items;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public int getRamMaxMB() {
+        return ramMaxMB;
+    }
+
+    public void setDirectory(String directory, int ramMaxMB) {
+        this.directory = directory;
+        this.ramMaxMB = ramMaxMB;
+    }
+
+    public boolean isPreload() {
+        return preload;
+    }
+
+    public void setPreload(boolean preload) {
+        this.preload = preload;
+    }
+
+    public ListBoxModel doFillDirectoryItems() {
+        ListBoxModel items = new ListBoxModel();
+        items.add("Disk", LuceneSearchBackend.DirectoryType.FS.name());
+        items.add("Disk, memory mapped", LuceneSearchBackend.DirectoryType.MMAP.name());
+        items.add("Disk, NIO", LuceneSearchBackend.DirectoryType.NIO.name());
+        items.add("Memory (lost on restart)", LuceneSearchBackend.DirectoryType.RAM.name());
+        return items;
+    }
+
+    public String getStoredCompression() {
+        return storedCompression;
+    }
+
+    public void setStoredCompression(String storedCompression) {
+        this.storedCompression = storedCompression;
+    }
+
+    public ListBoxModel doFillStoredCompressionItems() {
+        ListBoxModel items = new ListBoxModel();
+        items.add("Fast", "BEST_SPEED");
+        items.add("Small", "BEST_COMPRESSION");
+        return items;
+    }
+
+    public String getConsoleAnalyzer() {
+        return consoleAnalyzer;
+    }
+
+    public void setConsoleAnalyzer(String consoleAnalyzer) {
+        this.consoleAnalyzer = consoleAnalyzer;
+    }
+
+    public ListBoxModel doFillConsoleAnalyzerItems() {
+        ListBoxModel items = new ListBoxModel();
+        items.add("Standard", LuceneSearchBackend.AnalyzerType.STANDARD.name());
+        items.add("Build log", LuceneSearchBackend.AnalyzerType.LOG.name());
+        return items;
+    }
+
+    public String getJunkTokens() {
+        return junkTokens;
+    }
+
+    public void setJunkTokens(String junkTokens) {
+        this.junkTokens = junkTokens;
+    }
+
+    public ListBoxModel doFillJunkTokensItems() {
+        ListBoxModel items = new ListBoxModel();
+        items.add("Keep", "OFF");
+        items.add("Normalize", "NORMALIZE");
+        items.add("Drop", "DROP");
+        return items;
+    }
+
+    public boolean isConsolePreprocessing() {
+        return consolePreprocessing;
+    }
+
+    public void setConsolePreprocessing(boolean consolePreprocessing) {
+        this.consolePreprocessing = consolePreprocessing;
+    }
+
+    public boolean isPartitionByMonth() {
+        return partitionByMonth;
+    }
+
+    public int getPartitionMonths() {
+        return partitionMonths;
+    }
+
+    public void setPartitions(boolean partitionByMonth, int partitionMonths) {
+        this.partitionByMonth = partitionByMonth;
+        this.partitionMonths = partitionMonths;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public boolean isWildcardFields() {
+        return wildcardFields;
+    }
+
+    public void setWildcardFields(boolean wildcardFields) {
+        this.wildcardFields = wildcardFields;
+    }
+
+    public boolean isCaseInsensitiveField() {
+        return caseInsensitiveField;
+    }
+
+    public void setCaseInsensitiveField(boolean caseInsensitiveField) {
+        this.caseInsensitiveField = caseInsensitiveField;
+    }
+
+    public boolean isRegexSearch() {
+        return regexSearch;
+    }
+
+    public int getRegexMaxChunks() {
+        return regexMaxChunks;
+    }
+
+    public int getRegexMaxMB() {
+        return regexMaxMB;
+    }
+
+    public void setRegexSearch(boolean regexSearch, int maxChunks, int maxMB) {
+        this.regexSearch = regexSearch;
+        this.regexMaxChunks = maxChunks;
+        this.regexMaxMB = maxMB;
+    }
+
+    public int getRetentionMaxLines() {
+        return retentionMaxLines;
+    }
+
+    public int getRetentionHeadLines() {
+        return retentionHeadLines;
+    }
+
+    public int getRetentionTailLines() {
+        return retentionTailLines;
+    }
+
+    public String getRetentionPattern() {
+        return retentionPattern;
+    }
+
+    public void setRetention(int maxLines, int headLines, int tailLines, String pattern) {
+        this.retentionMaxLines = maxLines;
+        this.retentionHeadLines = headLines;
+        this.retentionTailLines = tailLines;
+        this.retentionPattern = pattern;
+    }
+
+    public FormValidation doCheckRetentionPattern(@QueryParameter final String retentionPattern) {
+        try {
+            Pattern.compile(retentionPattern);
+            return FormValidation.ok();
+        } catch (PatternSyntaxException e) {
+            return FormValidation.error(e.getDescription());
+        }
+    }
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     private List<String> getCollections(String baseUrl) throws IOException {
         HttpClient httpClient = HttpClientBuilder.create().build();
@@ -98,11 +364,61 @@ public class SearchBackendConfiguration extends GlobalConfiguration {
     @Override
     public boolean configure(final StaplerRequest req, final JSONObject json) throws FormException {
         JSONObject selectedJson = json.getJSONObject("searchBackend");
+        if (selectedJson.containsKey("value")) {
+            setSearchBackend(selectedJson.getString("value"));
+        }
         if (selectedJson.containsKey(LUCENE_PATH)) {
             String lucenePath = selectedJson.getString(LUCENE_PATH);
             ensureNotError(doCheckLucenePath(lucenePath), LUCENE_PATH);
             setLucenePath(new File(lucenePath));
         }
+        if (selectedJson.containsKey(SolrSearchBackend.SOLR_URL)) {
+            setSolrUrl(selectedJson.getString(SolrSearchBackend.SOLR_URL));
+            setSolrCollection(selectedJson.optString(SolrSearchBackend.SOLR_COLLECTION, null));
+        }
+        if (selectedJson.containsKey(LuceneSearchBackend.STORED_COMPRESSION)) {
+            setStoredCompression(selectedJson.getString(LuceneSearchBackend.STORED_COMPRESSION));
+        }
+        if (selectedJson.containsKey(LuceneSearchBackend.CONSOLE_ANALYZER)) {
+            setConsoleAnalyzer(selectedJson.getString(LuceneSearchBackend.CONSOLE_ANALYZER));
+        }
+        if (selectedJson.containsKey(LuceneSearchBackend.JUNK_TOKENS)) {
+            setJunkTokens(selectedJson.getString(LuceneSearchBackend.JUNK_TOKENS));
+        }
+        if (selectedJson.containsKey(LuceneSearchBackend.CONSOLE_PREPROCESSING)) {
+            setConsolePreprocessing(selectedJson.getBoolean(LuceneSearchBackend.CONSOLE_PREPROCESSING));
+        }
+        if (selectedJson.containsKey(LuceneSearchBackend.PARTITION_BY_MONTH)) {
+            setPartitions(selectedJson.getBoolean(LuceneSearchBackend.PARTITION_BY_MONTH),
+                    selectedJson.optInt(LuceneSearchBackend.PARTITION_MONTHS, 0));
+        }
+        if (selectedJson.containsKey(LuceneSearchBackend.SHARDS)) {
+            setShards(selectedJson.optInt(LuceneSearchBackend.SHARDS, 1));
+        }
+        if (selectedJson.containsKey(LuceneSearchBackend.DIRECTORY)) {
+            setDirectory(selectedJson.getString(LuceneSearchBackend.DIRECTORY),
+                    selectedJson.optInt(LuceneSearchBackend.RAM_MAX_MB, 256));
+        }
+        if (selectedJson.containsKey(LuceneSearchBackend.PRELOAD)) {
+            setPreload(selectedJson.getBoolean(LuceneSearchBackend.PRELOAD));
+        }
+        if (selectedJson.containsKey(LuceneSearchBackend.WILDCARD_FIELDS)) {
+            setWildcardFields(selectedJson.getBoolean(LuceneSearchBackend.WILDCARD_FIELDS));
+        }
+        if (selectedJson.containsKey(LuceneSearchBackend.CASE_INSENSITIVE_FIELD)) {
+            setCaseInsensitiveField(selectedJson.getBoolean(LuceneSearchBackend.CASE_INSENSITIVE_FIELD));
+        }
+        if (selectedJson.containsKey(LuceneSearchBackend.REGEX_SEARCH)) {
+            setRegexSearch(selectedJson.getBoolean(LuceneSearchBackend.REGEX_SEARCH),
+                    selectedJson.optInt(LuceneSearchBackend.REGEX_MAX_CHUNKS, 10000),
+                    selectedJson.optInt(LuceneSearchBackend.REGEX_MAX_MB, 256));
+        }
+        if (selectedJson.containsKey(RETENTION_MAX_LINES)) {
+            String pattern = selectedJson.optString(RETENTION_PATTERN, "");
+            ensureNotError(doCheckRetentionPattern(pattern), RETENTION_PATTERN);
+            setRetention(selectedJson.optInt(RETENTION_MAX_LINES, 0), selectedJson.optInt(RETENTION_HEAD_LINES, 0),
+                    selectedJson.optInt(RETENTION_TAIL_LINES, 0), pattern);
+        }
         if (json.containsKey(USE_SECURITY)) {
             setUseSecurity(json.getBoolean(USE_SECURITY));
         }
@@ -128,7 +444,48 @@ public class SearchBackendConfiguration extends GlobalConfiguration {
 
     public Map<String, Object> getConfig() {
         Map<String, Object> config = new HashMap<String, Object>();
+        config.put(SearchBackendManager.BACKEND, getSearchBackend());
         config.put("lucenePath", lucenePath);
+        if (solrUrl != null) {
+            config.put(SolrSearchBackend.SOLR_URL, solrUrl);
+        }
+        if (solrCollection != null) {
+            config.put(SolrSearchBackend.SOLR_COLLECTION, solrCollection);
+        }
+        // fields missing from configurations saved by older versions are null
+        if (storedCompression != null) {
+            config.put(LuceneSearchBackend.STORED_COMPRESSION, storedCompression);
+        }
+        if (consoleAnalyzer != null) {
+            config.put(LuceneSearchBackend.CONSOLE_ANALYZER, consoleAnalyzer);
+        }
+        if (junkTokens != null) {
+            config.put(LuceneSearchBackend.JUNK_TOKENS, junkTokens);
+        }
+        config.put(LuceneSearchBackend.CONSOLE_PREPROCESSING, consolePreprocessing);
+        config.put(LuceneSearchBackend.PARTITION_BY_MONTH, partitionByMonth);
+        config.put(LuceneSearchBackend.PARTITION_MONTHS, partitionMonths);
+        // 0 in configurations saved by older versions
+        if (shards > 0) {
+            config.put(LuceneSearchBackend.SHARDS, shards);
+        }
+        if (directory != null) {
+            config.put(LuceneSearchBackend.DIRECTORY, directory);
+        }
+        config.put(LuceneSearchBackend.RAM_MAX_MB, ramMaxMB);
+        config.put(LuceneSearchBackend.PRELOAD, preload);
+        config.put(LuceneSearchBackend.WILDCARD_FIELDS, wildcardFields);
+        config.put(LuceneSearchBackend.CASE_INSENSITIVE_FIELD, caseInsensitiveField);
+        config.put(LuceneSearchBackend.REGEX_SEARCH, regexSearch);
+        if (regexMaxChunks > 0) {
+            config.put(LuceneSearchBackend.REGEX_MAX_CHUNKS, regexMaxChunks);
+        }
+        if (regexMaxMB > 0) {
+            config.put(LuceneSearchBackend.REGEX_MAX_MB, regexMaxMB);
+        }
+        config.put(LuceneSearchBackend.CONSOLE_RETENTION, new ConsoleRetentionPolicy(retentionMaxLines,
+                retentionHeadLines, retentionTailLines,
+                StringUtils.isEmpty(retentionPattern) ? null : Pattern.compile(retentionPattern)));
         return config;
     }
 
@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.lucene.document.Document;
+
+/**
+ * The documents of a finished build, the console chunks followed by the build document, read from the console while
+ * the writer adds them. A chunk is only held back while the retention policy needs the lines after it to decide if
+ * its text is stored, so at most the lines of the limit and the tail of the policy are in memory, not the whole log.
+ *
+ * The block can be iterated once. An error reading the console is thrown as a {@link ConsoleReadException} from
+ * the iterator, {@link #rethrow} turns it back into the {@link IOException}.
+ */
+abstract class BuildBlock implements Iterable<Document> {
+
+    static class ConsoleReadException extends RuntimeException {
+        ConsoleReadException(IOException cause) {
+            super(cause);
+        }
+
+        void rethrow() throws IOException {
+            throw (IOException) getCause();
+        }
+    }
+
+    private final ConsoleChunker chunker;
+    private final ConsoleRetentionPolicy retentionPolicy;
+    private final Document build;
+    private final ExceptionExtractor exceptions = new ExceptionExtractor();
+    private final Deque<ConsoleChunker.Chunk> heldChunks = new ArrayDeque<>();
+    private boolean consoleRead;
+    private boolean buildAdded;
+    private int lines;
+
+    /**
+     * @param chunker the chunks of the console, null if there is none
+     * @param build the build document, the exceptions of the console are added to it
+     */
+    BuildBlock(ConsoleChunker chunker, ConsoleRetentionPolicy retentionPolicy, Document build) {
+        this.chunker = chunker;
+        this.retentionPolicy = retentionPolicy;
+        this.build = build;
+        this.consoleRead = chunker == null;
+    }
+
+    protected abstract Document createChunkDocument(ConsoleChunker.Chunk chunk, boolean stored);
+
+    @Override
+    public Iterator<Document> iterator() {
+        return new Iterator<Document>() {
+            private Document next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = nextDocument();
+                    } catch (IOException e) {
+                        throw new ConsoleReadException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Document next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Document document = next;
+                next = null;
+                return document;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private Document nextDocument() throws IOException {
+        while (true) {
+            ConsoleChunker.Chunk held = heldChunks.peekFirst();
+            if (held != null && (consoleRead || retentionPolicy.isDecided(held, lines))) {
+                heldChunks.removeFirst();
+                return createChunkDocument(held, retentionPolicy.isStored(held, lines));
+            }
+            if (consoleRead) {
+                break;
+            }
+            ConsoleChunker.Chunk chunk = chunker.next();
+            if (chunk == null) {
+                consoleRead = true;
+            } else {
+                exceptions.addLines(chunk.text);
+                lines = chunk.lastLine;
+                heldChunks.addLast(chunk);
+            }
+        }
+        if (buildAdded) {
+            return null;
+        }
+        // the parent has to be the last document of the block
+        buildAdded = true;
+        exceptions.addTo(build);
+        return build;
+    }
+}
@@ -0,0 +1,103 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+
+/**
+ * Keeps an index in memory below a size by deleting the oldest builds by start time. The newest build is always
+ * kept.
+ *
+ * Deleted documents still take memory until their segments are merged. The merges run in the background on the
+ * merge threads of the writers, until they are done the size of the deleted documents is not counted, so a store
+ * doesn't wait for a merge and the same excess isn't evicted twice.
+ */
+class BuildEviction {
+    private static final Logger LOGGER = Logger.getLogger(BuildEviction.class);
+
+    private final IndexPartitions partitions;
+    private final Query buildQuery;
+    private final String idField;
+    private final Set<String> idFieldToLoad;
+    private final Sort oldestFirst;
+    private final long maxBytes;
+
+    /**
+     * @param buildQuery matches one document per build, with the id and the start time
+     */
+    BuildEviction(IndexPartitions partitions, Query buildQuery, String idField, String startTimeField,
+            long maxBytes) {
+        this.partitions = partitions;
+        this.buildQuery = buildQuery;
+        this.idField = idField;
+        this.idFieldToLoad = Collections.singleton(idField);
+        this.oldestFirst = new Sort(new SortField(startTimeField, SortField.Type.LONG));
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Deletes the oldest builds if the live documents take more than the maximum size. Evicts at least a tenth of
+     * the builds, so not every store of a full index evicts.
+     *
+     * @return the number of evicted builds
+     */
+    synchronized int evict() throws IOException {
+        long liveBytes = getLiveBytes();
+        if (liveBytes <= maxBytes) {
+            return 0;
+        }
+        List<Term> oldest = new ArrayList<>();
+        IndexPartitions.Snapshot snapshot = partitions.acquire();
+        try {
+            IndexSearcher searcher = snapshot.getSearcher();
+            int builds = searcher.count(buildQuery);
+            // assumes builds of about the same size
+            int excess = (int) Math.ceil(builds * (double) (liveBytes - maxBytes) / liveBytes);
+            int evict = Math.min(Math.max(excess, builds / 10), builds - 1);
+            if (evict > 0) {
+                for (ScoreDoc hit : searcher.search(buildQuery, evict, oldestFirst).scoreDocs) {
+                    String id = searcher.doc(hit.doc, idFieldToLoad).get(idField);
+                    if (id != null) {
+                        oldest.add(new Term(idField, id));
+                    }
+                }
+            }
+        } finally {
+            partitions.release(snapshot);
+        }
+        if (oldest.isEmpty()) {
+            return 0;
+        }
+        Term[] ids = oldest.toArray(new Term[oldest.size()]);
+        for (IndexWriter writer : partitions.getWriters()) {
+            writer.deleteDocuments(ids);
+        }
+        // applies the deletes, so they are left out of the live size
+        partitions.commit();
+        for (IndexWriter writer : partitions.getWriters()) {
+            writer.forceMergeDeletes(false);
+        }
+        LOGGER.info("Evicted the " + oldest.size() + " oldest builds from the index in memory");
+        return oldest.size();
+    }
+
+    /**
+     * @return the size of the index without the share of the deleted documents not merged away yet
+     */
+    private long getLiveBytes() throws IOException {
+        long bytes = partitions.sizeInBytes();
+        int maxDoc = partitions.maxDoc();
+        return maxDoc > 0 ? (long) (bytes * ((double) partitions.numDocs() / maxDoc)) : bytes;
+    }
+}
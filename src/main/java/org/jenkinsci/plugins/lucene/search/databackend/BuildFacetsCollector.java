@@ -0,0 +1,251 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Counts the matching builds per job, result and start day from doc values, next to the collector of the top
+ * hits. A matching console chunk counts for its build and every build is counted once, nothing is loaded from the
+ * stored fields. Counts are kept per ordinal within a segment and only resolved to names when the segment is done.
+ *
+ * The chunks of a running build are their own parents and may be spread over segments, they are counted once per
+ * build id instead. There are few running builds, so they are kept by id with their values resolved.
+ */
+class BuildFacetsCollector extends SimpleCollector {
+
+    static final int MAX_JOBS = 50;
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final byte UNKNOWN = 0;
+    private static final byte VISIBLE = 1;
+    private static final byte HIDDEN = 2;
+
+    private final ParentBitSets parentBitSets;
+    private final String runningBuildField;
+    private final String jobField;
+    private final String resultField;
+    private final String startTimeField;
+    private final Set<String> visibleJobs;
+    private final TimeZone timeZone = TimeZone.getDefault();
+
+    private final Map<String, Long> jobs = new HashMap<>();
+    private final Map<String, Long> results = new HashMap<>();
+    private final Map<Long, Long> days = new TreeMap<>();
+    private final Map<String, RunningBuild> runningBuilds = new HashMap<>();
+
+    private LeafReaderContext leaf;
+    private FixedBitSet countedBuilds;
+    private SortedDocValues runningBuildIds;
+    private SortedSetDocValues jobValues;
+    private SortedSetDocValues resultValues;
+    private NumericDocValues startTimes;
+    private long[] jobCounts;
+    private long[] resultCounts;
+    private byte[] jobVisibility;
+
+    /**
+     * @param runningBuildField the sorted doc values with the build id of the chunks of running builds
+     * @param visibleJobs only builds of these jobs are counted, all builds if null
+     */
+    BuildFacetsCollector(ParentBitSets parentBitSets, String runningBuildField, String jobField, String resultField,
+            String startTimeField, Set<String> visibleJobs) {
+        this.parentBitSets = parentBitSets;
+        this.runningBuildField = runningBuildField;
+        this.jobField = jobField;
+        this.resultField = resultField;
+        this.startTimeField = startTimeField;
+        this.visibleJobs = visibleJobs;
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        resolveOrds();
+        leaf = context;
+        countedBuilds = new FixedBitSet(context.reader().maxDoc());
+        runningBuildIds = context.reader().getSortedDocValues(runningBuildField);
+        jobValues = context.reader().getSortedSetDocValues(jobField);
+        resultValues = context.reader().getSortedSetDocValues(resultField);
+        startTimes = DocValues.getNumeric(context.reader(), startTimeField);
+        jobCounts = jobValues != null ? new long[(int) jobValues.getValueCount()] : null;
+        jobVisibility = jobValues != null && visibleJobs != null ? new byte[jobCounts.length] : null;
+        resultCounts = resultValues != null ? new long[(int) resultValues.getValueCount()] : null;
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        int build = parentBitSets.getParent(leaf, doc);
+        if (build < 0 || countedBuilds.getAndSet(build)) {
+            return;
+        }
+        int runningBuildOrd = runningBuildIds != null ? runningBuildIds.getOrd(build) : -1;
+        if (runningBuildOrd >= 0) {
+            collectRunningBuild(build, runningBuildIds.lookupOrd(runningBuildOrd).utf8ToString());
+            return;
+        }
+        long jobOrd = SortedSetDocValues.NO_MORE_ORDS;
+        if (jobValues != null) {
+            jobValues.setDocument(build);
+            jobOrd = jobValues.nextOrd();
+        }
+        if (visibleJobs != null && (jobOrd == SortedSetDocValues.NO_MORE_ORDS || !isVisible((int) jobOrd))) {
+            return;
+        }
+        if (jobOrd != SortedSetDocValues.NO_MORE_ORDS) {
+            jobCounts[(int) jobOrd]++;
+        }
+        if (resultValues != null) {
+            resultValues.setDocument(build);
+            long resultOrd = resultValues.nextOrd();
+            if (resultOrd != SortedSetDocValues.NO_MORE_ORDS) {
+                resultCounts[(int) resultOrd]++;
+            }
+        }
+        Long day = getDay(build);
+        if (day != null) {
+            increment(days, day);
+        }
+    }
+
+    private void collectRunningBuild(int chunk, String id) {
+        if (runningBuilds.containsKey(id)) {
+            return;
+        }
+        String job = getFirstValue(jobValues, chunk);
+        if (visibleJobs != null && (job == null || !visibleJobs.contains(job))) {
+            return;
+        }
+        runningBuilds.put(id, new RunningBuild(job, getFirstValue(resultValues, chunk), getDay(chunk)));
+    }
+
+    private static String getFirstValue(SortedSetDocValues values, int doc) {
+        if (values == null) {
+            return null;
+        }
+        values.setDocument(doc);
+        long ord = values.nextOrd();
+        return ord != SortedSetDocValues.NO_MORE_ORDS ? values.lookupOrd(ord).utf8ToString() : null;
+    }
+
+    /**
+     * @return the day of the start time in the time zone of the server, or null if the start time is missing
+     */
+    private Long getDay(int doc) {
+        long startTime = startTimes.get(doc);
+        return startTime > 0 ? (startTime + timeZone.getOffset(startTime)) / DAY : null;
+    }
+
+    private boolean isVisible(int jobOrd) {
+        if (jobVisibility[jobOrd] == UNKNOWN) {
+            String job = jobValues.lookupOrd(jobOrd).utf8ToString();
+            jobVisibility[jobOrd] = visibleJobs.contains(job) ? VISIBLE : HIDDEN;
+        }
+        return jobVisibility[jobOrd] == VISIBLE;
+    }
+
+    private void resolveOrds() {
+        resolveOrds(jobValues, jobCounts, jobs);
+        resolveOrds(resultValues, resultCounts, results);
+        jobCounts = null;
+        resultCounts = null;
+    }
+
+    private static void resolveOrds(SortedSetDocValues values, long[] ordCounts, Map<String, Long> counts) {
+        if (ordCounts == null) {
+            return;
+        }
+        for (int ord = 0; ord < ordCounts.length; ord++) {
+            if (ordCounts[ord] > 0) {
+                String value = values.lookupOrd(ord).utf8ToString();
+                Long count = counts.get(value);
+                counts.put(value, (count != null ? count : 0) + ordCounts[ord]);
+            }
+        }
+    }
+
+    @Override
+    public boolean needsScores() {
+        return false;
+    }
+
+    SearchFacets getFacets() {
+        return getFacets(Collections.singletonList(this));
+    }
+
+    /**
+     * @return the sum of the facets counted by the collectors of the slices of a parallel search
+     */
+    static SearchFacets getFacets(Collection<BuildFacetsCollector> collectors) {
+        Map<String, Long> jobs = new HashMap<>();
+        Map<String, Long> results = new HashMap<>();
+        Map<Long, Long> days = new TreeMap<>();
+        // a running build may have matched in the slices of more than one collector
+        Map<String, RunningBuild> runningBuilds = new HashMap<>();
+        for (BuildFacetsCollector collector : collectors) {
+            collector.resolveOrds();
+            addAll(collector.jobs, jobs);
+            addAll(collector.results, results);
+            addAll(collector.days, days);
+            runningBuilds.putAll(collector.runningBuilds);
+        }
+        for (RunningBuild runningBuild : runningBuilds.values()) {
+            if (runningBuild.job != null) {
+                increment(jobs, runningBuild.job);
+            }
+            if (runningBuild.result != null) {
+                increment(results, runningBuild.result);
+            }
+            if (runningBuild.day != null) {
+                increment(days, runningBuild.day);
+            }
+        }
+        SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+        dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Map<String, Long> dayCounts = new TreeMap<>();
+        for (Map.Entry<Long, Long> day : days.entrySet()) {
+            dayCounts.put(dayFormat.format(new Date(day.getKey() * DAY)), day.getValue());
+        }
+        return new SearchFacets(TopExceptionsCollector.top(jobs, MAX_JOBS),
+                TopExceptionsCollector.top(results, results.size()), dayCounts);
+    }
+
+    private static <K> void increment(Map<K, Long> counts, K key) {
+        Long count = counts.get(key);
+        counts.put(key, count != null ? count + 1 : 1);
+    }
+
+    private static <K> void addAll(Map<K, Long> counts, Map<K, Long> total) {
+        for (Map.Entry<K, Long> count : counts.entrySet()) {
+            Long sum = total.get(count.getKey());
+            total.put(count.getKey(), (sum != null ? sum : 0) + count.getValue());
+        }
+    }
+
+    private static class RunningBuild {
+        final String job;
+        final String result;
+        final Long day;
+
+        RunningBuild(String job, String result, Long day) {
+            this.job = job;
+            this.result = result;
+            this.day = day;
+        }
+    }
+}
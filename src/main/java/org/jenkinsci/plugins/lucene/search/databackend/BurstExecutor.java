@@ -13,6 +13,7 @@ public class BurstExecutor<T> {
     private final RunWithArgument<T> worker;
     private final int maxThreads;
     private boolean started;
+    private volatile boolean cancelled;
     // Only for giving better names to threads
     private static int threadIndex = 1;
 
@@ -22,6 +23,9 @@ public class BurstExecutor<T> {
     }
 
     public void add(T workload) {
+        if (cancelled) {
+            return;
+        }
         workQueue.add(workload);
         if (started) {
             ensureEnoughThreadToFinishJob();
@@ -48,7 +52,7 @@ public class BurstExecutor<T> {
         @Override
         public void run() {
             try {
-                while (!workQueue.isEmpty()) {
+                while (!cancelled && !workQueue.isEmpty()) {
                     try {
                         T poll = workQueue.poll(1000, TimeUnit.MILLISECONDS);
 //                        T poll = workQueue.poll();
@@ -69,8 +73,9 @@ public class BurstExecutor<T> {
         if (!started) {
             throw new IllegalStateException("Not started yet");
         }
-        while (!workQueue.isEmpty()) {
-            worker.run(workQueue.poll());
+        T poll;
+        while (!cancelled && (poll = workQueue.poll()) != null) {
+            worker.run(poll);
         }
         ensureEnoughThreadToFinishJob();
         WorkerThread workerThread;
@@ -79,6 +84,20 @@ public class BurstExecutor<T> {
         }
     }
 
+    /**
+     * Drops all queued work. Workloads already handed to a worker are allowed to
+     * finish, so callers should still {@link #waitForCompletion()} to know when
+     * every worker thread has exited.
+     */
+    public void cancel() {
+        cancelled = true;
+        workQueue.clear();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     private synchronized WorkerThread getFirstWorkerThread() {
         WorkerThread workerThread = null;
         if (!activeThreads.isEmpty()) {
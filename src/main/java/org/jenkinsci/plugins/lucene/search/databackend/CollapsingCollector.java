@@ -0,0 +1,271 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Keeps the best builds per job instead of the best documents overall, so a single job with many matching builds
+ * doesn't fill the page. The job is read from the doc values of the build, a matching console chunk counts for its
+ * build and each kept build remembers its best scoring document. Also counts the matching builds per job.
+ *
+ * The chunks of a running build are their own parents and may be spread over segments, they take one place and are
+ * counted once per build id instead.
+ */
+class CollapsingCollector extends SimpleCollector {
+
+    // marks the groups of jobs the user may not see
+    private static final JobGroup HIDDEN = new JobGroup(null, 0);
+
+    private static final Comparator<JobGroup> BY_BEST_SCORE = new Comparator<JobGroup>() {
+        @Override
+        public int compare(JobGroup o1, JobGroup o2) {
+            int byScore = Float.compare(o2.bestScore(), o1.bestScore());
+            return byScore != 0 ? byScore : o1.job.compareTo(o2.job);
+        }
+    };
+
+    private static final Comparator<ScoreDoc> BY_SCORE = new Comparator<ScoreDoc>() {
+        @Override
+        public int compare(ScoreDoc o1, ScoreDoc o2) {
+            return Float.compare(o2.score, o1.score);
+        }
+    };
+
+    private final ParentBitSets parentBitSets;
+    private final String runningBuildField;
+    private final String jobField;
+    private final int hitsPerJob;
+    private final Set<String> visibleJobs;
+    private final Map<String, JobGroup> groups = new HashMap<>();
+
+    private LeafReaderContext leaf;
+    private Scorer scorer;
+    private SortedDocValues runningBuildIds;
+    private SortedSetDocValues jobValues;
+    private FixedBitSet countedBuilds;
+    private JobGroup[] segmentGroups;
+
+    /**
+     * @param runningBuildField the sorted doc values with the build id of the chunks of running builds
+     * @param visibleJobs only builds of these jobs are kept, all builds if null
+     */
+    CollapsingCollector(ParentBitSets parentBitSets, String runningBuildField, String jobField, int hitsPerJob,
+            Set<String> visibleJobs) {
+        this.parentBitSets = parentBitSets;
+        this.runningBuildField = runningBuildField;
+        this.jobField = jobField;
+        this.hitsPerJob = hitsPerJob;
+        this.visibleJobs = visibleJobs;
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        mergeSegmentGroups();
+        leaf = context;
+        runningBuildIds = context.reader().getSortedDocValues(runningBuildField);
+        jobValues = context.reader().getSortedSetDocValues(jobField);
+        if (jobValues != null) {
+            countedBuilds = new FixedBitSet(context.reader().maxDoc());
+            segmentGroups = new JobGroup[(int) jobValues.getValueCount()];
+        }
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        this.scorer = scorer;
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (jobValues == null) {
+            return;
+        }
+        int build = parentBitSets.getParent(leaf, doc);
+        if (build < 0) {
+            return;
+        }
+        jobValues.setDocument(build);
+        long ord = jobValues.nextOrd();
+        if (ord == SortedSetDocValues.NO_MORE_ORDS) {
+            return;
+        }
+        JobGroup group = segmentGroups[(int) ord];
+        if (group == null) {
+            String job = jobValues.lookupOrd(ord).utf8ToString();
+            group = visibleJobs == null || visibleJobs.contains(job) ? new JobGroup(job, hitsPerJob) : HIDDEN;
+            segmentGroups[(int) ord] = group;
+        }
+        if (group == HIDDEN) {
+            return;
+        }
+        int runningBuildOrd = runningBuildIds != null ? runningBuildIds.getOrd(build) : -1;
+        String runningBuild = null;
+        if (runningBuildOrd >= 0) {
+            runningBuild = runningBuildIds.lookupOrd(runningBuildOrd).utf8ToString();
+            group.runningBuilds.add(runningBuild);
+        } else if (!countedBuilds.getAndSet(build)) {
+            group.total++;
+        }
+        group.offer(leaf.docBase + build, runningBuild, leaf.docBase + doc, scorer.score());
+    }
+
+    private void mergeSegmentGroups() {
+        if (segmentGroups == null) {
+            return;
+        }
+        for (JobGroup segmentGroup : segmentGroups) {
+            if (segmentGroup == null || segmentGroup == HIDDEN) {
+                continue;
+            }
+            JobGroup group = groups.get(segmentGroup.job);
+            if (group == null) {
+                groups.put(segmentGroup.job, segmentGroup);
+            } else {
+                group.merge(segmentGroup);
+            }
+        }
+        segmentGroups = null;
+    }
+
+    @Override
+    public boolean needsScores() {
+        return true;
+    }
+
+    /**
+     * Adds the groups of the collector of another slice of a parallel search.
+     */
+    void merge(CollapsingCollector other) {
+        other.mergeSegmentGroups();
+        for (JobGroup otherGroup : other.groups.values()) {
+            JobGroup group = groups.get(otherGroup.job);
+            if (group == null) {
+                groups.put(otherGroup.job, otherGroup);
+            } else {
+                group.merge(otherGroup);
+            }
+        }
+    }
+
+    /**
+     * @return the kept documents of the jobs with the best hits, at most {@code maxHits}, grouped per job and in
+     *         score order within a job
+     */
+    ScoreDoc[] getTopDocs(int maxHits) {
+        List<ScoreDoc> topDocs = new ArrayList<>();
+        for (JobGroup group : getSortedGroups()) {
+            List<ScoreDoc> groupDocs = new ArrayList<>(group.size);
+            for (int i = 0; i < group.size; i++) {
+                groupDocs.add(new ScoreDoc(group.docs[i], group.scores[i]));
+            }
+            Collections.sort(groupDocs, BY_SCORE);
+            topDocs.addAll(groupDocs.subList(0, Math.min(groupDocs.size(), maxHits - topDocs.size())));
+            if (topDocs.size() == maxHits) {
+                break;
+            }
+        }
+        return topDocs.toArray(new ScoreDoc[topDocs.size()]);
+    }
+
+    /**
+     * @return the number of matching builds per job, the job with the best hit first
+     */
+    Map<String, Long> getTotals() {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (JobGroup group : getSortedGroups()) {
+            totals.put(group.job, group.total + group.runningBuilds.size());
+        }
+        return totals;
+    }
+
+    private List<JobGroup> getSortedGroups() {
+        mergeSegmentGroups();
+        List<JobGroup> sorted = new ArrayList<>(groups.values());
+        Collections.sort(sorted, BY_BEST_SCORE);
+        return sorted;
+    }
+
+    /**
+     * The best builds of a job, unordered. Few builds are kept per job, so a linear scan is cheaper than a queue.
+     */
+    private static class JobGroup {
+        final String job;
+        final int[] builds;
+        // the build id if the build is running, its chunks have different parents
+        final String[] runningBuildIds;
+        final int[] docs;
+        final float[] scores;
+        final Set<String> runningBuilds = new HashSet<>();
+        int size;
+        // without the running builds
+        long total;
+
+        JobGroup(String job, int capacity) {
+            this.job = job;
+            builds = new int[capacity];
+            runningBuildIds = new String[capacity];
+            docs = new int[capacity];
+            scores = new float[capacity];
+        }
+
+        /**
+         * @param runningBuild the id of the build if it is running, otherwise null
+         */
+        void offer(int build, String runningBuild, int doc, float score) {
+            int worst = -1;
+            for (int i = 0; i < size; i++) {
+                if (builds[i] == build || runningBuild != null && runningBuild.equals(runningBuildIds[i])) {
+                    if (score > scores[i]) {
+                        docs[i] = doc;
+                        scores[i] = score;
+                    }
+                    return;
+                }
+                if (worst < 0 || scores[i] < scores[worst]) {
+                    worst = i;
+                }
+            }
+            if (size < builds.length) {
+                worst = size++;
+            } else if (score <= scores[worst]) {
+                return;
+            }
+            builds[worst] = build;
+            runningBuildIds[worst] = runningBuild;
+            docs[worst] = doc;
+            scores[worst] = score;
+        }
+
+        void merge(JobGroup other) {
+            total += other.total;
+            runningBuilds.addAll(other.runningBuilds);
+            for (int i = 0; i < other.size; i++) {
+                offer(other.builds[i], other.runningBuildIds[i], other.docs[i], other.scores[i]);
+            }
+        }
+
+        float bestScore() {
+            float best = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                best = Math.max(best, scores[i]);
+            }
+            return best;
+        }
+    }
+}
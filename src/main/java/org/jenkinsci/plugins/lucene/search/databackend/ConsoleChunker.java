@@ -0,0 +1,81 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Cuts a console log into chunks of {@link #LINES_PER_CHUNK} lines. A chunk is also closed before it would get
+ * longer than {@link #MAX_CHUNK_CHARS}, and a line longer than that is cut into pieces that all have its line number,
+ * so a log without line breaks still ends up in bounded pieces. Line numbers start at 1 and are the lines of the
+ * original log, also when the {@link ConsolePreprocessor} collapsed some of them.
+ */
+public class ConsoleChunker {
+
+    public static final int LINES_PER_CHUNK = 100;
+    public static final int MAX_CHUNK_CHARS = 32 * 1024;
+
+    private final ConsolePreprocessor lines;
+    private int nextLine = 1;
+    // what is left of a line that didn't fit into the previous chunk
+    private String rest;
+    private int restSourceLines;
+
+    public ConsoleChunker(Reader reader) {
+        this(new ConsolePreprocessor(reader, false, false));
+    }
+
+    public ConsoleChunker(ConsolePreprocessor lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * @return the next chunk, or null when the log has been read
+     */
+    public Chunk next() throws IOException {
+        StringBuilder text = new StringBuilder();
+        int firstLine = nextLine;
+        while (nextLine - firstLine < LINES_PER_CHUNK) {
+            String line = rest != null ? rest : lines.readLine();
+            if (line == null) {
+                break;
+            }
+            int sourceLines = rest != null ? restSourceLines : lines.getSourceLines();
+            rest = null;
+            if (text.length() + line.length() + 1 > MAX_CHUNK_CHARS) {
+                rest = line;
+                restSourceLines = sourceLines;
+                if (text.length() > 0) {
+                    break;
+                }
+                int end = MAX_CHUNK_CHARS;
+                if (Character.isHighSurrogate(line.charAt(end - 1))) {
+                    end--;
+                }
+                rest = line.substring(end);
+                return new Chunk(line.substring(0, end), nextLine, nextLine);
+            }
+            text.append(line).append('\n');
+            nextLine += sourceLines;
+            if (sourceLines > 1) {
+                // the lines of a chunk are numbered from its first line, so a collapsed line has to be the last one
+                break;
+            }
+        }
+        if (nextLine == firstLine) {
+            return null;
+        }
+        return new Chunk(text.toString(), firstLine, nextLine - 1);
+    }
+
+    public static class Chunk {
+        public final String text;
+        public final int firstLine;
+        public final int lastLine;
+
+        public Chunk(String text, int firstLine, int lastLine) {
+            this.text = text;
+            this.firstLine = firstLine;
+            this.lastLine = lastLine;
+        }
+    }
+}
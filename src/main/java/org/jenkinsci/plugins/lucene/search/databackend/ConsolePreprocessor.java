@@ -0,0 +1,102 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a console log line by line and removes what only matters to the browser: console notes (the
+ * {@code ESC[8mha:...ESC[0m} encoded annotations written by Jenkins), ANSI escape sequences like colours, and the
+ * timestamps the Timestamper plugin puts in front of every line. A run of at least {@link #MIN_COLLAPSED_RUN}
+ * identical lines, like progress output, is returned as a single line.
+ *
+ * Only the current line and a counter are kept in memory, a log of any size is read in one pass.
+ */
+public class ConsolePreprocessor {
+
+    static final int MIN_COLLAPSED_RUN = 10;
+
+    private static final char ESC = '\u001B';
+    private static final Pattern CONSOLE_NOTE = Pattern.compile("\\x1B\\[8mha:[^\\x1B]*\\x1B\\[0m");
+    // CSI sequences like colours and cursor movement, and OSC sequences like hyperlinks and window titles
+    private static final Pattern ANSI = Pattern
+            .compile("\\x1B\\[[0-?]*[ -/]*[@-~]|\\x1B\\][^\\x07\\x1B]*(\\x07|\\x1B\\\\)?");
+    // [2019-05-03T12:34:56.789Z] or 12:34:56 at the start of a line
+    private static final Pattern TIMESTAMP = Pattern.compile(
+            "(?m)^(\\[\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:\\d{2}:\\d{2}([.,]\\d+)?Z?\\]|\\[?\\d{2}:\\d{2}:\\d{2}\\]?) ");
+
+    private final BufferedReader reader;
+    private final boolean strip;
+    private final boolean collapse;
+
+    private String lookahead;
+    private String repeated;
+    private int repeats;
+    private int sourceLines;
+
+    /**
+     * @param strip    removes console notes, escape sequences and timestamps
+     * @param collapse returns runs of identical lines once
+     */
+    public ConsolePreprocessor(Reader reader, boolean strip, boolean collapse) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.strip = strip;
+        this.collapse = collapse;
+    }
+
+    /**
+     * @return the next line without line terminator, or null when the log has been read
+     */
+    public String readLine() throws IOException {
+        sourceLines = 1;
+        if (repeats > 0) {
+            repeats--;
+            return repeated;
+        }
+        String line = lookahead != null ? lookahead : nextLine();
+        lookahead = null;
+        if (line == null || !collapse) {
+            return line;
+        }
+        int count = 1;
+        String next;
+        while ((next = nextLine()) != null && next.equals(line)) {
+            count++;
+        }
+        lookahead = next;
+        if (count >= MIN_COLLAPSED_RUN) {
+            sourceLines = count;
+        } else {
+            repeated = line;
+            repeats = count - 1;
+        }
+        return line;
+    }
+
+    /**
+     * @return the number of lines of the log the last line returned by {@link #readLine()} stands for, more than
+     * one if it was collapsed
+     */
+    public int getSourceLines() {
+        return sourceLines;
+    }
+
+    private String nextLine() throws IOException {
+        String line = reader.readLine();
+        return line != null && strip ? strip(line) : line;
+    }
+
+    /**
+     * Removes console notes, escape sequences and timestamps from a line or a whole log. Line breaks are kept.
+     */
+    public static String strip(String text) {
+        if (text.indexOf(ESC) >= 0) {
+            text = ANSI.matcher(CONSOLE_NOTE.matcher(text).replaceAll("")).replaceAll("");
+        }
+        if (!text.isEmpty()) {
+            text = TIMESTAMP.matcher(text).replaceAll("");
+        }
+        return text;
+    }
+}
@@ -0,0 +1,55 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.util.regex.Pattern;
+
+/**
+ * Decides which console chunks of a build keep their stored text. All chunks are always indexed, so every build
+ * stays searchable, but for logs longer than {@code maxStoredLines} only the head, the tail and the chunks that
+ * match {@code pattern} are stored and can be shown as fragments.
+ */
+public class ConsoleRetentionPolicy {
+
+    public static final ConsoleRetentionPolicy KEEP_ALL = new ConsoleRetentionPolicy(0, 0, 0, null);
+
+    private final int maxStoredLines;
+    private final int headLines;
+    private final int tailLines;
+    private final Pattern pattern;
+
+    /**
+     * @param maxStoredLines logs with more lines than this are trimmed, 0 stores every log completely
+     * @param pattern        chunks with a match are stored even outside head and tail, may be null
+     */
+    public ConsoleRetentionPolicy(int maxStoredLines, int headLines, int tailLines, Pattern pattern) {
+        this.maxStoredLines = maxStoredLines;
+        this.headLines = headLines;
+        this.tailLines = tailLines;
+        this.pattern = pattern;
+    }
+
+    public boolean isStored(ConsoleChunker.Chunk chunk, int totalLines) {
+        if (maxStoredLines <= 0 || totalLines <= maxStoredLines) {
+            return true;
+        }
+        if (chunk.firstLine <= headLines || chunk.lastLine > totalLines - tailLines) {
+            return true;
+        }
+        return pattern != null && pattern.matcher(chunk.text).find();
+    }
+
+    /**
+     * @param linesSoFar the lines of the log read so far
+     * @return if the lines still to come can't change whether the chunk is stored, then
+     *         {@link #isStored(ConsoleChunker.Chunk, int)} with the lines so far gives the answer
+     */
+    boolean isDecided(ConsoleChunker.Chunk chunk, int linesSoFar) {
+        if (maxStoredLines <= 0 || chunk.firstLine <= headLines) {
+            return true;
+        }
+        // the log is trimmed and the chunk is out of the tail, however long the log gets
+        if (linesSoFar > maxStoredLines && chunk.lastLine <= linesSoFar - tailLines) {
+            return true;
+        }
+        return pattern != null && pattern.matcher(chunk.text).find();
+    }
+}
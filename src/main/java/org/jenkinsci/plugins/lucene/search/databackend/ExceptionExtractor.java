@@ -0,0 +1,115 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Finds the exceptions in a console log: lines like {@code java.io.IOException: No space left on device} or
+ * {@code Caused by: org.foo.BarException}, and the first {@link #MAX_FRAMES} stack frames following them. The
+ * console is fed chunk by chunk, a stack trace may continue in the next chunk.
+ *
+ * The exceptions are indexed on the build: the class names, fully qualified and simple, in {@link #CLASS_FIELD}
+ * with doc values for aggregations, the messages in {@link #MESSAGE_FIELD} and the frames in {@link #FRAME_FIELD}.
+ */
+class ExceptionExtractor {
+
+    static final String CLASS_FIELD = "ex";
+    static final String MESSAGE_FIELD = "ex_msg";
+    static final String FRAME_FIELD = "ex_frame";
+
+    static final int MAX_FRAMES = 3;
+    // per build, a log repeating one exception with varying messages shouldn't blow up the build document
+    static final int MAX_EXCEPTIONS = 100;
+    static final int MAX_MESSAGE_LENGTH = 200;
+
+    // a qualified class name ending in Exception or Error at the end of the line or followed by the message
+    private static final Pattern EXCEPTION = Pattern
+            .compile("(?<![\\w$.])((?:[a-z_$][\\w$]*\\.)+[A-Z][\\w$]*(?:Exception|Error))(?::\\s*(.*))?$");
+    private static final Pattern FRAME = Pattern.compile("\\sat (?:[\\w.$-]+/)?([\\w$.<>]+)\\(");
+
+    private final Set<String> classNames = new LinkedHashSet<>();
+    private final Set<String> messages = new LinkedHashSet<>();
+    private final Set<String> frames = new LinkedHashSet<>();
+    // frames still to take from the current stack trace
+    private int framesLeft;
+
+    void addLines(String text) {
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            addLine(text.substring(start, end));
+            start = end + 1;
+        }
+    }
+
+    private void addLine(String line) {
+        if (line.contains("\tat ") || line.contains("    at ")) {
+            if (framesLeft > 0) {
+                Matcher frame = FRAME.matcher(line);
+                if (frame.find()) {
+                    frames.add(frame.group(1));
+                    framesLeft--;
+                }
+            }
+            return;
+        }
+        framesLeft = 0;
+        if (!line.contains("Exception") && !line.contains("Error")) {
+            return;
+        }
+        Matcher exception = EXCEPTION.matcher(line);
+        if (exception.find() && classNames.size() < MAX_EXCEPTIONS) {
+            classNames.add(exception.group(1));
+            String message = exception.group(2) != null ? exception.group(2).trim() : "";
+            if (!message.isEmpty() && messages.size() < MAX_EXCEPTIONS) {
+                messages.add(message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH)
+                        : message);
+            }
+            framesLeft = MAX_FRAMES;
+        }
+    }
+
+    Set<String> getClassNames() {
+        return classNames;
+    }
+
+    List<String> getMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    Set<String> getFrames() {
+        return frames;
+    }
+
+    void addTo(Document doc) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String className : classNames) {
+            names.add(className);
+            names.add(className.substring(className.lastIndexOf('.') + 1));
+            doc.add(new SortedSetDocValuesField(CLASS_FIELD, new BytesRef(className)));
+        }
+        for (String name : names) {
+            doc.add(new StringField(CLASS_FIELD, name, Store.NO));
+        }
+        for (String message : messages) {
+            doc.add(new TextField(MESSAGE_FIELD, message, Store.NO));
+        }
+        for (String frame : frames) {
+            doc.add(new StringField(FRAME_FIELD, frame, Store.NO));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.json.JSONObject;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Talks to a Solr collection over HTTP with the JSON request and response formats, no Solr client library needed.
+ */
+class HttpSolrConnection implements SolrConnection {
+
+    private static final String UTF_8 = "UTF-8";
+    // updates are sent under a lock that indexing and commits wait for, a hung Solr must not hold it for long
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int SOCKET_TIMEOUT_MILLIS = 30000;
+    private static final int MAX_CONNECTIONS = 8;
+
+    private final String collectionUrl;
+    private final DefaultHttpClient httpClient;
+
+    /**
+     * @param baseUrl the url of the Solr service, like {@code http://127.0.0.1:8983/solr}
+     */
+    HttpSolrConnection(String baseUrl, String collection) {
+        collectionUrl = baseUrl.replaceFirst("/+$", "") + "/" + collection;
+        // the updates are sent by the flush thread while searches run, so the connections are pooled
+        PoolingClientConnectionManager connections = new PoolingClientConnectionManager();
+        connections.setMaxTotal(MAX_CONNECTIONS);
+        connections.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+        httpClient = new DefaultHttpClient(connections);
+        HttpParams params = httpClient.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT_MILLIS);
+        HttpConnectionParams.setSoTimeout(params, SOCKET_TIMEOUT_MILLIS);
+    }
+
+    @Override
+    public JSONObject get(String handler, Map<String, String> params) throws IOException {
+        return execute(new HttpGet(url(handler, params)));
+    }
+
+    @Override
+    public void update(List<String> commands, Map<String, String> params) throws IOException {
+        HttpPost post = new HttpPost(url("update", params));
+        post.setEntity(new UpdateEntity(commands));
+        execute(post);
+    }
+
+    private String url(String handler, Map<String, String> params) {
+        List<NameValuePair> pairs = new ArrayList<>();
+        pairs.add(new BasicNameValuePair("wt", "json"));
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            pairs.add(new BasicNameValuePair(param.getKey(), param.getValue()));
+        }
+        return collectionUrl + "/" + handler + "?" + URLEncodedUtils.format(pairs, UTF_8);
+    }
+
+    private JSONObject execute(HttpRequestBase request) throws IOException {
+        HttpResponse response = httpClient.execute(request);
+        try {
+            String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity(), UTF_8) : "";
+            int status = response.getStatusLine().getStatusCode();
+            if (status != 200) {
+                throw new StatusException("Solr request " + request.getMethod() + " " + request.getURI()
+                        + " failed: " + response.getStatusLine() + " " + body, status);
+            }
+            return JSONObject.fromObject(body);
+        } finally {
+            request.releaseConnection();
+        }
+    }
+
+    @Override
+    public void close() {
+        httpClient.getConnectionManager().shutdown();
+    }
+
+    /**
+     * Writes the commands of a batch straight to the request, without concatenating them into one string first.
+     * The JSON update handler takes repeated keys, so a batch is one object with a command per key.
+     */
+    private static class UpdateEntity extends AbstractHttpEntity {
+        private final List<String> commands;
+
+        UpdateEntity(List<String> commands) {
+            this.commands = commands;
+            setContentType("application/json; charset=UTF-8");
+            setChunked(true);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            writeTo(content);
+            return new ByteArrayInputStream(content.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            Writer writer = new OutputStreamWriter(out, UTF_8);
+            writer.write('{');
+            for (int i = 0; i < commands.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(commands.get(i));
+            }
+            writer.write('}');
+            writer.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.ReaderManager;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.store.Directory;
+
+/**
+ * The index split into partitions, each an own Lucene index in a directory below the index path with its own
+ * writer. The partitions are searched together through a {@link MultiReader}, a search can leave out partitions
+ * that can't match. Dropping a partition deletes its directory instead of its documents.
+ *
+ * The partition with the empty name is the index path itself, an index with a single such partition is laid out
+ * like an index that is not partitioned.
+ */
+abstract class IndexPartitions implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(IndexPartitions.class);
+
+    /**
+     * Selects the partitions a search needs.
+     */
+    interface PartitionFilter {
+        boolean accept(String name);
+    }
+
+    private final File indexPath;
+    private final SearcherFactory searcherFactory;
+    // sorted by name, so the document ids of a snapshot are stable across searches
+    private final Map<String, Partition> partitions = new TreeMap<>();
+
+    IndexPartitions(File indexPath, SearcherFactory searcherFactory) {
+        this.indexPath = indexPath;
+        this.searcherFactory = searcherFactory;
+    }
+
+    /**
+     * Opens the directory of a partition.
+     */
+    protected abstract Directory openDirectory(File path) throws IOException;
+
+    /**
+     * Opens the writer of a partition, a new writer config is needed for every writer.
+     */
+    protected abstract IndexWriter openWriter(Directory directory) throws IOException;
+
+    /**
+     * Opens the partitions that already exist below the index path, up to two directories deep.
+     *
+     * @param filter accepts the names of the partitions, like {@code name} or {@code name/subname}
+     */
+    synchronized void openExisting(PartitionFilter filter) throws IOException {
+        File[] dirs = indexPath.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        for (File dir : dirs) {
+            if (!dir.isDirectory()) {
+                continue;
+            }
+            if (filter.accept(dir.getName())) {
+                getWriter(dir.getName());
+                continue;
+            }
+            File[] subDirs = dir.listFiles();
+            for (int i = 0; subDirs != null && i < subDirs.length; i++) {
+                String name = dir.getName() + "/" + subDirs[i].getName();
+                if (subDirs[i].isDirectory() && filter.accept(name)) {
+                    getWriter(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the writer of the partition, the partition is created if it doesn't exist
+     */
+    synchronized IndexWriter getWriter(String name) throws IOException {
+        Partition partition = partitions.get(name);
+        if (partition == null) {
+            partition = new Partition(name, name.isEmpty() ? indexPath : new File(indexPath, name));
+            partitions.put(name, partition);
+        }
+        return partition.writer;
+    }
+
+    synchronized Collection<IndexWriter> getWriters() {
+        List<IndexWriter> writers = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            writers.add(partition.writer);
+        }
+        return writers;
+    }
+
+    synchronized Collection<String> getNames() {
+        return new ArrayList<>(partitions.keySet());
+    }
+
+    void commit() throws IOException {
+        for (IndexWriter writer : getWriters()) {
+            writer.commit();
+        }
+    }
+
+    int numDocs() {
+        int numDocs = 0;
+        for (IndexWriter writer : getWriters()) {
+            numDocs += writer.numDocs();
+        }
+        return numDocs;
+    }
+
+    /**
+     * @return the number of documents including the deleted ones not merged away yet
+     */
+    int maxDoc() {
+        int maxDoc = 0;
+        for (IndexWriter writer : getWriters()) {
+            maxDoc += writer.maxDoc();
+        }
+        return maxDoc;
+    }
+
+    /**
+     * @return the size of the files of all partitions, in memory or on disk
+     */
+    long sizeInBytes() throws IOException {
+        List<Directory> directories = new ArrayList<>();
+        synchronized (this) {
+            for (Partition partition : partitions.values()) {
+                directories.add(partition.directory);
+            }
+        }
+        long size = 0;
+        for (Directory directory : directories) {
+            for (String file : directory.listAll()) {
+                try {
+                    size += directory.fileLength(file);
+                } catch (FileNotFoundException | NoSuchFileException e) {
+                    // deleted by a merge in the meantime
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return how much of the files of each partition is in the page cache, by partition and file name
+     */
+    Map<String, PageCacheResidency.FileResidency> getResidency() throws IOException {
+        List<Partition> current;
+        synchronized (this) {
+            current = new ArrayList<>(partitions.values());
+        }
+        Map<String, PageCacheResidency.FileResidency> report = new TreeMap<>();
+        for (Partition partition : current) {
+            PageCacheResidency.addFiles(partition.path, partition.name.isEmpty() ? "" : partition.name + "/", report);
+        }
+        return report;
+    }
+
+    /**
+     * Closes the partition and deletes its directory. Searches that still use it keep their readers.
+     */
+    void drop(String name) throws IOException {
+        Partition partition;
+        synchronized (this) {
+            partition = partitions.remove(name);
+        }
+        if (partition != null) {
+            partition.close();
+            if (!name.isEmpty()) {
+                FileUtils.deleteDirectory(partition.path);
+                File parent = partition.path.getParentFile();
+                String[] siblings = parent.list();
+                if (!parent.equals(indexPath) && siblings != null && siblings.length == 0) {
+                    FileUtils.deleteDirectory(parent);
+                }
+            }
+            LOGGER.info("Dropped index partition " + partition.path);
+        }
+    }
+
+    /**
+     * Refreshes and acquires the readers of all partitions, the snapshot has to be released.
+     */
+    Snapshot acquire() throws IOException {
+        List<Partition> current;
+        synchronized (this) {
+            current = new ArrayList<>(partitions.values());
+        }
+        Snapshot snapshot = new Snapshot();
+        try {
+            for (Partition partition : current) {
+                partition.readerManager.maybeRefresh();
+                snapshot.add(partition.name, partition.readerManager, partition.readerManager.acquire());
+            }
+        } catch (IOException e) {
+            snapshot.close();
+            throw e;
+        }
+        return snapshot;
+    }
+
+    void release(Snapshot snapshot) {
+        snapshot.close();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Partition partition : partitions.values()) {
+            partition.close();
+        }
+        partitions.clear();
+    }
+
+    private class Partition implements Closeable {
+        final String name;
+        final File path;
+        final Directory directory;
+        final IndexWriter writer;
+        final ReaderManager readerManager;
+
+        Partition(String name, File path) throws IOException {
+            this.name = name;
+            this.path = path;
+            directory = openDirectory(path);
+            try {
+                writer = openWriter(directory);
+                writer.commit();
+                readerManager = new ReaderManager(writer, true);
+            } catch (IOException e) {
+                IOUtils.closeQuietly(directory);
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            IOUtils.closeQuietly(readerManager);
+            IOUtils.closeQuietly(writer);
+            IOUtils.closeQuietly(directory);
+        }
+    }
+
+    /**
+     * The readers of the partitions at one point in time.
+     */
+    class Snapshot implements Closeable {
+        private final List<String> names = new ArrayList<>();
+        private final List<ReaderManager> managers = new ArrayList<>();
+        private final List<DirectoryReader> readers = new ArrayList<>();
+        private final List<IndexReader> multiReaders = new ArrayList<>();
+        private IndexSearcher searcher;
+
+        private void add(String name, ReaderManager manager, DirectoryReader reader) {
+            names.add(name);
+            managers.add(manager);
+            readers.add(reader);
+        }
+
+        /**
+         * @return a searcher over all partitions
+         */
+        IndexSearcher getSearcher() throws IOException {
+            if (searcher == null) {
+                searcher = newSearcher(readers);
+            }
+            return searcher;
+        }
+
+        /**
+         * @return a searcher over the accepted partitions
+         */
+        IndexSearcher getSearcher(PartitionFilter filter) throws IOException {
+            List<DirectoryReader> accepted = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                if (filter.accept(names.get(i))) {
+                    accepted.add(readers.get(i));
+                }
+            }
+            return accepted.size() == readers.size() ? getSearcher() : newSearcher(accepted);
+        }
+
+        private IndexSearcher newSearcher(List<DirectoryReader> subReaders) throws IOException {
+            IndexReader reader;
+            if (subReaders.size() == 1) {
+                reader = subReaders.get(0);
+            } else {
+                // doesn't close the partition readers, they are released with the snapshot
+                reader = new MultiReader(subReaders.toArray(new IndexReader[subReaders.size()]), false);
+                multiReaders.add(reader);
+            }
+            return searcherFactory.newSearcher(reader, null);
+        }
+
+        @Override
+        public void close() {
+            for (IndexReader reader : multiReaders) {
+                IOUtils.closeQuietly(reader);
+            }
+            for (int i = 0; i < readers.size(); i++) {
+                try {
+                    managers.get(i).release(readers.get(i));
+                } catch (IOException e) {
+                    LOGGER.warn("Could not release the reader of partition " + names.get(i), e);
+                }
+            }
+        }
+    }
+}
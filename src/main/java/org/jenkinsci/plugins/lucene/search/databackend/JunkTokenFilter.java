@@ -0,0 +1,176 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+/**
+ * Replaces or drops tokens that are nearly unique, like commit SHAs, UUIDs, timestamps and temporary file names,
+ * so they don't fill the term dictionary of the console. Replaced tokens become {@code <sha>}, {@code <hex>},
+ * {@code <uuid>}, {@code <timestamp>}, {@code <duration>}, {@code <percent>}, {@code <number>} or {@code <tmp>}.
+ */
+public final class JunkTokenFilter extends TokenFilter {
+
+    public enum Mode {
+        OFF, NORMALIZE, DROP
+    }
+
+    static final String SHA_TOKEN = "<sha>";
+    static final Pattern SHA = Pattern.compile("[0-9a-fA-F]{40}|[0-9a-fA-F]{64}");
+
+    private static final Pattern UUID = Pattern
+            .compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    // at least 12 hex digits with a digit and a letter, like docker image ids
+    private static final Pattern HEX = Pattern.compile("(?=[0-9a-fA-F]*[0-9])(?=[0-9a-fA-F]*[a-fA-F])[0-9a-fA-F]{12,}");
+    private static final Pattern TIMESTAMP = Pattern.compile(
+            "\\d{4}-\\d{2}-\\d{2}([T_ ]?\\d{1,2}:\\d{2}(:\\d{2}([.,]\\d+)?)?Z?)?|\\d{1,2}:\\d{2}:\\d{2}([.,]\\d+)?");
+    private static final Pattern DURATION = Pattern.compile("\\d+[.,]\\d{3,}[a-z]{0,3}");
+    private static final Pattern PERCENT = Pattern.compile("\\d{1,3}([.,]\\d+)?%");
+    // epoch times, random ports and ids
+    private static final Pattern NUMBER = Pattern.compile("\\d{10,}");
+    // /tmp/... and temporary file names with long random numbers, like jenkins6042913328402740012.sh
+    private static final Pattern TMP = Pattern.compile("(.*/)?tmp/.*|[A-Za-z_-]+\\d{10,}(\\.\\w+)?");
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+
+    private final Mode mode;
+    private final boolean keepShas;
+    private final AtomicLong filtered;
+    // positions of dropped tokens after the last kept one, they belong to the final offset like a stop filter's
+    private int trailingPositions;
+
+    /**
+     * @param filtered counts the replaced or dropped tokens
+     */
+    public JunkTokenFilter(TokenStream input, Mode mode, AtomicLong filtered) {
+        this(input, mode, false, filtered);
+    }
+
+    /**
+     * @param keepShas if commit SHAs are kept as they are
+     */
+    JunkTokenFilter(TokenStream input, Mode mode, boolean keepShas, AtomicLong filtered) {
+        super(input);
+        this.mode = mode;
+        this.keepShas = keepShas;
+        this.filtered = filtered;
+    }
+
+    /**
+     * @return the replacement of a junk token, or null if it is kept
+     */
+    static String classify(CharSequence token) {
+        int length = token.length();
+        if (length < 5) {
+            return null;
+        }
+        char first = token.charAt(0);
+        if (first >= '0' && first <= '9') {
+            if (TIMESTAMP.matcher(token).matches()) {
+                return "<timestamp>";
+            }
+            if (DURATION.matcher(token).matches()) {
+                return "<duration>";
+            }
+            if (PERCENT.matcher(token).matches()) {
+                return "<percent>";
+            }
+            if (NUMBER.matcher(token).matches()) {
+                return "<number>";
+            }
+        }
+        if (length >= 12) {
+            if (SHA.matcher(token).matches()) {
+                return SHA_TOKEN;
+            }
+            if (length == 36 && UUID.matcher(token).matches()) {
+                return "<uuid>";
+            }
+            if (HEX.matcher(token).matches()) {
+                return "<hex>";
+            }
+            if (TMP.matcher(token).matches()) {
+                return "<tmp>";
+            }
+        } else if (token.toString().contains("tmp/")) {
+            return "<tmp>";
+        }
+        return null;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        int skippedPositions = 0;
+        while (input.incrementToken()) {
+            String replacement = classify(termAtt);
+            if (replacement == null || keepShas && replacement.equals(SHA_TOKEN)) {
+                posIncAtt.setPositionIncrement(posIncAtt.getPositionIncrement() + skippedPositions);
+                return true;
+            }
+            filtered.incrementAndGet();
+            if (mode == Mode.NORMALIZE) {
+                termAtt.setEmpty().append(replacement);
+                posIncAtt.setPositionIncrement(posIncAtt.getPositionIncrement() + skippedPositions);
+                return true;
+            }
+            skippedPositions += posIncAtt.getPositionIncrement();
+        }
+        trailingPositions = skippedPositions;
+        return false;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        posIncAtt.setPositionIncrement(posIncAtt.getPositionIncrement() + trailingPositions);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        trailingPositions = 0;
+    }
+
+    /**
+     * Filters the given fields of the analyzer, counting per field in {@code stats}.
+     */
+    static Analyzer wrap(Analyzer analyzer, Mode mode, Set<String> fields, JunkTokenStats stats) {
+        return wrap(analyzer, mode, false, fields, stats);
+    }
+
+    /**
+     * Normalizes the junk tokens of queries on the given fields like the index did, so a query for a timestamp
+     * finds the {@code <timestamp>} tokens. Commit SHAs are kept, they are looked up in their own field.
+     */
+    static Analyzer wrapForQuerying(Analyzer analyzer, Set<String> fields) {
+        return wrap(analyzer, Mode.NORMALIZE, true, fields, new JunkTokenStats());
+    }
+
+    private static Analyzer wrap(final Analyzer analyzer, final Mode mode, final boolean keepShas,
+            final Set<String> fields, final JunkTokenStats stats) {
+        return new AnalyzerWrapper(Analyzer.PER_FIELD_REUSE_STRATEGY) {
+            @Override
+            protected Analyzer getWrappedAnalyzer(String fieldName) {
+                return analyzer;
+            }
+
+            @Override
+            protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+                if (!fields.contains(fieldName)) {
+                    return components;
+                }
+                return new TokenStreamComponents(components.getTokenizer(),
+                        new JunkTokenFilter(components.getTokenStream(), mode, keepShas, stats.counter(fieldName)));
+            }
+        };
+    }
+}
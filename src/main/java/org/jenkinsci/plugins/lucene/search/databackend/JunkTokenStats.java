@@ -0,0 +1,32 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the tokens {@link JunkTokenFilter} replaced or dropped, per field, since the backend was created.
+ */
+class JunkTokenStats {
+
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    AtomicLong counter(String field) {
+        AtomicLong counter = counters.get(field);
+        if (counter == null) {
+            counters.putIfAbsent(field, new AtomicLong());
+            counter = counters.get(field);
+        }
+        return counter;
+    }
+
+    Map<String, Long> getCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            counts.put(counter.getKey(), counter.getValue().get());
+        }
+        return counts;
+    }
+}
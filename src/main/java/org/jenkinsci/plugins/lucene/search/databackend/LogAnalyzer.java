@@ -0,0 +1,29 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import org.apache.lucene.analysis.Analyzer;
+
+/**
+ * Case sensitive analyzer based on {@link LogTokenizer}. Use {@link #forIndexing()} when writing documents and
+ * highlighting, {@link #forQuerying()} in the query parser.
+ */
+public class LogAnalyzer extends Analyzer {
+
+    private final boolean emitParts;
+
+    private LogAnalyzer(boolean emitParts) {
+        this.emitParts = emitParts;
+    }
+
+    public static LogAnalyzer forIndexing() {
+        return new LogAnalyzer(true);
+    }
+
+    public static LogAnalyzer forQuerying() {
+        return new LogAnalyzer(false);
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(final String fieldName) {
+        return new TokenStreamComponents(new LogTokenizer(emitParts));
+    }
+}
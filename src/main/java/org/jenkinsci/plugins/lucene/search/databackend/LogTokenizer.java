@@ -0,0 +1,231 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Tokenizer for build output. Only whitespace, quotes, brackets and a few separators like {@code ,;=|} end a token,
+ * so file paths, URLs, Java class names, stack frames ({@code org.foo.Bar.run(Bar.java:42)} gives
+ * {@code org.foo.Bar.run} and {@code Bar.java:42}) and error codes like {@code ORA-00942} stay one token.
+ *
+ * With {@code emitParts} the parts of a compound token, the runs of letters, digits and underscores, follow it at
+ * the same position, so {@code NullPointerException} finds {@code java.lang.NullPointerException} without a
+ * wildcard. Parts are meant for indexing only; the query side should not emit them, otherwise every compound
+ * query term becomes a disjunction of its parts.
+ *
+ * The tokenizer reads the input in blocks into a reused buffer and creates no objects per token.
+ */
+public final class LogTokenizer extends Tokenizer {
+
+    public static final String WORD = "<WORD>";
+    public static final String COMPOUND = "<COMPOUND>";
+    public static final String PART = "<PART>";
+    public static final String ERROR_CODE = "<ERROR_CODE>";
+
+    private static final int IO_BUFFER_SIZE = 4096;
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+    private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+
+    private final boolean emitParts;
+    private final int maxTokenLength;
+
+    private final char[] ioBuffer = new char[IO_BUFFER_SIZE];
+    private int bufferLength;
+    private int bufferIndex;
+    // offset of ioBuffer[0] in the input
+    private int bufferOffset;
+    private int finalOffset;
+
+    private char[] word = new char[64];
+    private int wordLength;
+    private int wordOffset;
+
+    // start and end of every part in word
+    private int[] parts = new int[32];
+    private int partCount;
+    private int nextPart;
+
+    public LogTokenizer(boolean emitParts) {
+        this(emitParts, CaseSensitiveAnalyzer.DEFAULT_MAX_TOKEN_LENGTH);
+    }
+
+    public LogTokenizer(boolean emitParts, int maxTokenLength) {
+        this.emitParts = emitParts;
+        this.maxTokenLength = maxTokenLength;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        clearAttributes();
+        if (nextPart < partCount) {
+            int start = parts[2 * nextPart];
+            int end = parts[2 * nextPart + 1];
+            nextPart++;
+            setToken(start, end, PART);
+            posIncAtt.setPositionIncrement(0);
+            return true;
+        }
+        while (readWord()) {
+            int start = 0;
+            int end = wordLength;
+            while (start < end && !isWordChar(word[start])) {
+                start++;
+            }
+            while (end > start && !isWordChar(word[end - 1])) {
+                end--;
+            }
+            if (start == end) {
+                continue;
+            }
+            findParts(start, end);
+            setToken(start, end, isErrorCode(start, end) ? ERROR_CODE : partCount > 1 ? COMPOUND : WORD);
+            nextPart = 0;
+            if (!emitParts || partCount < 2) {
+                partCount = 0;
+            }
+            return true;
+        }
+        partCount = 0;
+        return false;
+    }
+
+    private void setToken(int start, int end, String type) {
+        termAtt.copyBuffer(word, start, end - start);
+        offsetAtt.setOffset(correctOffset(wordOffset + start), correctOffset(wordOffset + end));
+        typeAtt.setType(type);
+    }
+
+    /**
+     * Reads up to the next delimiter into {@link #word}. A word longer than the maximum token length is cut, the
+     * rest is read as the next word.
+     */
+    private boolean readWord() throws IOException {
+        wordLength = 0;
+        while (true) {
+            if (bufferIndex >= bufferLength) {
+                bufferOffset += bufferLength;
+                bufferIndex = 0;
+                bufferLength = Math.max(input.read(ioBuffer, 0, ioBuffer.length), 0);
+                if (bufferLength == 0) {
+                    finalOffset = correctOffset(bufferOffset);
+                    return wordLength > 0;
+                }
+            }
+            char c = ioBuffer[bufferIndex];
+            if (isDelimiter(c)) {
+                bufferIndex++;
+                if (wordLength > 0) {
+                    return true;
+                }
+                continue;
+            }
+            if (wordLength == 0) {
+                wordOffset = bufferOffset + bufferIndex;
+            } else if (wordLength == maxTokenLength) {
+                return true;
+            }
+            if (wordLength == word.length) {
+                word = ArrayUtil.grow(word, wordLength + 1);
+            }
+            word[wordLength++] = c;
+            bufferIndex++;
+        }
+    }
+
+    private void findParts(int start, int end) {
+        partCount = 0;
+        int i = start;
+        while (i < end) {
+            while (i < end && !isWordChar(word[i])) {
+                i++;
+            }
+            int partStart = i;
+            while (i < end && isWordChar(word[i])) {
+                i++;
+            }
+            if (i > partStart) {
+                if (2 * partCount + 1 >= parts.length) {
+                    parts = ArrayUtil.grow(parts, 2 * partCount + 2);
+                }
+                parts[2 * partCount] = partStart;
+                parts[2 * partCount + 1] = i;
+                partCount++;
+            }
+        }
+    }
+
+    /**
+     * One to six upper case letters, an optional dash and at least two digits, like {@code E1234},
+     * {@code MSB3073} or {@code ORA-00942}.
+     */
+    private boolean isErrorCode(int start, int end) {
+        int i = start;
+        while (i < end && i - start < 6 && word[i] >= 'A' && word[i] <= 'Z') {
+            i++;
+        }
+        if (i == start) {
+            return false;
+        }
+        if (i < end && word[i] == '-') {
+            i++;
+        }
+        int digits = i;
+        while (i < end && word[i] >= '0' && word[i] <= '9') {
+            i++;
+        }
+        return i == end && i - digits >= 2;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static boolean isDelimiter(char c) {
+        switch (c) {
+            case '"':
+            case '\'':
+            case '`':
+            case '(':
+            case ')':
+            case '[':
+            case ']':
+            case '{':
+            case '}':
+            case '<':
+            case '>':
+            case ',':
+            case ';':
+            case '=':
+            case '|':
+                return true;
+            default:
+                return Character.isWhitespace(c) || Character.isISOControl(c);
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        offsetAtt.setOffset(finalOffset, finalOffset);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        bufferLength = 0;
+        bufferIndex = 0;
+        bufferOffset = 0;
+        finalOffset = 0;
+        partCount = 0;
+        nextPart = 0;
+    }
+}
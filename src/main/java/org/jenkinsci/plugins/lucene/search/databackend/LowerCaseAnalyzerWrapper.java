@@ -0,0 +1,28 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+
+/**
+ * Tokenizes like the wrapped analyzer and lower cases the tokens.
+ */
+class LowerCaseAnalyzerWrapper extends AnalyzerWrapper {
+
+    private final Analyzer analyzer;
+
+    LowerCaseAnalyzerWrapper(Analyzer analyzer) {
+        super(analyzer.getReuseStrategy());
+        this.analyzer = analyzer;
+    }
+
+    @Override
+    protected Analyzer getWrappedAnalyzer(String fieldName) {
+        return analyzer;
+    }
+
+    @Override
+    protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+        return new TokenStreamComponents(components.getTokenizer(), new LowerCaseFilter(components.getTokenStream()));
+    }
+}
@@ -1,20 +1,35 @@
 package org.jenkinsci.plugins.lucene.search.databackend;
 
-import com.google.common.collect.TreeMultimap;
 import hudson.model.Job;
 import hudson.model.Run;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import hudson.util.RunList;
 import jenkins.model.Jenkins;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+import org.apache.lucene.codecs.lucene53.Lucene53Codec;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.*;
@@ -29,6 +44,12 @@ import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FileSwitchDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.store.RateLimiter;
+import org.apache.lucene.util.BytesRef;
 import org.jenkinsci.plugins.lucene.search.Field;
 import org.jenkinsci.plugins.lucene.search.FreeTextSearchExtension;
 import org.jenkinsci.plugins.lucene.search.FreeTextSearchItemImplementation;
@@ -46,7 +67,9 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
     private static final org.apache.lucene.document.Field.Store STORE = org.apache.lucene.document.Field.Store.YES;
 
     private enum LuceneFieldType {
-        STRING, LONG, TEXT
+        STRING, LONG, TEXT,
+        // untokenized values with sorted set doc values, for filters and facets
+        KEYWORD
     }
 
     static final Map<Field, LuceneFieldType> FIELD_TYPE_MAP;
@@ -54,22 +77,20 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
     static {
         Map<Field, LuceneFieldType> types = new HashMap<>();
         types.put(PROJECT_NAME, LuceneFieldType.TEXT);
-        types.put(BUILD_NUMBER, LuceneFieldType.STRING);
+        types.put(BUILD_NUMBER, LuceneFieldType.LONG);
+        types.put(ID, LuceneFieldType.STRING);
         types.put(START_TIME, LuceneFieldType.LONG);
         types.put(CONSOLE, LuceneFieldType.TEXT);
         types.put(BUILD_DISPLAY_NAME, LuceneFieldType.TEXT);
         types.put(BUILD_PARAMETER, LuceneFieldType.TEXT);
+        types.put(RESULT, LuceneFieldType.KEYWORD);
+        types.put(DURATION, LuceneFieldType.LONG);
+        types.put(NODE, LuceneFieldType.KEYWORD);
+        types.put(CAUSE, LuceneFieldType.KEYWORD);
         FIELD_TYPE_MAP = Collections.unmodifiableMap(types);
     }
 
-    private static final Comparator<Float> FLOAT_COMPARATOR = new Comparator<Float>() {
-        @Override
-        public int compare(Float o1, Float o2) {
-            return o2.compareTo(o1);
-        }
-    };
-
-    private static final Comparator<Document> START_TIME_COMPARATOR = new Comparator<Document>() {
+    private static final Comparator<BuildHit> SCORE_START_TIME_COMPARATOR = new Comparator<BuildHit>() {
         private Long getStartTime(Document o) {
             IndexableField field = o.getField(START_TIME.fieldName);
             if (field != null) {
@@ -79,29 +100,315 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
         }
 
         @Override
-        public int compare(Document o1, Document o2) {
-            return getStartTime(o2).compareTo(getStartTime(o1));
+        public int compare(BuildHit o1, BuildHit o2) {
+            int byScore = Float.compare(o2.score, o1.score);
+            if (byScore != 0) {
+                return byScore;
+            }
+            return getStartTime(o2.build).compareTo(getStartTime(o1.build));
         }
     };
 
     private static final int MAX_HITS_PER_PAGE = 100;
 
-    private final Directory index;
+    public static final String STORED_COMPRESSION = "storedCompression";
+    public static final String CONSOLE_RETENTION = "consoleRetention";
+    public static final String CONSOLE_ANALYZER = "consoleAnalyzer";
+    public static final String WILDCARD_FIELDS = "wildcardFields";
+    public static final String CASE_INSENSITIVE_FIELD = "caseInsensitiveField";
+    public static final String REGEX_SEARCH = "regexSearch";
+    public static final String REGEX_MAX_CHUNKS = "regexMaxChunks";
+    public static final String REGEX_MAX_MB = "regexMaxMB";
+    public static final String JUNK_TOKENS = "junkTokens";
+    public static final String CONSOLE_PREPROCESSING = "consolePreprocessing";
+    public static final String PARTITION_BY_MONTH = "partitionByMonth";
+    public static final String PARTITION_MONTHS = "partitionMonths";
+    public static final String SHARDS = "shards";
+    public static final String DIRECTORY = "directory";
+    public static final String RAM_MAX_MB = "ramMaxMB";
+    public static final String PRELOAD = "preload";
+
+    // Queries starting with this are a java regex matched against the console
+    public static final String REGEX_PREFIX = "regex:";
+    // Character trigrams of the console, to find the candidates of a regex search
+    private static final String TRIGRAMS = "c_tri";
+    // Lower cased console, searched with ci:
+    private static final String CASE_INSENSITIVE = "ci";
+    // The untokenized project name, for exact job lookups
+    private static final String JOB_NAME_EXACT = "j_exact";
+    // Lower cased commit SHAs of the console, they stay searchable when the junk filter normalizes them away
+    private static final String SHA = "sha";
+    private static final Pattern SHA_IN_TEXT = Pattern
+            .compile("(?<![0-9a-fA-F])([0-9a-fA-F]{40}|[0-9a-fA-F]{64})(?![0-9a-fA-F])");
+    // The fields analyzed like the console, the junk filter applies to them
+    private static final Set<String> CONSOLE_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            CONSOLE.fieldName, CASE_INSENSITIVE, WildcardFields.REVERSED, WildcardFields.SUBSTRINGS,
+            WildcardFields.LONG_TOKENS)));
+    // Fields that hold one value and are never tokenized
+    private static final List<String> KEYWORD_FIELDS = Arrays.asList(BUILD_NUMBER.fieldName, ID.fieldName,
+            JOB_NAME_EXACT, NODE.fieldName, ExceptionExtractor.CLASS_FIELD, ExceptionExtractor.FRAME_FIELD);
+    // Keyword fields indexed lower case
+    private static final List<String> LOWER_CASE_KEYWORD_FIELDS = Arrays.asList(RESULT.fieldName, CAUSE.fieldName,
+            SHA);
+    // Required clauses on these fields don't score, they become filters the searcher can cache
+    private static final Set<String> FILTER_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            JOB_NAME_EXACT, BUILD_NUMBER.fieldName, START_TIME.fieldName, RESULT.fieldName, DURATION.fieldName,
+            NODE.fieldName, CAUSE.fieldName)));
+    private static final int QUERY_CACHE_SIZE = 1000;
+    private static final long QUERY_CACHE_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * The analyzers that can be selected with {@link #CONSOLE_ANALYZER}. Changing it needs a rebuild of the index.
+     */
+    public enum AnalyzerType {
+        STANDARD, LOG
+    }
+
+    /**
+     * Where the index is kept, selected with {@link #DIRECTORY}. {@code FS} lets Lucene choose between memory
+     * mapped and NIO files for the platform. An index in memory starts empty and is lost when the backend is closed.
+     */
+    public enum DirectoryType {
+        FS, MMAP, NIO, RAM
+    }
+
+    // terms dictionary and index, norms and doc values, read by almost every search
+    private static final Set<String> HOT_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "tim", "tip", "nvd", "nvm", "dvd", "dvm")));
+
+    // Stored on the console chunks of builds that are still running
+    private static final String RUNNING_CHUNK = "livechunk";
+    // The build id as sorted doc values on the running chunks, so they are counted once per build
+    private static final String RUNNING_BUILD = "livebuild";
+
+    // A finished build is a block of console chunk documents followed by the build document
+    private static final String DOC_TYPE = "doctype";
+    private static final String CHUNK = "chunk";
+    private static final String BUILD = "build";
+    private static final String CHUNK_FIRST_LINE = "firstline";
+    private static final String CHUNK_LAST_LINE = "lastline";
+    // Everything that is not a chunk is its own parent, so running builds and indexes written before the
+    // console was chunked keep working
+    private static final Query PARENT_QUERY = new BooleanQuery.Builder()
+            .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+            .add(new TermQuery(new Term(DOC_TYPE, CHUNK)), BooleanClause.Occur.MUST_NOT)
+            .build();
+    // Everything that may carry console: the chunks, running chunks and builds indexed before chunking
+    private static final Query CONSOLE_QUERY = new BooleanQuery.Builder()
+            .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+            .add(new TermQuery(new Term(DOC_TYPE, BUILD)), BooleanClause.Occur.MUST_NOT)
+            .build();
+
     private final Analyzer analyzer;
-    private final IndexWriter dbWriter;
+    private final Analyzer queryAnalyzer;
+    // Like the index analyzer without the junk filter, so fragments show the original tokens
+    private final Analyzer highlightAnalyzer;
+    private final JunkTokenFilter.Mode junkTokens;
+    private final JunkTokenStats junkStats = new JunkTokenStats();
+    private final IndexPartitions partitions;
+    private final ParentBitSets parentBitSets = new ParentBitSets(PARENT_QUERY);
+    // Shared by all searchers of the backend, cached filters of unchanged segments survive a refresh
+    private final LRUQueryCache queryCache = new LRUQueryCache(QUERY_CACHE_SIZE, QUERY_CACHE_BYTES);
+    private final QueryCachingPolicy queryCachingPolicy = new UsageTrackingQueryCachingPolicy();
+    private final ConsoleRetentionPolicy retentionPolicy;
+    private final boolean wildcardFields;
+    private final boolean caseInsensitiveField;
+    private final boolean regexSearch;
+    private final boolean consolePreprocessing;
+    private final PartitionLayout layout;
+    private final ExecutorService searchExecutor;
+    private final DirectoryType directoryType;
+    // memory mapped, the hot files are read into the page cache when a segment is opened
+    private final boolean preload;
+    // in memory, deletes the oldest builds above the size limit, null without a limit
+    private final BuildEviction eviction;
+    private final RegexScan regexScan;
     private volatile ScoreDoc lastDoc;
+    // if some builds were indexed before builds had an id and a numeric build number, until the index is cleaned
+    private volatile boolean legacyBuilds;
 
     public LuceneSearchBackend(final File indexPath) throws IOException {
-        analyzer = new CaseSensitiveAnalyzer();
-        index = FSDirectory.open(indexPath.toPath());
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        dbWriter = new IndexWriter(index, config);
-        dbWriter.commit();
+        this(indexPath, Collections.<String, Object>emptyMap());
+    }
+
+    public LuceneSearchBackend(final File indexPath, final RebuildThrottle throttle) throws IOException {
+        this(indexPath, Collections.<String, Object>singletonMap(SearchBackendManager.REBUILD_THROTTLE, throttle));
+    }
+
+    /**
+     * @param options the backend configuration, missing options get their defaults. The stored fields
+     *                compression only applies to segments written from now on, existing segments are recompressed
+     *                when they are merged.
+     */
+    public LuceneSearchBackend(final File indexPath, final Map<String, Object> options) throws IOException {
+        retentionPolicy = getRetentionPolicy(options);
+        wildcardFields = Boolean.TRUE.equals(options.get(WILDCARD_FIELDS));
+        caseInsensitiveField = Boolean.TRUE.equals(options.get(CASE_INSENSITIVE_FIELD));
+        regexSearch = Boolean.TRUE.equals(options.get(REGEX_SEARCH));
+        consolePreprocessing = Boolean.TRUE.equals(options.get(CONSOLE_PREPROCESSING));
+        final int shards = Math.max(getInt(options, SHARDS, 1), 1);
+        directoryType = getDirectoryType(options);
+        final long ramMaxBytes = getInt(options, RAM_MAX_MB, 256) * 1024L * 1024L;
+        preload = directoryType == DirectoryType.MMAP && Boolean.TRUE.equals(options.get(PRELOAD));
+        regexScan = new RegexScan(CONSOLE.fieldName, CHUNK_FIRST_LINE, regexSearch ? TRIGRAMS : null, CONSOLE_QUERY,
+                START_TIME.fieldName, getInt(options, REGEX_MAX_CHUNKS, 10000),
+                getInt(options, REGEX_MAX_MB, 256) * 1024L * 1024L, RegexScan.DEFAULT_MAX_MILLIS);
+        junkTokens = getJunkTokensMode(options);
+        Analyzer baseAnalyzer;
+        Analyzer baseQueryAnalyzer;
+        if (getAnalyzerType(options) == AnalyzerType.LOG) {
+            baseAnalyzer = LogAnalyzer.forIndexing();
+            baseQueryAnalyzer = LogAnalyzer.forQuerying();
+        } else {
+            baseAnalyzer = new CaseSensitiveAnalyzer();
+            baseQueryAnalyzer = baseAnalyzer;
+        }
+        highlightAnalyzer = new PerFieldAnalyzerWrapper(baseAnalyzer, Collections.<String, Analyzer>singletonMap(
+                CASE_INSENSITIVE, new LowerCaseAnalyzerWrapper(baseAnalyzer)));
+        if (junkTokens != JunkTokenFilter.Mode.OFF) {
+            baseAnalyzer = JunkTokenFilter.wrap(baseAnalyzer, junkTokens, CONSOLE_FIELDS, junkStats);
+        }
+        if (junkTokens == JunkTokenFilter.Mode.NORMALIZE) {
+            // the console only has the placeholders, dropped tokens can't be found at all
+            baseQueryAnalyzer = JunkTokenFilter.wrapForQuerying(baseQueryAnalyzer, CONSOLE_FIELDS);
+        }
+        Map<String, Analyzer> fieldAnalyzers = new HashMap<>();
+        Map<String, Analyzer> queryFieldAnalyzers = new HashMap<>();
+        Analyzer keywordAnalyzer = new KeywordAnalyzer();
+        for (String keywordField : KEYWORD_FIELDS) {
+            fieldAnalyzers.put(keywordField, keywordAnalyzer);
+            queryFieldAnalyzers.put(keywordField, keywordAnalyzer);
+        }
+        fieldAnalyzers.put(CASE_INSENSITIVE, new LowerCaseAnalyzerWrapper(baseAnalyzer));
+        queryFieldAnalyzers.put(CASE_INSENSITIVE, new LowerCaseAnalyzerWrapper(baseQueryAnalyzer));
+        if (regexSearch) {
+            fieldAnalyzers.put(TRIGRAMS, RegexTrigrams.analyzer());
+        }
+        for (String lowerCaseField : LOWER_CASE_KEYWORD_FIELDS) {
+            queryFieldAnalyzers.put(lowerCaseField, new LowerCaseAnalyzerWrapper(keywordAnalyzer));
+        }
+        analyzer = new PerFieldAnalyzerWrapper(wildcardFields ? WildcardFields.wrap(baseAnalyzer) : baseAnalyzer,
+                fieldAnalyzers);
+        queryAnalyzer = new PerFieldAnalyzerWrapper(baseQueryAnalyzer, queryFieldAnalyzers);
+        final RateLimiter mergeRateLimiter = getRebuildThrottle(options).mergeRateLimiter();
+        final Lucene50StoredFieldsFormat.Mode storedCompression = getStoredCompression(options);
+        searchExecutor = shards > 1 ? Executors.newFixedThreadPool(
+                Math.min(shards, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Lucene search");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }) : null;
+        partitions = new IndexPartitions(indexPath, new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                // with an executor the segments of all shards are searched in parallel
+                IndexSearcher searcher = new IndexSearcher(reader, searchExecutor);
+                searcher.setQueryCache(queryCache);
+                searcher.setQueryCachingPolicy(queryCachingPolicy);
+                return searcher;
+            }
+        }) {
+            @Override
+            protected Directory openDirectory(File path) throws IOException {
+                return new MergeThrottlingDirectory(newDirectory(path), mergeRateLimiter);
+            }
+
+            @Override
+            protected IndexWriter openWriter(Directory directory) throws IOException {
+                IndexWriterConfig config = new IndexWriterConfig(analyzer);
+                config.setCodec(new Lucene53Codec(storedCompression));
+                if (preload) {
+                    // the hot files of small segments would otherwise be inside compound files
+                    TieredMergePolicy mergePolicy = new TieredMergePolicy();
+                    mergePolicy.setNoCFSRatio(0);
+                    config.setMergePolicy(mergePolicy);
+                    config.setUseCompoundFile(false);
+                }
+                return new IndexWriter(directory, config);
+            }
+        };
+        layout = new PartitionLayout(partitions, Boolean.TRUE.equals(options.get(PARTITION_BY_MONTH)),
+                getInt(options, PARTITION_MONTHS, 0), shards);
+        layout.open();
+        eviction = directoryType == DirectoryType.RAM && ramMaxBytes > 0 ? new BuildEviction(partitions, PARENT_QUERY,
+                ID.fieldName, START_TIME.fieldName, ramMaxBytes) : null;
+        legacyBuilds = hasLegacyBuilds();
+        if (legacyBuilds) {
+            LOGGER.warn("The index has builds of an older version, build number queries don't find them until the "
+                    + "index is rebuilt with overwrite");
+        }
+    }
+
+    /**
+     * @return if some documents have no {@link Field#ID}, like all documents written before it existed. Their build
+     *         number is a string term and they are not replaced or removed by the id.
+     */
+    private boolean hasLegacyBuilds() throws IOException {
+        IndexPartitions.Snapshot snapshot = partitions.acquire();
+        try {
+            for (LeafReaderContext leaf : snapshot.getSearcher().getIndexReader().leaves()) {
+                Terms ids = leaf.reader().terms(ID.fieldName);
+                if ((ids != null ? ids.getDocCount() : 0) < leaf.reader().maxDoc()) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            partitions.release(snapshot);
+        }
+    }
+
+    /**
+     * Deletes the documents of a build that were written before builds had an {@link Field#ID}, the id of the build
+     * doesn't replace them.
+     */
+    private void deleteLegacyBuild(Object job, Object number) throws IOException {
+        if (!legacyBuilds || job == null || number == null) {
+            return;
+        }
+        try {
+            Query query = new BooleanQuery.Builder()
+                    .add(getQueryParser().parse(PROJECT_NAME.fieldName + ":\"" + QueryParser.escape(job.toString())
+                            + "\""), BooleanClause.Occur.MUST)
+                    .add(new TermQuery(new Term(BUILD_NUMBER.fieldName, number.toString())), BooleanClause.Occur.MUST)
+                    .build();
+            for (IndexWriter writer : partitions.getWriters()) {
+                writer.deleteDocuments(query);
+            }
+        } catch (ParseException e) {
+            LOGGER.warn("Could not delete the old documents of " + job + " #" + number + ": " + e);
+        }
+    }
+
+    /**
+     * With preload the hot files are opened from a memory mapped directory that reads them into the page cache when
+     * a segment is opened, so the first searches after a restart don't wait for the disk.
+     */
+    private Directory newDirectory(File path) throws IOException {
+        switch (directoryType) {
+            case RAM:
+                return new RAMDirectory();
+            case NIO:
+                return new NIOFSDirectory(path.toPath());
+            case MMAP:
+                if (!preload) {
+                    return new MMapDirectory(path.toPath());
+                }
+                MMapDirectory hot = new MMapDirectory(path.toPath());
+                hot.setPreload(true);
+                // both list the same files, FileSwitchDirectory only picks the one that opens them
+                return new FileSwitchDirectory(HOT_EXTENSIONS, hot, new MMapDirectory(path.toPath()), true);
+            default:
+                return FSDirectory.open(path.toPath());
+        }
     }
 
     public static LuceneSearchBackend create(final Map<String, Object> config) {
         try {
-            return new LuceneSearchBackend(getIndexPath(config));
+            return new LuceneSearchBackend(getIndexPath(config), config);
         } catch (IOException e) {
             LOGGER.error("create lucene search backend failed: " + e);
         }
@@ -112,6 +419,72 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
         return (File) config.get("lucenePath");
     }
 
+    private static RebuildThrottle getRebuildThrottle(final Map<String, Object> config) {
+        RebuildThrottle throttle = (RebuildThrottle) config.get(SearchBackendManager.REBUILD_THROTTLE);
+        return throttle != null ? throttle : new RebuildThrottle();
+    }
+
+    private static Lucene50StoredFieldsFormat.Mode getStoredCompression(final Map<String, Object> config) {
+        Object mode = config.get(STORED_COMPRESSION);
+        return mode != null ? Lucene50StoredFieldsFormat.Mode.valueOf(mode.toString())
+                : Lucene50StoredFieldsFormat.Mode.BEST_SPEED;
+    }
+
+    private static ConsoleRetentionPolicy getRetentionPolicy(final Map<String, Object> config) {
+        ConsoleRetentionPolicy policy = (ConsoleRetentionPolicy) config.get(CONSOLE_RETENTION);
+        return policy != null ? policy : ConsoleRetentionPolicy.KEEP_ALL;
+    }
+
+    private static int getInt(final Map<String, Object> config, String key, int defaultValue) {
+        Object value = config.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    private static AnalyzerType getAnalyzerType(final Map<String, Object> config) {
+        Object type = config.get(CONSOLE_ANALYZER);
+        return type != null ? AnalyzerType.valueOf(type.toString()) : AnalyzerType.STANDARD;
+    }
+
+    private static DirectoryType getDirectoryType(final Map<String, Object> config) {
+        Object type = config.get(DIRECTORY);
+        return type != null ? DirectoryType.valueOf(type.toString()) : DirectoryType.FS;
+    }
+
+    private static JunkTokenFilter.Mode getJunkTokensMode(final Map<String, Object> config) {
+        Object mode = config.get(JUNK_TOKENS);
+        return mode != null ? JunkTokenFilter.Mode.valueOf(mode.toString()) : JunkTokenFilter.Mode.OFF;
+    }
+
+    @Override
+    public Map<String, Long> getFilteredTokenCounts() {
+        return junkStats.getCounts();
+    }
+
+    @Override
+    public Set<Capability> getCapabilities() {
+        return EnumSet.allOf(Capability.class);
+    }
+
+    /**
+     * The cache of the filters, shared by the searchers.
+     */
+    LRUQueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    @Override
+    public Map<String, PageCacheResidency.FileResidency> getResidency() {
+        if (directoryType == DirectoryType.RAM) {
+            return Collections.emptyMap();
+        }
+        try {
+            return partitions.getResidency();
+        } catch (IOException e) {
+            LOGGER.warn("Could not check the page cache residency of the index", e);
+        }
+        return Collections.emptyMap();
+    }
+
     @Override
     public SearchBackend<Document> reconfigure(final Map<String, Object> newConfig) {
         close();
@@ -119,18 +492,20 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
     }
 
     public void close() {
-        IOUtils.closeQuietly(dbWriter);
-        IOUtils.closeQuietly(index);
+        IOUtils.closeQuietly(partitions);
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+        }
     }
 
-    private Long getWithDefault(String number, Long defaultNumber) {
-        if (number != null) {
-            Long l = Long.getLong(number);
-            if (l != null) {
-                return l;
-            }
-        }
-        return defaultNumber;
+    /**
+     * @return the writer of the partition of the build, or null if the month it started is no longer kept
+     */
+    private IndexWriter getWriter(Map<Field, Object> values) throws IOException {
+        Object job = values.get(PROJECT_NAME);
+        Object startTime = values.get(START_TIME);
+        return layout.getWriter(job != null ? job.toString() : null,
+                startTime instanceof Number ? ((Number) startTime).longValue() : System.currentTimeMillis());
     }
 
     private static Set<String> calculateQueryFieldsRecursively(Query query) {
@@ -139,7 +514,11 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
         if (query instanceof TermQuery) {
             TermQuery tQuery = (TermQuery) query;
             Term term = tQuery.getTerm();
-            fields.add(term.field());
+            fields.add(WildcardFields.isShadowField(term.field()) || SHA.equals(term.field()) ? CONSOLE.fieldName
+                    : term.field());
+        } else if (query instanceof MultiTermQuery) {
+            String field = ((MultiTermQuery) query).getField();
+            fields.add(WildcardFields.isShadowField(field) ? CONSOLE.fieldName : field);
         } else if (query instanceof BooleanQuery) {
             BooleanQuery bQuery = (BooleanQuery) query;
             List<BooleanClause> clauses = bQuery.clauses();
@@ -163,7 +542,11 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
 
         if (words.size() >= 2) {
             try {
-                Query jobNameQuery = parser.parse(PROJECT_NAME.fieldName + ":" + words.get(0));
+                Query jobNameQuery = new TermQuery(new Term(JOB_NAME_EXACT, words.get(0)));
+                if (searcher.search(jobNameQuery, 1).scoreDocs.length == 0) {
+                    // indexes written by older versions only have the tokenized job name
+                    jobNameQuery = parser.parse(PROJECT_NAME.fieldName + ":" + words.get(0));
+                }
                 if (searcher.search(jobNameQuery, 1).scoreDocs.length > 0) {
                     highlight = parser.parse(words.get(1));
                     query = new BooleanQuery.Builder()
@@ -176,64 +559,69 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
             }
         }
 
+        query = toFilterClauses(query);
         Set<String> fields = calculateQueryFieldsRecursively(highlight);
-        return new Pair<>(query.rewrite(searcher.getIndexReader()),
+        // the query is rewritten by the searcher that runs it, its start time ranges select the partitions
+        return new Pair<>(query,
                 highlight.rewrite(searcher.getIndexReader()),
-                fields.contains(CONSOLE.fieldName));
+                fields.contains(CONSOLE.fieldName) || fields.contains(CASE_INSENSITIVE));
     }
 
 
-    @Override
-    public List<FreeTextSearchItemImplementation> getHits(String q, boolean searchNext) {
-        List<FreeTextSearchItemImplementation> luceneSearchResultImpl = new ArrayList<>();
-        try {
-            IndexReader reader = DirectoryReader.open(index);
-            IndexSearcher searcher = new IndexSearcher(reader);
-            Pair<Query, Query, Boolean> fieldQueryPair = parseQuery(q, searcher);
-            Query query = fieldQueryPair.first;
-            Query highlight = fieldQueryPair.second;
-            Boolean isShowConsole = fieldQueryPair.third;
-
-            QueryTermScorer scorer = new QueryTermScorer(highlight);
-            Highlighter highlighter = new Highlighter(new SimpleHTMLFormatter(), scorer);
-            highlighter.setMaxDocCharsToAnalyze(Integer.MAX_VALUE);
-            ScoreDoc[] hits;
-            if (searchNext) {
-                hits = searcher.searchAfter(lastDoc, query, MAX_HITS_PER_PAGE).scoreDocs;
-            } else {
-                hits = searcher.searchAfter(null, query, MAX_HITS_PER_PAGE).scoreDocs;
-            }
-            if (hits.length != 0) {
-                lastDoc = hits[hits.length - 1];
-            }
-            TreeMultimap<Float, Document> docs = TreeMultimap.create(FLOAT_COMPARATOR, START_TIME_COMPARATOR);
+    /**
+     * Parses the query like a search does, except for a job name at its start, which needs the index.
+     */
+    public Query parse(String q) throws ParseException {
+        return toFilterClauses(getQueryParser().parse(q));
+    }
 
-            for (ScoreDoc hit : hits) {
-                Document doc = searcher.doc(hit.doc);
-                docs.put(hit.score, doc);
+    /**
+     * Turns the required clauses that only use {@link #FILTER_FIELDS} into non-scoring filter clauses. The searcher
+     * caches them per segment once they are used a few times.
+     */
+    static Query toFilterClauses(Query query) {
+        if (isFilter(query)) {
+            return new ConstantScoreQuery(query);
+        }
+        if (!(query instanceof BooleanQuery)) {
+            return query;
+        }
+        BooleanQuery booleanQuery = (BooleanQuery) query;
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.setDisableCoord(booleanQuery.isCoordDisabled());
+        builder.setMinimumNumberShouldMatch(booleanQuery.getMinimumNumberShouldMatch());
+        for (BooleanClause clause : booleanQuery.clauses()) {
+            if (clause.getOccur() == BooleanClause.Occur.MUST && isFilter(clause.getQuery())) {
+                builder.add(clause.getQuery(), BooleanClause.Occur.FILTER);
+            } else {
+                builder.add(toFilterClauses(clause.getQuery()), clause.getOccur());
             }
+        }
+        Query filtered = builder.build();
+        filtered.setBoost(booleanQuery.getBoost());
+        return filtered;
+    }
 
-            for (Document doc : docs.values()) {
-                String[] bestFragments = EMPTY_ARRAY;
-                try {
-                    bestFragments = highlighter.getBestFragments(analyzer, CONSOLE.fieldName,
-                            doc.get(CONSOLE.fieldName), MAX_NUM_FRAGMENTS);
-                } catch (InvalidTokenOffsetsException e) {
-                    LOGGER.debug("Failed to find bestFragments", e);
-                }
+    private static boolean isFilter(Query query) {
+        Set<String> fields = calculateQueryFieldsRecursively(query);
+        return !fields.isEmpty() && FILTER_FIELDS.containsAll(fields);
+    }
 
-                String projectName = doc.get(PROJECT_NAME.fieldName);
-                String buildNumber = doc.get(BUILD_NUMBER.fieldName);
-                String searchName = doc.get(BUILD_DISPLAY_NAME.fieldName);
+    @Override
+    public List<FreeTextSearchItemImplementation> getHits(String q, boolean searchNext) {
+        return search(q, searchNext, SearchOptions.DEFAULT).getItems();
+    }
 
-                String url = "/job/" + projectName + "/" + buildNumber + "/";
-                luceneSearchResultImpl.add(new FreeTextSearchItemImplementation(searchName,
-                        projectName,
-                        bestFragments,
-                        url,
-                        isShowConsole));
+    @Override
+    public SearchPage search(String q, boolean searchNext, SearchOptions options) {
+        SearchPage page = new SearchPage(new ArrayList<FreeTextSearchItemImplementation>(), SearchFacets.EMPTY);
+        try {
+            IndexPartitions.Snapshot snapshot = partitions.acquire();
+            try {
+                page = search(snapshot, q, searchNext, options);
+            } finally {
+                partitions.release(snapshot);
             }
-            reader.close();
         } catch (ParseException e) {
 //            LOGGER.warn("Search Parsing Error: ", e);
         } catch (IOException e) {
@@ -241,22 +629,314 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
         } catch (AlreadyClosedException e) {
             LOGGER.warn("IndexReader is closed: ", e);
         }
+        return page;
+    }
+
+    /**
+     * Runs only the facets collector, so no stored fields are loaded, nothing is highlighted and the start of the
+     * next page of the last search is kept.
+     */
+    @Override
+    public SearchFacets getFacets(String q, SearchOptions options) {
+        if (q.trim().startsWith(REGEX_PREFIX)) {
+            return SearchFacets.EMPTY;
+        }
+        final Set<String> visibleJobs = options.getVisibleJobs();
+        try {
+            IndexPartitions.Snapshot snapshot = partitions.acquire();
+            try {
+                Query query = parseQuery(q, snapshot.getSearcher()).first;
+                // the slices of a parallel search get a collector each
+                return layout.getSearcher(snapshot, query).search(query,
+                        new CollectorManager<BuildFacetsCollector, SearchFacets>() {
+                            @Override
+                            public BuildFacetsCollector newCollector() {
+                                return new BuildFacetsCollector(parentBitSets, RUNNING_BUILD, JOB_NAME_EXACT,
+                                        RESULT.fieldName, START_TIME.fieldName, visibleJobs);
+                            }
+
+                            @Override
+                            public SearchFacets reduce(Collection<BuildFacetsCollector> collectors) {
+                                return BuildFacetsCollector.getFacets(collectors);
+                            }
+                        });
+            } finally {
+                partitions.release(snapshot);
+            }
+        } catch (ParseException e) {
+            LOGGER.debug("Facets query parsing error: ", e);
+        } catch (IOException e) {
+            LOGGER.warn("Facets IO Error: ", e);
+        } catch (AlreadyClosedException e) {
+            LOGGER.warn("IndexReader is closed: ", e);
+        }
+        return SearchFacets.EMPTY;
+    }
+
+    /**
+     * Counts the builds per exception class, over all builds or the builds matching the query. Doesn't read the
+     * console, only the doc values of the exception field.
+     */
+    @Override
+    public Map<String, Long> getTopExceptions(String q, int limit) {
+        try {
+            IndexPartitions.Snapshot snapshot = partitions.acquire();
+            try {
+                Query query = StringUtils.isBlank(q) ? PARENT_QUERY : parseQuery(q, snapshot.getSearcher()).first;
+                TopExceptionsCollector collector = new TopExceptionsCollector(parentBitSets);
+                layout.getSearcher(snapshot, query).search(query, collector);
+                return collector.getTop(limit);
+            } finally {
+                partitions.release(snapshot);
+            }
+        } catch (ParseException e) {
+            LOGGER.debug("Top exceptions query parsing error: ", e);
+        } catch (IOException e) {
+            LOGGER.warn("Top exceptions IO Error: ", e);
+        } catch (AlreadyClosedException e) {
+            LOGGER.warn("IndexReader is closed: ", e);
+        }
+        return Collections.emptyMap();
+    }
+
+    private SearchPage search(IndexPartitions.Snapshot snapshot, String q, boolean searchNext, SearchOptions options)
+            throws IOException, ParseException {
+        IndexSearcher searcher = snapshot.getSearcher();
+        if (q.trim().startsWith(REGEX_PREFIX)) {
+            // a regex search returns everything within the scan limits on the first page
+            if (searchNext) {
+                return new SearchPage(new ArrayList<FreeTextSearchItemImplementation>(), SearchFacets.EMPTY);
+            }
+            return new SearchPage(getRegexHits(searcher, q.trim().substring(REGEX_PREFIX.length()).trim()),
+                    SearchFacets.EMPTY);
+        }
+        List<FreeTextSearchItemImplementation> luceneSearchResultImpl = new ArrayList<>();
+        Pair<Query, Query, Boolean> fieldQueryPair = parseQuery(q, searcher);
+        Query query = fieldQueryPair.first;
+        Query highlight = fieldQueryPair.second;
+        Boolean isShowConsole = fieldQueryPair.third;
+        searcher = layout.getSearcher(snapshot, query);
+
+        QueryTermScorer scorer = new QueryTermScorer(highlight);
+        Highlighter highlighter = new Highlighter(new SimpleHTMLFormatter(), scorer);
+        highlighter.setMaxDocCharsToAnalyze(Integer.MAX_VALUE);
+        if (options.isCollapse() && searchNext) {
+            // collapsed hits are all on the first page
+            return new SearchPage(luceneSearchResultImpl, SearchFacets.EMPTY);
+        }
+        PageCollectorManager collectors = new PageCollectorManager(parentBitSets, MAX_HITS_PER_PAGE,
+                searchNext ? lastDoc : null, options, options.isFacets() && !searchNext, RUNNING_BUILD,
+                JOB_NAME_EXACT, RESULT.fieldName, START_TIME.fieldName);
+        searcher.search(query, collectors);
+        ScoreDoc[] hits = collectors.getHits();
+        if (hits.length != 0 && !options.isCollapse()) {
+            lastDoc = hits[hits.length - 1];
+        }
+
+        Set<String> seenBuilds = new HashSet<>();
+        for (BuildHit buildHit : groupByBuild(searcher, hits, !options.isCollapse())) {
+            Document doc = buildHit.build;
+            // running builds are indexed as several chunks, only show the best one
+            String id = doc.get(ID.fieldName);
+            if (id != null && !seenBuilds.add(id)) {
+                continue;
+            }
+            List<String> bestFragments = new ArrayList<>();
+            List<Integer> fragmentLines = new ArrayList<>();
+            for (int matchedDoc : buildHit.matchedDocs) {
+                if (bestFragments.size() >= MAX_NUM_FRAGMENTS) {
+                    break;
+                }
+                Document chunk = matchedDoc == buildHit.buildDoc ? doc : searcher.doc(matchedDoc);
+                addBestFragments(highlighter, chunk, bestFragments, fragmentLines);
+            }
+            luceneSearchResultImpl.add(toSearchItem(doc, bestFragments, fragmentLines, isShowConsole));
+        }
+        return new SearchPage(luceneSearchResultImpl, collectors.getFacets(), collectors.getJobTotals());
+    }
+
+    private static FreeTextSearchItemImplementation toSearchItem(Document doc, List<String> bestFragments,
+            List<Integer> fragmentLines, boolean isShowConsole) {
+        String projectName = doc.get(PROJECT_NAME.fieldName);
+        String buildNumber = doc.get(BUILD_NUMBER.fieldName);
+        String searchName = doc.get(BUILD_DISPLAY_NAME.fieldName);
+        if (doc.get(RUNNING_CHUNK) != null) {
+            searchName += " (running)";
+        }
+
+        String url = "/job/" + projectName + "/" + buildNumber + "/";
+        return new FreeTextSearchItemImplementation(searchName,
+                projectName,
+                bestFragments.toArray(EMPTY_ARRAY),
+                toIntArray(fragmentLines),
+                url,
+                isShowConsole);
+    }
+
+    private List<FreeTextSearchItemImplementation> getRegexHits(IndexSearcher searcher, String regex)
+            throws IOException {
+        List<FreeTextSearchItemImplementation> luceneSearchResultImpl = new ArrayList<>();
+        List<RegexScan.Match> matches = regexScan.find(searcher, regex, MAX_HITS_PER_PAGE, MAX_NUM_FRAGMENTS);
+        ScoreDoc[] hits = new ScoreDoc[matches.size()];
+        Map<Integer, RegexScan.Match> matchesByDoc = new HashMap<>();
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = new ScoreDoc(matches.get(i).doc, 1f);
+            matchesByDoc.put(matches.get(i).doc, matches.get(i));
+        }
+
+        Set<String> seenBuilds = new HashSet<>();
+        // already newest first
+        for (BuildHit buildHit : groupByBuild(searcher, hits, false)) {
+            Document doc = buildHit.build;
+            String id = doc.get(ID.fieldName);
+            if (id != null && !seenBuilds.add(id)) {
+                continue;
+            }
+            List<String> bestFragments = new ArrayList<>();
+            List<Integer> fragmentLines = new ArrayList<>();
+            for (int matchedDoc : buildHit.matchedDocs) {
+                RegexScan.Match match = matchesByDoc.get(matchedDoc);
+                for (int i = 0; i < match.fragments.size() && bestFragments.size() < MAX_NUM_FRAGMENTS; i++) {
+                    bestFragments.add(match.fragments.get(i));
+                    fragmentLines.add(match.lines.get(i));
+                }
+            }
+            luceneSearchResultImpl.add(toSearchItem(doc, bestFragments, fragmentLines, true));
+        }
         return luceneSearchResultImpl;
     }
 
+    /**
+     * Resolves every hit to the build document of its block and groups the hits per build, keeping the hits of
+     * a build in score order.
+     *
+     * @param sortByScore orders the builds by their best score and start time, otherwise they keep the order of
+     *                    their first hit, like the per job groups of a collapsed search
+     */
+    private List<BuildHit> groupByBuild(IndexSearcher searcher, ScoreDoc[] hits, boolean sortByScore)
+            throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        Map<Integer, BuildHit> builds = new LinkedHashMap<>();
+        for (ScoreDoc hit : hits) {
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(hit.doc, leaves));
+            int parent = parentBitSets.getParent(leaf, hit.doc - leaf.docBase);
+            if (parent < 0) {
+                continue;
+            }
+            int buildDoc = leaf.docBase + parent;
+            BuildHit buildHit = builds.get(buildDoc);
+            if (buildHit == null) {
+                buildHit = new BuildHit(buildDoc, hit.score, searcher.doc(buildDoc));
+                builds.put(buildDoc, buildHit);
+            }
+            buildHit.matchedDocs.add(hit.doc);
+        }
+        List<BuildHit> sorted = new ArrayList<>(builds.values());
+        if (sortByScore) {
+            Collections.sort(sorted, SCORE_START_TIME_COMPARATOR);
+        }
+        return sorted;
+    }
+
+    private void addBestFragments(Highlighter highlighter, Document chunk, List<String> bestFragments,
+            List<Integer> fragmentLines) throws IOException {
+        String console = chunk.get(CONSOLE.fieldName);
+        if (console == null) {
+            return;
+        }
+        IndexableField firstLineField = chunk.getField(CHUNK_FIRST_LINE);
+        int firstLine = firstLineField != null ? firstLineField.numericValue().intValue() : 1;
+        try {
+            String[] fragments = highlighter.getBestFragments(highlightAnalyzer, CONSOLE.fieldName, console,
+                    MAX_NUM_FRAGMENTS - bestFragments.size());
+            if (fragments.length == 0 && caseInsensitiveField) {
+                // the terms of ci: queries are lower case
+                fragments = highlighter.getBestFragments(highlightAnalyzer, CASE_INSENSITIVE, console,
+                        MAX_NUM_FRAGMENTS - bestFragments.size());
+            }
+            for (String fragment : fragments) {
+                bestFragments.add(fragment);
+                fragmentLines.add(getLineOfFragment(console, fragment, firstLine));
+            }
+        } catch (InvalidTokenOffsetsException e) {
+            LOGGER.debug("Failed to find bestFragments", e);
+        }
+    }
+
+    private static int getLineOfFragment(String text, String fragment, int firstLine) {
+        String plainFragment = fragment.replace("<B>", "").replace("</B>", "");
+        int position = text.indexOf(plainFragment);
+        int line = firstLine;
+        for (int i = 0; i < position; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    private static int[] toIntArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
     private MultiFieldQueryParser getQueryParser() {
-        MultiFieldQueryParser queryParser = new MultiFieldQueryParser(getAllDefaultSearchableFields(), analyzer) {
+        // one time for all bounds of the query
+        final long now = System.currentTimeMillis();
+        MultiFieldQueryParser queryParser = new MultiFieldQueryParser(getAllDefaultSearchableFields(), queryAnalyzer) {
             @Override
             protected Query getRangeQuery(String field, String part1, String part2, boolean startInclusive,
                                           boolean endInclusive) throws ParseException {
-                if (field != null && getIndex(field).numeric) {
-                    Long min = getWithDefault(part1, null);
-                    Long max = getWithDefault(part2, null);
-                    return NumericRangeQuery.newLongRange(field, min, max, true, true);
-                } else if (field != null) {
-                    return new TermQuery(new Term(field));
+                Field indexField = field != null ? getIndex(field) : null;
+                if (indexField != null && indexField.numeric) {
+                    return NumericRangeQuery.newLongRange(field, RangeBounds.parse(indexField, part1, false, now),
+                            RangeBounds.parse(indexField, part2, true, now), startInclusive, endInclusive);
+                }
+                return super.getRangeQuery(field, part1, part2, startInclusive, endInclusive);
+            }
+
+            @Override
+            protected Query getWildcardQuery(String field, String termStr) throws ParseException {
+                if (wildcardFields && CONSOLE.fieldName.equals(field)) {
+                    Query shadowQuery = WildcardFields.rewrite(termStr);
+                    if (shadowQuery != null) {
+                        return shadowQuery;
+                    }
                 }
-                return super.getRangeQuery(null, part1, part2, startInclusive, endInclusive);
+                return super.getWildcardQuery(field, termStr);
+            }
+
+            @Override
+            protected Query getFieldQuery(String field, String queryText, boolean quoted) throws ParseException {
+                Field indexField = field != null ? getIndex(field) : null;
+                if (indexField != null && indexField.numeric) {
+                    try {
+                        long value = Long.parseLong(queryText);
+                        return NumericRangeQuery.newLongRange(field, value, value, true, true);
+                    } catch (NumberFormatException e) {
+                        throw new ParseException("Not a number for " + field + ": " + queryText);
+                    }
+                }
+                if (quoted && CASE_INSENSITIVE.equals(field)) {
+                    // indexed without positions, all words have to be in the chunk
+                    return super.getFieldQuery(field, queryText, false);
+                }
+                if (junkTokens != JunkTokenFilter.Mode.OFF && JunkTokenFilter.SHA.matcher(queryText).matches()) {
+                    // the console only has <sha> tokens, look the commit up in the keyword field
+                    Query shaQuery = new TermQuery(new Term(SHA, queryText.toLowerCase(LOCALE)));
+                    if (CONSOLE.fieldName.equals(field)) {
+                        return shaQuery;
+                    } else if (field == null) {
+                        return new BooleanQuery.Builder()
+                                .add(super.getFieldQuery(null, queryText, quoted), BooleanClause.Occur.SHOULD)
+                                .add(shaQuery, BooleanClause.Occur.SHOULD)
+                                .build();
+                    }
+                }
+                return super.getFieldQuery(field, queryText, quoted);
             }
         };
         queryParser.setDefaultOperator(QueryParser.Operator.AND);
@@ -269,53 +949,201 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
 
     @Override
     public void storeBuild(final Run<?, ?> run) throws IOException {
-        try {
-            Document doc = new Document();
-            for (Field field : Field.values()) {
-                org.apache.lucene.document.Field.Store store = field.persist ? STORE : DONT_STORE;
-                Object fieldValue = field.getValue(run);
+        List<IndexableField> extensionFields = new ArrayList<>();
+        for (FreeTextSearchExtension extension : FreeTextSearchExtension.all()) {
+            try {
+                Object fieldValue = extension.getTextResult(run);
                 if (fieldValue != null) {
+                    extensionFields.add(new TextField(extension.getKeyword(), extension.getTextResult(run),
+                            (extension.isPersist()) ? STORE : DONT_STORE));
+                }
+            } catch (Throwable t) {
+                //We don't want to crash the collection of log from other plugin extensions if we happen to add a plugin that crashes while collecting the logs.
+                LOGGER.warn("CRASH: " + extension.getClass().getName() + ", " + extension.getKeyword() + t);
+            }
+        }
+        Reader log = run.getLogReader();
+        try {
+            storeBuild(getFieldValues(run), extensionFields, log);
+        } finally {
+            IOUtils.closeQuietly(log);
+        }
+    }
 
-                    switch (FIELD_TYPE_MAP.get(field)) {
-                        case LONG:
-                            doc.add(new LongField(field.fieldName, ((Number) fieldValue).longValue(), store));
-                            break;
-                        case STRING:
-                            doc.add(new StringField(field.fieldName, fieldValue.toString(), store));
-                            break;
-                        case TEXT:
-                            doc.add(new TextField(field.fieldName, fieldValue.toString(), store));
-                            break;
-                        default:
-                            throw new IllegalArgumentException("Don't know how to handle " + FIELD_TYPE_MAP.get(field));
-                    }
+    /**
+     * Stores a build from its field values instead of a {@link Run}, for tests and tools that run without
+     * Jenkins. Replaces the build with the same {@link Field#ID}.
+     *
+     * @param values the build fields except the console
+     */
+    public void storeBuild(Map<Field, Object> values, String console) throws IOException {
+        storeBuild(values, Collections.<IndexableField>emptyList(), console != null ? new StringReader(console) : null);
+    }
+
+    /**
+     * @param console read chunk by chunk while the block is added, so the whole log is never held in memory
+     */
+    private void storeBuild(final Map<Field, Object> values, List<IndexableField> extensionFields, Reader console)
+            throws IOException {
+        IndexWriter writer = getWriter(values);
+        if (writer == null) {
+            return;
+        }
+        try {
+            Document build = new Document();
+            build.add(new StringField(DOC_TYPE, BUILD, DONT_STORE));
+            for (Map.Entry<Field, Object> value : values.entrySet()) {
+                addField(build, value.getKey(), value.getValue(), value.getKey().persist ? STORE : DONT_STORE);
+            }
+            for (IndexableField extensionField : extensionFields) {
+                build.add(extensionField);
+            }
+
+            ConsoleChunker chunker = console == null ? null : new ConsoleChunker(new ConsolePreprocessor(console,
+                    consolePreprocessing, consolePreprocessing));
+            BuildBlock block = new BuildBlock(chunker, retentionPolicy, build) {
+                @Override
+                protected Document createChunkDocument(ConsoleChunker.Chunk chunk, boolean stored) {
+                    Document chunkDoc = LuceneSearchBackend.this.createChunkDocument(values, chunk, DONT_STORE,
+                            stored ? STORE : DONT_STORE);
+                    chunkDoc.add(new StringField(DOC_TYPE, CHUNK, DONT_STORE));
+                    return chunkDoc;
+                }
+            };
+            deleteLegacyBuild(values.get(PROJECT_NAME), values.get(BUILD_NUMBER));
+            // replaces the chunks indexed while the build was running
+            writer.updateDocuments(new Term(ID.fieldName, values.get(ID).toString()), block);
+        } catch (BuildBlock.ConsoleReadException e) {
+            e.rethrow();
+        } finally {
+            writer.commit();
+        }
+        if (eviction != null) {
+            eviction.evict();
+        }
+    }
+
+    @Override
+    public void storeRunningBuildChunk(final Run<?, ?> run, int chunkNumber, int firstLine, String console)
+            throws IOException {
+        int lines = StringUtils.countMatches(console, "\n") + (console.endsWith("\n") ? 0 : 1);
+        // Not collapsed, the lines of a running chunk are numbered from its first line
+        ConsoleChunker.Chunk chunk = new ConsoleChunker.Chunk(consolePreprocessing ? ConsolePreprocessor.strip(console)
+                : console, firstLine, firstLine + Math.max(lines, 1) - 1);
+        // Running chunks are not part of a block, they are their own parent and store the build fields
+        Map<Field, Object> values = getFieldValues(run);
+        IndexWriter writer = getWriter(values);
+        if (writer == null) {
+            return;
+        }
+        Document doc = createChunkDocument(values, chunk, STORE, STORE);
+        String buildId = values.get(ID).toString();
+        String chunkId = buildId + "/" + chunkNumber;
+        doc.add(new StringField(RUNNING_CHUNK, chunkId, STORE));
+        doc.add(new SortedDocValuesField(RUNNING_BUILD, new BytesRef(buildId)));
+        // Not committed, the near real-time searcher picks it up and the final document is committed on completion
+        writer.updateDocument(new Term(RUNNING_CHUNK, chunkId), doc);
+    }
+
+    /**
+     * All build fields except the console.
+     */
+    private Map<Field, Object> getFieldValues(Run<?, ?> run) {
+        Map<Field, Object> values = new EnumMap<>(Field.class);
+        for (Field field : Field.values()) {
+            if (field != CONSOLE) {
+                Object value = field.getValue(run);
+                if (value != null) {
+                    values.put(field, value);
                 }
             }
+        }
+        return values;
+    }
 
-            for (FreeTextSearchExtension extension : FreeTextSearchExtension.all()) {
-                try {
-                    Object fieldValue = extension.getTextResult(run);
-                    if (fieldValue != null) {
-                        doc.add(new TextField(extension.getKeyword(), extension.getTextResult(run), (extension
-                                .isPersist()) ? STORE : DONT_STORE));
-                    }
-                } catch (Throwable t) {
-                    //We don't want to crash the collection of log from other plugin extensions if we happen to add a plugin that crashes while collecting the logs.
-                    LOGGER.warn("CRASH: " + extension.getClass().getName() + ", " + extension.getKeyword() + t);
+    /**
+     * The build fields are repeated on every chunk so that a query combining them with console terms matches the
+     * chunk. They are only stored on the build document. A chunk without stored console is still searchable, but
+     * has no fragments.
+     */
+    private Document createChunkDocument(Map<Field, Object> values, ConsoleChunker.Chunk chunk,
+            org.apache.lucene.document.Field.Store storeBuildFields, org.apache.lucene.document.Field.Store storeConsole) {
+        Document doc = new Document();
+        for (Map.Entry<Field, Object> value : values.entrySet()) {
+            Field field = value.getKey();
+            addField(doc, field, value.getValue(), field == ID || (field.persist && storeBuildFields == STORE)
+                    ? STORE : DONT_STORE);
+        }
+        addField(doc, CONSOLE, chunk.text, storeConsole);
+        if (wildcardFields) {
+            WildcardFields.addTo(doc, chunk.text);
+        }
+        if (caseInsensitiveField) {
+            doc.add(new org.apache.lucene.document.Field(CASE_INSENSITIVE, chunk.text,
+                    ShadowFieldTypes.DOCS_AND_FREQS));
+        }
+        if (regexSearch) {
+            doc.add(new org.apache.lucene.document.Field(TRIGRAMS, chunk.text, ShadowFieldTypes.DOCS_ONLY));
+        }
+        if (junkTokens != JunkTokenFilter.Mode.OFF) {
+            Set<String> shas = new HashSet<>();
+            Matcher matcher = SHA_IN_TEXT.matcher(chunk.text);
+            while (matcher.find()) {
+                if (shas.add(matcher.group(1).toLowerCase(LOCALE))) {
+                    doc.add(new StringField(SHA, matcher.group(1).toLowerCase(LOCALE), DONT_STORE));
                 }
             }
-            dbWriter.addDocument(doc);
-        } finally {
-            dbWriter.commit();
+        }
+        doc.add(new StoredField(CHUNK_FIRST_LINE, chunk.firstLine));
+        doc.add(new StoredField(CHUNK_LAST_LINE, chunk.lastLine));
+        return doc;
+    }
+
+    private void addField(Document doc, Field field, Object fieldValue, org.apache.lucene.document.Field.Store store) {
+        if (fieldValue == null) {
+            return;
+        }
+        switch (FIELD_TYPE_MAP.get(field)) {
+            case LONG:
+                long number = fieldValue instanceof Number ? ((Number) fieldValue).longValue()
+                        : Long.parseLong(fieldValue.toString());
+                doc.add(new LongField(field.fieldName, number, store));
+                doc.add(new NumericDocValuesField(field.fieldName, number));
+                break;
+            case KEYWORD:
+                Collection<?> values = fieldValue instanceof Collection ? (Collection<?>) fieldValue
+                        : Collections.singleton(fieldValue);
+                for (Object value : values) {
+                    doc.add(new StringField(field.fieldName, value.toString(), store));
+                    doc.add(new SortedSetDocValuesField(field.fieldName, new BytesRef(value.toString())));
+                }
+                break;
+            case STRING:
+                doc.add(new StringField(field.fieldName, fieldValue.toString(), store));
+                break;
+            case TEXT:
+                doc.add(new TextField(field.fieldName, fieldValue.toString(), store));
+                break;
+            default:
+                throw new IllegalArgumentException("Don't know how to handle " + FIELD_TYPE_MAP.get(field));
+        }
+        if (field == PROJECT_NAME) {
+            doc.add(new StringField(JOB_NAME_EXACT, fieldValue.toString(), DONT_STORE));
+            doc.add(new SortedSetDocValuesField(JOB_NAME_EXACT, new BytesRef(fieldValue.toString())));
         }
     }
 
     public Query getRunQuery(Run<?, ?> run) throws ParseException {
+        Query number = new BooleanQuery.Builder()
+                .add(getQueryParser().parse(BUILD_NUMBER.fieldName + ":" + run.getNumber()), BooleanClause.Occur.SHOULD)
+                // the string term of builds indexed before the build number was numeric
+                .add(new TermQuery(new Term(BUILD_NUMBER.fieldName, String.valueOf(run.getNumber()))),
+                        BooleanClause.Occur.SHOULD)
+                .build();
         BooleanQuery.Builder builder = new BooleanQuery.Builder();
         builder.add(getQueryParser()
                 .parse(PROJECT_NAME.fieldName + ":" + run.getParent().getDisplayName()), BooleanClause.Occur.MUST)
-                .add(getQueryParser()
-                        .parse(BUILD_NUMBER.fieldName + ":" + run.getNumber()), BooleanClause.Occur.MUST);
+                .add(number, BooleanClause.Occur.MUST);
         return builder.build();
     }
 
@@ -323,11 +1151,13 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
     public boolean findRunIndex(Run<?, ?> run) {
         try {
             Query query = getRunQuery(run);
-            IndexReader reader = DirectoryReader.open(index);
-            IndexSearcher searcher = new IndexSearcher(reader);
-            TopDocs docs = searcher.search(query, 1);
-            reader.close();
-            return docs.scoreDocs.length > 0;
+            IndexPartitions.Snapshot snapshot = partitions.acquire();
+            try {
+                TopDocs docs = snapshot.getSearcher().search(query, 1);
+                return docs.scoreDocs.length > 0;
+            } finally {
+                partitions.release(snapshot);
+            }
         } catch (ParseException e) {
             LOGGER.warn("findRunIndex: " + e);
         } catch (IOException e) {
@@ -339,19 +1169,38 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
     @Override
     public void removeBuild(Run<?, ?> run) throws IOException {
         try {
-            dbWriter.deleteDocuments(getRunQuery(run));
-            dbWriter.commit();
+            Query runQuery = getRunQuery(run);
+            for (IndexWriter writer : partitions.getWriters()) {
+                writer.deleteDocuments(runQuery);
+            }
+            removeBuild((String) ID.getValue(run));
         } catch (ParseException e) {
             LOGGER.warn("removeBuild: " + e);
         }
     }
 
+    /**
+     * Removes the build with the {@link Field#ID} and its chunks, without a {@link Run}.
+     */
+    public void removeBuild(String id) throws IOException {
+        for (IndexWriter writer : partitions.getWriters()) {
+            writer.deleteDocuments(new Term(ID.fieldName, id));
+        }
+        int numberStart = id.lastIndexOf('#');
+        if (numberStart > 0) {
+            deleteLegacyBuild(id.substring(0, numberStart), id.substring(numberStart + 1));
+        }
+        partitions.commit();
+    }
+
     @Override
     public void deleteJob(String jobName) throws IOException {
         try {
             Query query = getQueryParser().parse(PROJECT_NAME.fieldName + ":" + jobName);
-            dbWriter.deleteDocuments(query);
-            dbWriter.commit();
+            for (IndexWriter writer : partitions.getWriters()) {
+                writer.deleteDocuments(query);
+            }
+            partitions.commit();
         } catch (IOException e) {
             LOGGER.error("Could not delete job", e);
         } catch (ParseException e) {
@@ -359,16 +1208,36 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
         }
     }
 
+    @Override
+    public void commit() throws IOException {
+        partitions.commit();
+    }
+
     @Override
     public void cleanAllJob(ManagerProgress progress) {
         Progress currentProgress = progress.beginCleanJob();
         try {
-            IndexReader reader = DirectoryReader.open(index);
-            currentProgress.setCurrent(reader.numDocs());
-            dbWriter.deleteAll();
-            dbWriter.commit();
-            reader.close();
-            progress.setSuccessfullyCompleted();
+            currentProgress.setCurrent(partitions.numDocs());
+            if (layout.isPartitioned()) {
+                // an abort keeps the partitions not dropped yet
+                for (String name : partitions.getNames()) {
+                    if (progress.isCancelRequested()) {
+                        break;
+                    }
+                    partitions.drop(name);
+                }
+            } else if (!progress.isCancelRequested()) {
+                for (IndexWriter writer : partitions.getWriters()) {
+                    writer.deleteAll();
+                }
+                partitions.commit();
+            }
+            if (progress.isCancelRequested()) {
+                progress.setCancelled();
+            } else {
+                legacyBuilds = false;
+                progress.setSuccessfullyCompleted();
+            }
         } catch (IOException e) {
             progress.completedWithErrors(e);
         } finally {
@@ -378,6 +1247,19 @@ public class LuceneSearchBackend extends SearchBackend<Document> {
     }
 }
 
+class BuildHit {
+    final int buildDoc;
+    final float score;
+    final Document build;
+    final List<Integer> matchedDocs = new ArrayList<>();
+
+    BuildHit(int buildDoc, float score, Document build) {
+        this.buildDoc = buildDoc;
+        this.score = score;
+        this.build = build;
+    }
+}
+
 class Pair<T, S, Q> {
     public final T first;
     public final S second;
@@ -0,0 +1,34 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import hudson.Extension;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The local Lucene index, the default backend.
+ */
+@Extension
+public class LuceneSearchBackendProvider extends SearchBackendProvider {
+
+    public static final String ID = "LUCENE";
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Lucene";
+    }
+
+    @Override
+    public SearchBackend<?> create(Map<String, Object> config) throws IOException {
+        SearchBackend<?> backend = LuceneSearchBackend.create(config);
+        if (backend == null) {
+            throw new IOException("Could not open the Lucene index at " + config.get("lucenePath"));
+        }
+        return backend;
+    }
+}
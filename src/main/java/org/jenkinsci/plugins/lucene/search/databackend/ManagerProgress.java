@@ -15,9 +15,15 @@ public class ManagerProgress extends Progress {
 
     private long processedItems = 0;
 
+    private volatile boolean cancelRequested;
+
     public void jobComplete() {
         if (currentProject != null) {
-            currentProject.setSuccessfullyCompleted();
+            if (cancelRequested) {
+                currentProject.setCancelled();
+            } else if (currentProject.getState() == ProgressState.PROCESSING) {
+                currentProject.setSuccessfullyCompleted();
+            }
             currentProject.setFinished();
 //            this.getHistory().add(currentProject);
             setProcessedItems(getProcessedItems() + currentProject.getMax());
@@ -71,6 +77,18 @@ public class ManagerProgress extends Progress {
         return currentProject;
     }
 
+    /**
+     * Asks the running operation to stop. Workers check this between builds, so
+     * the build currently being indexed is allowed to finish.
+     */
+    public void requestCancel() {
+        cancelRequested = true;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
     public List<Progress> getHistory() {
         return history;
     }
@@ -0,0 +1,33 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RateLimitedIndexOutput;
+import org.apache.lucene.store.RateLimiter;
+
+/**
+ * Rate limits the files written by merges so that they don't starve running
+ * builds of disk bandwidth. Flushes are not limited.
+ */
+class MergeThrottlingDirectory extends FilterDirectory {
+
+    private final RateLimiter rateLimiter;
+
+    MergeThrottlingDirectory(Directory in, RateLimiter rateLimiter) {
+        super(in);
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public IndexOutput createOutput(String name, IOContext context) throws IOException {
+        IndexOutput output = super.createOutput(name, context);
+        if (context.context == IOContext.Context.MERGE) {
+            return new RateLimitedIndexOutput(rateLimiter, output);
+        }
+        return output;
+    }
+}
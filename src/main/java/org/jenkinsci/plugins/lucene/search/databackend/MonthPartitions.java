@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+
+/**
+ * Names the partitions of an index partitioned by the month the builds started, like {@code 2017-03} in the time
+ * zone of the server, and finds the months a query on the start time can match. The name of a partition within a
+ * month, like a shard, starts with the month: {@code 2017-03/shard-1}.
+ */
+class MonthPartitions {
+
+    private static final Pattern MONTH = Pattern.compile("\\d{4}-\\d{2}");
+    private static final String MONTH_FORMAT = "yyyy-MM";
+
+    private MonthPartitions() {
+    }
+
+    static boolean isMonth(String name) {
+        return MONTH.matcher(name).matches();
+    }
+
+    static String monthOf(long startTime) {
+        return new SimpleDateFormat(MONTH_FORMAT).format(new Date(startTime));
+    }
+
+    /**
+     * @return true if builds started in the month of the partition can match the range, bounds are inclusive and
+     *         null is open
+     */
+    static boolean overlaps(String partition, Long from, Long to) {
+        Calendar start = parseMonth(partition);
+        if (start == null) {
+            return true;
+        }
+        Calendar end = (Calendar) start.clone();
+        end.add(Calendar.MONTH, 1);
+        return (from == null || from < end.getTimeInMillis()) && (to == null || to >= start.getTimeInMillis());
+    }
+
+    /**
+     * @param months the number of months kept, including the current one
+     * @return true if the month of the partition is older than the months kept
+     */
+    static boolean isExpired(String partition, int months, long now) {
+        Calendar start = parseMonth(partition);
+        if (start == null || months <= 0) {
+            return false;
+        }
+        Calendar oldestKept = Calendar.getInstance();
+        oldestKept.setTimeInMillis(now);
+        oldestKept.add(Calendar.MONTH, 1 - months);
+        return monthOf(start.getTimeInMillis()).compareTo(monthOf(oldestKept.getTimeInMillis())) < 0;
+    }
+
+    private static Calendar parseMonth(String partition) {
+        int end = partition.indexOf('/');
+        String month = end < 0 ? partition : partition.substring(0, end);
+        if (!isMonth(month)) {
+            return null;
+        }
+        SimpleDateFormat format = new SimpleDateFormat(MONTH_FORMAT);
+        format.setLenient(false);
+        Date date = format.parse(month, new ParsePosition(0));
+        if (date == null) {
+            return null;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        return calendar;
+    }
+
+    /**
+     * The start time range every match of the query is in, from its required start time ranges.
+     *
+     * @return the inclusive bounds, null if open, or null if the query doesn't restrict the start time
+     */
+    static Long[] startTimeRange(Query query, String startTimeField) {
+        if (query instanceof ConstantScoreQuery) {
+            return startTimeRange(((ConstantScoreQuery) query).getQuery(), startTimeField);
+        }
+        if (query instanceof NumericRangeQuery && startTimeField.equals(((NumericRangeQuery<?>) query).getField())) {
+            NumericRangeQuery<?> range = (NumericRangeQuery<?>) query;
+            Long[] bounds = new Long[2];
+            if (range.getMin() != null) {
+                bounds[0] = range.getMin().longValue() + (range.includesMin() ? 0 : 1);
+            }
+            if (range.getMax() != null) {
+                bounds[1] = range.getMax().longValue() - (range.includesMax() ? 0 : 1);
+            }
+            return bounds;
+        }
+        if (!(query instanceof BooleanQuery)) {
+            return null;
+        }
+        Long[] intersection = null;
+        for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+            if (!clause.isRequired()) {
+                continue;
+            }
+            Long[] range = startTimeRange(clause.getQuery(), startTimeField);
+            if (range == null) {
+                continue;
+            }
+            if (intersection == null) {
+                intersection = range;
+            } else {
+                intersection[0] = max(intersection[0], range[0]);
+                intersection[1] = min(intersection[1], range[1]);
+            }
+        }
+        return intersection;
+    }
+
+    private static Long max(Long a, Long b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return Math.max(a, b);
+    }
+
+    private static Long min(Long a, Long b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return Math.min(a, b);
+    }
+}
@@ -0,0 +1,130 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Tells how much of the index files is in the page cache of the OS, so a slow first search can be told apart
+ * from a slow query. Each file is memory mapped window by window and asked with {@link MappedByteBuffer#isLoaded()},
+ * which doesn't read it. A window counts as resident if the OS says all of it likely is, so the numbers are
+ * estimates at the granularity of a window. The mappings are released right away instead of when they are
+ * collected, so a report doesn't hold on to address space and mappings.
+ */
+public class PageCacheResidency {
+    private static final Logger LOGGER = Logger.getLogger(PageCacheResidency.class);
+
+    // small enough that most index files span several windows, so a partly cached file isn't reported as all
+    // or nothing, and large enough that a big index doesn't need too many mappings
+    static final long WINDOW_BYTES = 8L << 20;
+
+    public static class FileResidency {
+        public final long bytes;
+        public final long residentBytes;
+
+        FileResidency(long bytes, long residentBytes) {
+            this.bytes = bytes;
+            this.residentBytes = residentBytes;
+        }
+    }
+
+    private PageCacheResidency() {
+    }
+
+    /**
+     * Checks the files of an index directory and of the partitions below it without opening the index, so that
+     * nothing is read into the page cache before the check, as preloading does when an index is opened.
+     *
+     * @return the files by their path relative to the directory, the partition name and a slash before the name
+     */
+    public static Map<String, FileResidency> ofDirectory(File directory) throws IOException {
+        Map<String, FileResidency> report = new TreeMap<>();
+        addTree(directory, "", report);
+        return report;
+    }
+
+    private static void addTree(File directory, String prefix, Map<String, FileResidency> report)
+            throws IOException {
+        addFiles(directory, prefix, report);
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addTree(file, prefix + file.getName() + "/", report);
+            }
+        }
+    }
+
+    /**
+     * Adds the files directly in the directory. Files deleted meanwhile, like the files of merged segments, are
+     * left out.
+     *
+     * @param prefix put before the file names, like the partition name and a slash
+     */
+    static void addFiles(File directory, String prefix, Map<String, FileResidency> report) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile()) {
+                addFile(file, prefix + file.getName(), report);
+            }
+        }
+    }
+
+    static void addFile(File file, String name, Map<String, FileResidency> report) throws IOException {
+        try {
+            report.put(name, of(file));
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            LOGGER.debug("Deleted while checking the page cache: " + file);
+        }
+    }
+
+    static FileResidency of(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long resident = 0;
+            for (long position = 0; position < size; position += WINDOW_BYTES) {
+                long length = Math.min(WINDOW_BYTES, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                try {
+                    if (window.isLoaded()) {
+                        resident += length;
+                    }
+                } finally {
+                    unmap(window);
+                }
+            }
+            return new FileResidency(size, resident);
+        }
+    }
+
+    /**
+     * Releases the mapping like {@code MMapDirectory} does, through the cleaner of the buffer. Where that isn't
+     * possible the mapping is released when it is collected.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Method getCleaner = buffer.getClass().getMethod("cleaner");
+            getCleaner.setAccessible(true);
+            Object cleaner = getCleaner.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Could not unmap, left to the garbage collector", e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+
+/**
+ * Collects a page of hits and the facets. A searcher with an executor searches its slices of segments in parallel
+ * with a collector each, the results are merged afterwards. The scores are comparable across slices because the
+ * searcher computes the term statistics over its whole reader, including all partitions.
+ */
+class PageCollectorManager implements CollectorManager<Collector, Void> {
+
+    private final ParentBitSets parentBitSets;
+    private final int numHits;
+    private final ScoreDoc after;
+    private final SearchOptions options;
+    private final boolean facets;
+    private final String runningBuildField;
+    private final String jobField;
+    private final String resultField;
+    private final String startTimeField;
+
+    private final List<TopScoreDocCollector> topDocsCollectors = Collections.synchronizedList(
+            new ArrayList<TopScoreDocCollector>());
+    private final List<CollapsingCollector> collapsingCollectors = Collections.synchronizedList(
+            new ArrayList<CollapsingCollector>());
+    private final List<BuildFacetsCollector> facetsCollectors = Collections.synchronizedList(
+            new ArrayList<BuildFacetsCollector>());
+
+    /**
+     * @param after the last hit of the previous page, or null
+     * @param facets if the facets are counted
+     */
+    PageCollectorManager(ParentBitSets parentBitSets, int numHits, ScoreDoc after, SearchOptions options,
+            boolean facets, String runningBuildField, String jobField, String resultField, String startTimeField) {
+        this.parentBitSets = parentBitSets;
+        this.numHits = numHits;
+        this.after = after;
+        this.options = options;
+        this.facets = facets;
+        this.runningBuildField = runningBuildField;
+        this.jobField = jobField;
+        this.resultField = resultField;
+        this.startTimeField = startTimeField;
+    }
+
+    @Override
+    public Collector newCollector() throws IOException {
+        Set<String> visibleJobs = options.getVisibleJobs();
+        Collector hits;
+        if (options.isCollapse()) {
+            CollapsingCollector collapsing = new CollapsingCollector(parentBitSets, runningBuildField,
+                    jobField, options.getHitsPerJob(), visibleJobs);
+            collapsingCollectors.add(collapsing);
+            hits = collapsing;
+        } else {
+            TopScoreDocCollector topDocs = TopScoreDocCollector.create(numHits, after);
+            topDocsCollectors.add(topDocs);
+            hits = topDocs;
+        }
+        if (!facets) {
+            return hits;
+        }
+        // counted in the same pass as the hits
+        BuildFacetsCollector facetsCollector = new BuildFacetsCollector(parentBitSets, runningBuildField, jobField,
+                resultField, startTimeField, visibleJobs);
+        facetsCollectors.add(facetsCollector);
+        return MultiCollector.wrap(hits, facetsCollector);
+    }
+
+    @Override
+    public Void reduce(Collection<Collector> collectors) {
+        // the parts of the collectors are kept when they are created
+        return null;
+    }
+
+    ScoreDoc[] getHits() throws IOException {
+        if (options.isCollapse()) {
+            CollapsingCollector collapsed = getCollapsed();
+            return collapsed != null ? collapsed.getTopDocs(numHits) : new ScoreDoc[0];
+        }
+        TopDocs[] topDocs = new TopDocs[topDocsCollectors.size()];
+        for (int i = 0; i < topDocs.length; i++) {
+            topDocs[i] = topDocsCollectors.get(i).topDocs();
+        }
+        return topDocs.length == 1 ? topDocs[0].scoreDocs : TopDocs.merge(numHits, topDocs).scoreDocs;
+    }
+
+    SearchFacets getFacets() {
+        return facets ? BuildFacetsCollector.getFacets(facetsCollectors) : SearchFacets.EMPTY;
+    }
+
+    /**
+     * @return the number of matching builds per job if the hits are collapsed, otherwise empty
+     */
+    Map<String, Long> getJobTotals() {
+        CollapsingCollector collapsed = options.isCollapse() ? getCollapsed() : null;
+        return collapsed != null ? collapsed.getTotals() : Collections.<String, Long>emptyMap();
+    }
+
+    /**
+     * @return the collapsed hits of all slices, or null if the searcher had no segments
+     */
+    private CollapsingCollector getCollapsed() {
+        if (collapsingCollectors.isEmpty()) {
+            return null;
+        }
+        CollapsingCollector collapsed = collapsingCollectors.get(0);
+        for (int i = 1; i < collapsingCollectors.size(); i++) {
+            collapsed.merge(collapsingCollectors.get(i));
+        }
+        collapsingCollectors.subList(1, collapsingCollectors.size()).clear();
+        return collapsed;
+    }
+}
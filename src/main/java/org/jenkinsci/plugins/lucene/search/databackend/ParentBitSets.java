@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Finds the parent of a document in an index of document blocks, where every block is written with
+ * {@code addDocuments} and ends with its parent. The parent of a child is the first parent after it in the same
+ * segment, a parent is its own parent.
+ *
+ * The bit sets are cached per segment core and dropped together with the segment. Readers of the same core may have
+ * different deletions, so the bits include the deleted documents, like the {@code QueryBitSetProducer} of the join
+ * module.
+ */
+class ParentBitSets {
+
+    private final Query parentQuery;
+    private final Map<Object, FixedBitSet> cache = Collections.synchronizedMap(new WeakHashMap<Object, FixedBitSet>());
+
+    ParentBitSets(Query parentQuery) {
+        this.parentQuery = parentQuery;
+    }
+
+    FixedBitSet getParents(LeafReaderContext leaf) throws IOException {
+        Object key = leaf.reader().getCoreCacheKey();
+        FixedBitSet parents = cache.get(key);
+        if (parents == null) {
+            parents = new FixedBitSet(leaf.reader().maxDoc());
+            IndexSearcher searcher = new IndexSearcher(ReaderUtil.getTopLevelContext(leaf));
+            searcher.setQueryCache(null);
+            Weight weight = searcher.createNormalizedWeight(parentQuery, false);
+            // a scorer doesn't check the live docs, unlike a search, so the deleted documents match too
+            Scorer scorer = weight.scorer(leaf);
+            if (scorer != null) {
+                for (int doc = scorer.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = scorer.nextDoc()) {
+                    parents.set(doc);
+                }
+            }
+            cache.put(key, parents);
+        }
+        return parents;
+    }
+
+    /**
+     * @param doc segment relative document id
+     * @return the segment relative id of the parent, or -1 if the document is not followed by a parent
+     */
+    int getParent(LeafReaderContext leaf, int doc) throws IOException {
+        FixedBitSet parents = getParents(leaf);
+        if (parents.get(doc)) {
+            return doc;
+        }
+        int parent = doc + 1 < parents.length() ? parents.nextSetBit(doc + 1) : -1;
+        return parent < 0 || parent >= parents.length() ? -1 : parent;
+    }
+}
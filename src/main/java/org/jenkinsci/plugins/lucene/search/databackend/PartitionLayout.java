@@ -0,0 +1,149 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
+import static org.jenkinsci.plugins.lucene.search.Field.START_TIME;
+
+/**
+ * Decides which partition of the index a build goes to and which partitions a search needs. The partition of a
+ * build is its start month, its shard or both, like {@code 2017-03/shard-1}. The shard is chosen by the hash of the
+ * job name, so all builds of a job are in the same shard. An index that is neither partitioned by month nor sharded
+ * has the single partition {@link #NOT_PARTITIONED}.
+ */
+class PartitionLayout {
+
+    // The partition of an index that is not partitioned, the index path itself
+    static final String NOT_PARTITIONED = "";
+    static final String SHARD_PREFIX = "shard-";
+
+    private final IndexPartitions partitions;
+    private final boolean byMonth;
+    // the months kept with monthly partitions, 0 keeps all
+    private final int months;
+    // builds are spread over this many partitions by job, searched in parallel
+    private final int shards;
+
+    PartitionLayout(IndexPartitions partitions, boolean byMonth, int months, int shards) {
+        this.partitions = partitions;
+        this.byMonth = byMonth;
+        this.months = months;
+        this.shards = Math.max(shards, 1);
+    }
+
+    boolean isPartitioned() {
+        return byMonth || shards > 1;
+    }
+
+    /**
+     * Opens the partitions of this layout found below the index path, partitions of another layout are ignored.
+     * Drops the months no longer kept.
+     */
+    void open() throws IOException {
+        if (!isPartitioned()) {
+            partitions.getWriter(NOT_PARTITIONED);
+            return;
+        }
+        partitions.openExisting(new IndexPartitions.PartitionFilter() {
+            @Override
+            public boolean accept(String name) {
+                return isPartition(name);
+            }
+        });
+        dropExpired();
+    }
+
+    /**
+     * @return the name of the partition of the build, or null if the month it started is no longer kept
+     */
+    String partitionOf(String job, long startTime, long now) {
+        String name = NOT_PARTITIONED;
+        if (byMonth) {
+            name = MonthPartitions.monthOf(startTime);
+            if (MonthPartitions.isExpired(name, months, now)) {
+                return null;
+            }
+        }
+        if (shards > 1) {
+            String shard = SHARD_PREFIX + shardOf(job);
+            name = name.isEmpty() ? shard : name + "/" + shard;
+        }
+        return name;
+    }
+
+    /**
+     * @return the shard of the job, the same for the same number of shards across restarts
+     */
+    int shardOf(String job) {
+        return ((job != null ? job.hashCode() : 0) & Integer.MAX_VALUE) % shards;
+    }
+
+    /**
+     * @return the writer of the partition of the build, or null if the month it started is no longer kept
+     */
+    IndexWriter getWriter(String job, long startTime) throws IOException {
+        long now = System.currentTimeMillis();
+        String name = partitionOf(job, startTime, now);
+        if (name == null) {
+            return null;
+        }
+        boolean newPartition = !partitions.getNames().contains(name);
+        IndexWriter writer = partitions.getWriter(name);
+        if (newPartition && byMonth) {
+            dropExpired();
+        }
+        return writer;
+    }
+
+    /**
+     * @return true if the name is a partition of this layout
+     */
+    boolean isPartition(String name) {
+        String[] parts = name.split("/");
+        if (parts.length != (byMonth ? 1 : 0) + (shards > 1 ? 1 : 0)) {
+            return false;
+        }
+        if (byMonth && !MonthPartitions.isMonth(parts[0])) {
+            return false;
+        }
+        if (shards > 1) {
+            String shard = parts[parts.length - 1];
+            int number = shard.startsWith(SHARD_PREFIX) ? NumberUtils.toInt(shard.substring(SHARD_PREFIX.length()),
+                    -1) : -1;
+            return number >= 0 && number < shards;
+        }
+        return true;
+    }
+
+    /**
+     * Drops the monthly partitions older than the months kept, this deletes their directories.
+     */
+    void dropExpired() throws IOException {
+        long now = System.currentTimeMillis();
+        for (String name : partitions.getNames()) {
+            if (MonthPartitions.isExpired(name, months, now)) {
+                partitions.drop(name);
+            }
+        }
+    }
+
+    /**
+     * With monthly partitions a query that restricts the start time only searches the months it can match.
+     */
+    IndexSearcher getSearcher(IndexPartitions.Snapshot snapshot, Query query) throws IOException {
+        final Long[] range = byMonth ? MonthPartitions.startTimeRange(query, START_TIME.fieldName) : null;
+        if (range == null) {
+            return snapshot.getSearcher();
+        }
+        return snapshot.getSearcher(new IndexPartitions.PartitionFilter() {
+            @Override
+            public boolean accept(String name) {
+                return MonthPartitions.overlaps(name, range[0], range[1]);
+            }
+        });
+    }
+}
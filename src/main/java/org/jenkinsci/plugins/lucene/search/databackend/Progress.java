@@ -3,7 +3,7 @@ package org.jenkinsci.plugins.lucene.search.databackend;
 public class Progress {
 
     public enum ProgressState {
-        PROCESSING, COMPLETE, COMPLETE_WITH_ERROR
+        PROCESSING, COMPLETE, COMPLETE_WITH_ERROR, CANCELLED
     }
 
     protected long startTime;
@@ -50,6 +50,14 @@ public class Progress {
         setElapsedTime(System.currentTimeMillis() - startTime);
     }
 
+    /**
+     * Work was stopped on request before all items were processed. Whatever
+     * was processed up to that point is kept.
+     */
+    public void setCancelled() {
+        state = ProgressState.CANCELLED;
+    }
+
     /**
      * Work has been successfully completed. Current will be one less than max.
      */
@@ -62,7 +70,8 @@ public class Progress {
     }
 
     public boolean isFinished() {
-        return state == ProgressState.COMPLETE || state == ProgressState.COMPLETE_WITH_ERROR;
+        return state == ProgressState.COMPLETE || state == ProgressState.COMPLETE_WITH_ERROR
+                || state == ProgressState.CANCELLED;
     }
 
     public Throwable getReason() {
@@ -0,0 +1,157 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.jenkinsci.plugins.lucene.search.Field;
+
+/**
+ * Parses the bounds of numeric range queries. {@code *} or a missing bound is open. Start times also take date
+ * math like {@code now}, {@code now-7d}, {@code now-1d/d} and dates like {@code 2017-03-01} or
+ * {@code 2017-03-01T12:30}, in the time zone of the server. Durations take a unit, like {@code 90s} or
+ * {@code 10m}, plain numbers are milliseconds.
+ *
+ * {@code now} is rounded to the minute unless a rounding is given, so the same query gives the same range query
+ * for a minute and the searcher can cache it. A rounded upper bound is the end of the unit, so
+ * {@code [now-1d/d TO now/d]} is yesterday and today.
+ */
+class RangeBounds {
+
+    private static final Pattern DATE_MATH = Pattern.compile("now((?:[+-]\\d+[smhdwMy])*)(?:/([smhdwMy]))?");
+    private static final Pattern DATE_MATH_OFFSET = Pattern.compile("([+-]\\d+)([smhdwMy])");
+    private static final Pattern DURATION = Pattern.compile("(\\d+)(ms|s|m|h|d)?");
+    private static final String[] DATE_FORMATS = { "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd" };
+    // the precision of each format, an upper bound includes the whole unit
+    private static final char[] DATE_FORMAT_UNITS = { 's', 'm', 'd' };
+
+    private RangeBounds() {
+    }
+
+    /**
+     * @param upper if this is the upper bound, rounding then goes to the end of the unit
+     * @return the bound, or null if it is open
+     */
+    static Long parse(Field field, String bound, boolean upper, long now) throws ParseException {
+        if (bound == null || bound.equals("*")) {
+            return null;
+        }
+        try {
+            if (field == Field.START_TIME) {
+                return parseDate(bound, upper, now);
+            } else if (field == Field.DURATION) {
+                return parseDuration(bound);
+            }
+            return Long.parseLong(bound);
+        } catch (NumberFormatException e) {
+            throw new ParseException("Not a valid bound for " + field.fieldName + ": " + bound);
+        }
+    }
+
+    private static long parseDate(String bound, boolean upper, long now) {
+        Matcher dateMath = DATE_MATH.matcher(bound);
+        if (dateMath.matches()) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(now);
+            Matcher offset = DATE_MATH_OFFSET.matcher(dateMath.group(1));
+            while (offset.find()) {
+                calendar.add(calendarField(offset.group(2).charAt(0)), Integer.parseInt(offset.group(1)));
+            }
+            String rounding = dateMath.group(2);
+            return round(calendar, rounding != null ? rounding.charAt(0) : 'm', upper);
+        }
+        for (int i = 0; i < DATE_FORMATS.length; i++) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMATS[i]);
+            dateFormat.setLenient(false);
+            ParsePosition position = new ParsePosition(0);
+            Date date = dateFormat.parse(bound, position);
+            if (date != null && position.getIndex() == bound.length()) {
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(date);
+                return upper ? round(calendar, DATE_FORMAT_UNITS[i], true) : date.getTime();
+            }
+        }
+        return Long.parseLong(bound);
+    }
+
+    private static long round(Calendar calendar, char unit, boolean upper) {
+        switch (unit) {
+            case 'w':
+                calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.set(Calendar.SECOND, 0);
+                calendar.set(Calendar.MILLISECOND, 0);
+                break;
+            case 'y':
+                calendar.set(Calendar.MONTH, Calendar.JANUARY);
+                // fall through
+            case 'M':
+                calendar.set(Calendar.DAY_OF_MONTH, 1);
+                // fall through
+            case 'd':
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                // fall through
+            case 'h':
+                calendar.set(Calendar.MINUTE, 0);
+                // fall through
+            case 'm':
+                calendar.set(Calendar.SECOND, 0);
+                // fall through
+            default:
+                calendar.set(Calendar.MILLISECOND, 0);
+                break;
+        }
+        if (upper) {
+            calendar.add(calendarField(unit), 1);
+            return calendar.getTimeInMillis() - 1;
+        }
+        return calendar.getTimeInMillis();
+    }
+
+    private static int calendarField(char unit) {
+        switch (unit) {
+            case 'y':
+                return Calendar.YEAR;
+            case 'M':
+                return Calendar.MONTH;
+            case 'w':
+                return Calendar.WEEK_OF_YEAR;
+            case 'd':
+                return Calendar.DAY_OF_MONTH;
+            case 'h':
+                return Calendar.HOUR_OF_DAY;
+            case 'm':
+                return Calendar.MINUTE;
+            default:
+                return Calendar.SECOND;
+        }
+    }
+
+    private static long parseDuration(String bound) {
+        Matcher duration = DURATION.matcher(bound);
+        if (!duration.matches()) {
+            throw new NumberFormatException(bound);
+        }
+        long value = Long.parseLong(duration.group(1));
+        String unit = duration.group(2);
+        if (unit == null || unit.equals("ms")) {
+            return value;
+        }
+        switch (unit.charAt(0)) {
+            case 's':
+                return TimeUnit.SECONDS.toMillis(value);
+            case 'm':
+                return TimeUnit.MINUTES.toMillis(value);
+            case 'h':
+                return TimeUnit.HOURS.toMillis(value);
+            default:
+                return TimeUnit.DAYS.toMillis(value);
+        }
+    }
+}
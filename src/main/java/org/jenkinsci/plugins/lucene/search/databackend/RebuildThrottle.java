@@ -0,0 +1,74 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import hudson.model.Run;
+
+import org.apache.lucene.store.RateLimiter;
+
+/**
+ * Limits for a throttled rebuild: console bytes read per second, builds indexed
+ * per second and MB per second written by index merges. The limits can be
+ * changed while a rebuild is running. Zero means unlimited.
+ *
+ * The merge limit only applies while a throttled rebuild is active, merges
+ * caused by normal indexing of finished builds run at full speed.
+ */
+public class RebuildThrottle {
+
+    private static final double UNLIMITED = Double.POSITIVE_INFINITY;
+
+    private final TokenBucket bytes = new TokenBucket(0);
+    private final TokenBucket builds = new TokenBucket(0);
+    private final RateLimiter.SimpleRateLimiter mergeRateLimiter = new RateLimiter.SimpleRateLimiter(UNLIMITED);
+    private volatile double mergeMBPerSecond;
+    private volatile boolean active;
+
+    public void setLimits(long bytesPerSecond, long buildsPerSecond, double mergeMBPerSecond) {
+        bytes.setRate(bytesPerSecond);
+        builds.setRate(buildsPerSecond);
+        this.mergeMBPerSecond = mergeMBPerSecond;
+        updateMergeRate();
+    }
+
+    public long getBytesPerSecond() {
+        return bytes.getRate();
+    }
+
+    public long getBuildsPerSecond() {
+        return builds.getRate();
+    }
+
+    public double getMergeMBPerSecond() {
+        return mergeMBPerSecond;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    void activate() {
+        active = true;
+        updateMergeRate();
+    }
+
+    void deactivate() {
+        active = false;
+        updateMergeRate();
+    }
+
+    /**
+     * Blocks until the build may be read and indexed.
+     */
+    void beforeBuild(Run<?, ?> run) throws InterruptedException {
+        builds.acquire(1);
+        bytes.acquire(run.getLogText().length());
+    }
+
+    RateLimiter mergeRateLimiter() {
+        return mergeRateLimiter;
+    }
+
+    private void updateMergeRate() {
+        double limit = mergeMBPerSecond;
+        mergeRateLimiter.setMBPerSec(active && limit > 0 ? limit : UNLIMITED);
+    }
+}
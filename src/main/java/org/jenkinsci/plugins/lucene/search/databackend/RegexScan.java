@@ -0,0 +1,221 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+
+/**
+ * Matches a java regex against the stored console of the documents that carry console, newest build first. With
+ * a trigram field the candidates are narrowed down to the chunks containing every trigram the regex requires, see
+ * {@link RegexTrigrams}. The scan stops once enough chunks matched or one of the limits is reached: the number of
+ * chunks, the characters read or the time taken. The time is checked while the regex runs, so a regex that
+ * backtracks catastrophically can't hold a search thread.
+ *
+ * Every chunk is matched on its own, a match that spans the boundary between two chunks of a build is missed.
+ */
+class RegexScan {
+
+    private static final Logger LOGGER = Logger.getLogger(RegexScan.class);
+
+    static final long DEFAULT_MAX_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    // characters the regex reads between two looks at the clock
+    private static final int CHECK_INTERVAL = 4096;
+
+    private final String consoleField;
+    private final String firstLineField;
+    private final String trigramField;
+    private final Query consoleDocs;
+    private final Sort newestFirst;
+    private final Set<String> fieldsToLoad;
+    private final int maxChunks;
+    private final long maxChars;
+    private final long maxMillis;
+
+    /**
+     * The matching lines of a chunk.
+     */
+    static class Match {
+        final int doc;
+        final List<String> fragments = new ArrayList<>();
+        final List<Integer> lines = new ArrayList<>();
+
+        Match(int doc) {
+            this.doc = doc;
+        }
+    }
+
+    /**
+     * @param trigramField the field indexed with {@link RegexTrigrams#analyzer()}, or null to scan every document
+     *                     of {@code consoleDocs}
+     * @param consoleDocs  the documents that can carry console, parents without console would only use up the
+     *                     limits
+     * @param timeField    a long doc values field, the higher the newer
+     */
+    RegexScan(String consoleField, String firstLineField, String trigramField, Query consoleDocs, String timeField,
+            int maxChunks, long maxChars, long maxMillis) {
+        this.consoleField = consoleField;
+        this.firstLineField = firstLineField;
+        this.trigramField = trigramField;
+        this.consoleDocs = consoleDocs;
+        this.newestFirst = new Sort(new SortField(timeField, SortField.Type.LONG, true));
+        this.fieldsToLoad = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(consoleField, firstLineField)));
+        this.maxChunks = Math.max(1, maxChunks);
+        this.maxChars = maxChars;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @return the matching chunks, newest first, no more than {@code maxMatches} with up to {@code maxFragments}
+     *         lines each. Nothing for an invalid regex.
+     */
+    List<Match> find(IndexSearcher searcher, String regex, int maxMatches, int maxFragments) throws IOException {
+        List<Match> matches = new ArrayList<>();
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            return matches;
+        }
+        BooleanQuery.Builder candidateQuery = new BooleanQuery.Builder().add(consoleDocs, BooleanClause.Occur.FILTER);
+        Query trigrams = trigramField != null ? RegexTrigrams.requiredTrigrams(regex, trigramField) : null;
+        if (trigrams != null) {
+            candidateQuery.add(trigrams, BooleanClause.Occur.FILTER);
+        }
+        TopDocs candidates = searcher.search(candidateQuery.build(), maxChunks, newestFirst);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        long scannedChars = 0;
+        int scanned = 0;
+        String limit = candidates.totalHits > candidates.scoreDocs.length ? "chunk" : null;
+        for (ScoreDoc candidate : candidates.scoreDocs) {
+            if (matches.size() >= maxMatches) {
+                limit = null;
+                break;
+            }
+            if (scannedChars >= maxChars) {
+                limit = "size";
+                break;
+            }
+            Document chunk = searcher.doc(candidate.doc, fieldsToLoad);
+            String console = chunk.get(consoleField);
+            scanned++;
+            if (console == null) {
+                continue;
+            }
+            scannedChars += console.length();
+            Match match = new Match(candidate.doc);
+            try {
+                if (addFragments(pattern, chunk, console, deadline, match, maxFragments)) {
+                    matches.add(match);
+                }
+            } catch (DeadlineExceeded e) {
+                limit = "time";
+                break;
+            }
+        }
+        if (limit != null) {
+            LOGGER.info("Regex search reached the " + limit + " limit after " + scanned + " of "
+                    + candidates.totalHits + " candidates: " + regex);
+        }
+        return matches;
+    }
+
+    /**
+     * Adds the lines of the first matches as fragments, with the match in bold.
+     *
+     * @return true if the regex matched
+     */
+    private boolean addFragments(Pattern pattern, Document chunk, String console, long deadline, Match match,
+            int maxFragments) {
+        IndexableField firstLineField = chunk.getField(this.firstLineField);
+        int line = firstLineField != null ? firstLineField.numericValue().intValue() : 1;
+        int counted = 0;
+        boolean found = false;
+        Matcher matcher = pattern.matcher(new DeadlineCharSequence(console, deadline));
+        while (match.fragments.size() < maxFragments && matcher.find()) {
+            found = true;
+            for (; counted < matcher.start(); counted++) {
+                if (console.charAt(counted) == '\n') {
+                    line++;
+                }
+            }
+            int lineStart = console.lastIndexOf('\n', matcher.start() - 1) + 1;
+            int lineEnd = console.indexOf('\n', matcher.end());
+            if (lineEnd < 0) {
+                lineEnd = console.length();
+            }
+            match.fragments.add(StringEscapeUtils.escapeHtml(console.substring(lineStart, matcher.start())) + "<B>"
+                    + StringEscapeUtils.escapeHtml(console.substring(matcher.start(), matcher.end())) + "</B>"
+                    + StringEscapeUtils.escapeHtml(console.substring(matcher.end(), lineEnd)));
+            match.lines.add(line);
+        }
+        return found;
+    }
+
+    /**
+     * Thrown from inside the regex, the only way to stop a {@link Matcher} that is still running.
+     */
+    private static final class DeadlineExceeded extends RuntimeException {
+        DeadlineExceeded() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class DeadlineCharSequence implements CharSequence {
+        private final String text;
+        private final long deadline;
+        private int reads;
+
+        DeadlineCharSequence(String text, long deadline) {
+            this.text = text;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads == CHECK_INTERVAL) {
+                reads = 0;
+                if (System.nanoTime() - deadline > 0) {
+                    throw new DeadlineExceeded();
+                }
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
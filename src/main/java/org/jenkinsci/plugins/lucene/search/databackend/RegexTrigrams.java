@@ -0,0 +1,499 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.ngram.NGramTokenizer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * Derives the trigrams a text has to contain to match a {@link java.util.regex.Pattern}, as a query on a field
+ * indexed with character trigrams. Like Google Code Search, every part of the regex is described either by the
+ * exact set of strings it matches, as long as that set is small, or by a trigram condition. Concatenation and
+ * alternation combine the sets, repetitions fall back to conditions.
+ *
+ * The query only pre-filters candidates, it may match texts the regex does not, but never misses one. Regexes
+ * that are case insensitive or too complicated to analyse give no query at all.
+ */
+class RegexTrigrams {
+
+    private static final int MAX_EXACT = 16;
+    private static final int MAX_CLASS_SIZE = 8;
+    private static final Set<String> EMPTY_STRING = Collections.singleton("");
+
+    private final String regex;
+    private final String field;
+    private int pos;
+
+    private RegexTrigrams(String regex, String field) {
+        this.regex = regex;
+        this.field = field;
+    }
+
+    /**
+     * Indexes every trigram of the text, including whitespace.
+     */
+    static Analyzer analyzer() {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                return new TokenStreamComponents(new NGramTokenizer(3, 3));
+            }
+        };
+    }
+
+    /**
+     * @return the trigram query, or null if the regex requires no trigram
+     */
+    static Query requiredTrigrams(String regex, String field) {
+        try {
+            RegexTrigrams parser = new RegexTrigrams(regex, field);
+            Info info = parser.parseAlternation();
+            if (parser.pos < regex.length()) {
+                return null;
+            }
+            return parser.condition(info);
+        } catch (Unanalysable e) {
+            return null;
+        } catch (BooleanQuery.TooManyClauses e) {
+            return null;
+        } catch (IndexOutOfBoundsException e) {
+            // not a valid regex
+            return null;
+        }
+    }
+
+    /**
+     * A part of the regex this parser doesn't understand, the regex gives no query.
+     */
+    private static final class Unanalysable extends Exception {
+        Unanalysable() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Either the exact strings or, when exact is null, a trigram condition where null means "any text".
+     */
+    private static class Info {
+        final Set<String> exact;
+        final Query match;
+
+        Info(Set<String> exact, Query match) {
+            this.exact = exact;
+            this.match = match;
+        }
+    }
+
+    private static Info exact(Set<String> strings) {
+        return new Info(strings, null);
+    }
+
+    private static Info match(Query query) {
+        return new Info(null, query);
+    }
+
+    private Info parseAlternation() throws Unanalysable {
+        Info result = parseConcat();
+        while (pos < regex.length() && regex.charAt(pos) == '|') {
+            pos++;
+            Info next = parseConcat();
+            if (result.exact != null && next.exact != null && result.exact.size() + next.exact.size() <= MAX_EXACT) {
+                Set<String> union = new HashSet<>(result.exact);
+                union.addAll(next.exact);
+                result = exact(union);
+            } else {
+                result = match(or(condition(result), condition(next)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keeps the exact strings of the current run of parts and adds their condition once the run ends, so literals
+     * after a repetition still count.
+     */
+    private Info parseConcat() throws Unanalysable {
+        Set<String> current = EMPTY_STRING;
+        Query done = null;
+        boolean isExact = true;
+        while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+            Info next = parseRepeat();
+            if (next.exact == null) {
+                done = and(done, and(condition(current), next.match));
+                current = EMPTY_STRING;
+                isExact = false;
+            } else if (current.size() * next.exact.size() <= MAX_EXACT) {
+                Set<String> product = new HashSet<>();
+                for (String prefix : current) {
+                    for (String suffix : next.exact) {
+                        product.add(prefix + suffix);
+                    }
+                }
+                current = product;
+            } else {
+                done = and(done, condition(current));
+                current = next.exact;
+                isExact = false;
+            }
+        }
+        return isExact ? exact(current) : match(and(done, condition(current)));
+    }
+
+    private Info parseRepeat() throws Unanalysable {
+        Info atom = parseAtom();
+        while (pos < regex.length()) {
+            char c = regex.charAt(pos);
+            int min;
+            if (c == '*') {
+                min = 0;
+                pos++;
+            } else if (c == '+') {
+                min = 1;
+                pos++;
+            } else if (c == '?') {
+                if (atom.exact != null && atom.exact.size() < MAX_EXACT) {
+                    Set<String> optional = new HashSet<>(atom.exact);
+                    optional.add("");
+                    atom = exact(optional);
+                } else {
+                    atom = match(null);
+                }
+                pos++;
+                skipQuantifierMode();
+                continue;
+            } else if (c == '{') {
+                int end = regex.indexOf('}', pos);
+                if (end < 0) {
+                    throw new Unanalysable();
+                }
+                String bounds = regex.substring(pos + 1, end);
+                int comma = bounds.indexOf(',');
+                try {
+                    min = Integer.parseInt((comma < 0 ? bounds : bounds.substring(0, comma)).trim());
+                } catch (NumberFormatException e) {
+                    throw new Unanalysable();
+                }
+                pos = end + 1;
+            } else {
+                break;
+            }
+            atom = min == 0 ? match(null) : match(condition(atom));
+            skipQuantifierMode();
+        }
+        return atom;
+    }
+
+    private void skipQuantifierMode() {
+        if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+            pos++;
+        }
+    }
+
+    private Info parseAtom() throws Unanalysable {
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case '(':
+                return parseGroup();
+            case '[':
+                return parseClass();
+            case '.':
+                return match(null);
+            case '^':
+            case '$':
+                return exact(EMPTY_STRING);
+            case '\\':
+                return parseEscape();
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw new Unanalysable();
+            default:
+                return literal(c);
+        }
+    }
+
+    private Info parseGroup() throws Unanalysable {
+        boolean lookaround = false;
+        if (regex.startsWith("?", pos)) {
+            pos++;
+            if (regex.startsWith(":", pos) || regex.startsWith(">", pos)) {
+                pos++;
+            } else if (regex.startsWith("=", pos) || regex.startsWith("!", pos)) {
+                pos++;
+                lookaround = true;
+            } else if (regex.startsWith("<=", pos) || regex.startsWith("<!", pos)) {
+                pos += 2;
+                lookaround = true;
+            } else if (regex.startsWith("<", pos)) {
+                int end = regex.indexOf('>', pos);
+                if (end < 0) {
+                    throw new Unanalysable();
+                }
+                pos = end + 1;
+            } else {
+                // inline flags, (?s) or (?s:...)
+                int end = pos;
+                while (end < regex.length() && regex.charAt(end) != ')' && regex.charAt(end) != ':') {
+                    end++;
+                }
+                String flags = regex.substring(pos, end);
+                int minus = flags.indexOf('-');
+                String enabled = minus < 0 ? flags : flags.substring(0, minus);
+                if (end == regex.length() || enabled.indexOf('i') >= 0 || enabled.indexOf('x') >= 0) {
+                    throw new Unanalysable();
+                }
+                pos = end + 1;
+                if (regex.charAt(end) == ')') {
+                    return exact(EMPTY_STRING);
+                }
+            }
+        }
+        Info inner = parseAlternation();
+        if (pos >= regex.length() || regex.charAt(pos) != ')') {
+            throw new Unanalysable();
+        }
+        pos++;
+        return lookaround ? exact(EMPTY_STRING) : inner;
+    }
+
+    private Info parseClass() throws Unanalysable {
+        Set<String> chars = new HashSet<>();
+        boolean tooBig = false;
+        if (pos < regex.length() && regex.charAt(pos) == '^') {
+            tooBig = true;
+            pos++;
+        }
+        boolean first = true;
+        while (true) {
+            if (pos >= regex.length()) {
+                throw new Unanalysable();
+            }
+            char c = regex.charAt(pos++);
+            if (c == ']' && !first) {
+                break;
+            }
+            first = false;
+            if (c == '[') {
+                skipClass();
+                tooBig = true;
+                continue;
+            }
+            if (c == '&' && regex.startsWith("&", pos)) {
+                tooBig = true;
+                continue;
+            }
+            if (c == '\\') {
+                c = regex.charAt(pos++);
+                if (Character.isLetterOrDigit(c)) {
+                    tooBig = true;
+                    continue;
+                }
+            }
+            if (regex.startsWith("-", pos) && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+                pos++;
+                char end = regex.charAt(pos++);
+                if (end == '\\') {
+                    end = regex.charAt(pos++);
+                }
+                if (end - c + 1 > MAX_CLASS_SIZE) {
+                    tooBig = true;
+                } else {
+                    for (char r = c; r <= end; r++) {
+                        chars.add(String.valueOf(r));
+                    }
+                }
+                continue;
+            }
+            chars.add(String.valueOf(c));
+        }
+        if (tooBig || chars.size() > MAX_CLASS_SIZE) {
+            return match(null);
+        }
+        return exact(chars);
+    }
+
+    private void skipClass() throws Unanalysable {
+        int depth = 1;
+        while (depth > 0) {
+            if (pos >= regex.length()) {
+                throw new Unanalysable();
+            }
+            char c = regex.charAt(pos++);
+            if (c == '\\') {
+                pos++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+        }
+    }
+
+    private Info parseEscape() throws Unanalysable {
+        if (pos >= regex.length()) {
+            throw new Unanalysable();
+        }
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case 't':
+                return literal('\t');
+            case 'n':
+                return literal('\n');
+            case 'r':
+                return literal('\r');
+            case 'f':
+                return literal('\f');
+            case 'b':
+            case 'B':
+            case 'A':
+            case 'z':
+            case 'Z':
+            case 'G':
+                return exact(EMPTY_STRING);
+            case 'Q': {
+                int end = regex.indexOf("\\E", pos);
+                String quoted = regex.substring(pos, end < 0 ? regex.length() : end);
+                pos = end < 0 ? regex.length() : end + 2;
+                return exact(Collections.singleton(quoted));
+            }
+            case 'p':
+            case 'P':
+            case 'k':
+                if (pos < regex.length() && (regex.charAt(pos) == '{' || regex.charAt(pos) == '<')) {
+                    int end = regex.indexOf(regex.charAt(pos) == '{' ? '}' : '>', pos);
+                    pos = end < 0 ? regex.length() : end + 1;
+                } else {
+                    pos++;
+                }
+                return match(null);
+            case 'x':
+                if (regex.startsWith("{", pos)) {
+                    int end = regex.indexOf('}', pos);
+                    if (end < 0) {
+                        throw new Unanalysable();
+                    }
+                    pos = end + 1;
+                } else {
+                    pos += 2;
+                }
+                return match(null);
+            case 'u':
+                pos += 4;
+                return match(null);
+            case 'c':
+                pos++;
+                return match(null);
+            default:
+                if (Character.isDigit(c)) {
+                    // back references and octal codes, the digits that follow may belong to them
+                    while (pos < regex.length() && Character.isDigit(regex.charAt(pos))) {
+                        pos++;
+                    }
+                    return match(null);
+                }
+                if (Character.isLetter(c)) {
+                    // classes like \d
+                    return match(null);
+                }
+                return literal(c);
+        }
+    }
+
+    private static Info literal(char c) {
+        return exact(Collections.singleton(String.valueOf(c)));
+    }
+
+    private Query condition(Info info) {
+        return info.exact == null ? info.match : condition(info.exact);
+    }
+
+    /**
+     * @return the condition that one of the strings occurs, null if one of them is too short to require anything
+     */
+    private Query condition(Set<String> exact) {
+        Query result = null;
+        boolean first = true;
+        for (String s : exact) {
+            Query trigrams = trigrams(s);
+            if (trigrams == null) {
+                return null;
+            }
+            result = first ? trigrams : or(result, trigrams);
+            first = false;
+        }
+        return result;
+    }
+
+    /**
+     * @return all trigrams of s, or null for strings that are too short
+     */
+    private Query trigrams(String s) {
+        if (s.length() < 3) {
+            return null;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            // the trigram field counts code points
+            if (Character.isSurrogate(s.charAt(i))) {
+                return null;
+            }
+        }
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            trigrams.add(s.substring(i, i + 3));
+        }
+        Query result = null;
+        for (String trigram : trigrams) {
+            result = and(result, new TermQuery(new Term(field, trigram)));
+        }
+        return result;
+    }
+
+    private static Query and(Query a, Query b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        addFlattened(builder, a, BooleanClause.Occur.FILTER);
+        addFlattened(builder, b, BooleanClause.Occur.FILTER);
+        return builder.build();
+    }
+
+    private static Query or(Query a, Query b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        addFlattened(builder, a, BooleanClause.Occur.SHOULD);
+        addFlattened(builder, b, BooleanClause.Occur.SHOULD);
+        return builder.build();
+    }
+
+    private static void addFlattened(BooleanQuery.Builder builder, Query query, BooleanClause.Occur occur) {
+        if (query instanceof BooleanQuery) {
+            BooleanQuery booleanQuery = (BooleanQuery) query;
+            boolean same = true;
+            for (BooleanClause clause : booleanQuery.clauses()) {
+                same &= clause.getOccur() == occur;
+            }
+            if (same) {
+                for (BooleanClause clause : booleanQuery.clauses()) {
+                    builder.add(clause.getQuery(), occur);
+                }
+                return;
+            }
+        }
+        builder.add(query, occur);
+    }
+}
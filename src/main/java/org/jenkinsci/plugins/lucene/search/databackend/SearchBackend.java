@@ -4,6 +4,8 @@ import hudson.model.Job;
 import hudson.model.Run;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -21,20 +23,43 @@ public abstract class SearchBackend<T> {
 
     private static final Logger LOGGER = Logger.getLogger(SearchBackend.class);
 
+    /**
+     * What a backend supports besides storing builds and finding them.
+     */
+    public enum Capability {
+        // running builds are searchable, see storeRunningBuildChunk
+        NEAR_REAL_TIME,
+        // search can count the matching builds per job, result and day
+        FACETS,
+        // hits have fragments of the console with the matches
+        HIGHLIGHTING
+    }
+
     @SuppressWarnings("rawtypes")
     private class RebuildBuildWorker implements RunWithArgument<Run> {
 
+        private final ManagerProgress managerProgress;
         private final Progress progress;
         private final boolean overwrite;
+        private final RebuildThrottle throttle;
 
-        private RebuildBuildWorker(Progress progress, boolean overwrite) {
+        private RebuildBuildWorker(ManagerProgress managerProgress, Progress progress, boolean overwrite,
+                RebuildThrottle throttle) {
+            this.managerProgress = managerProgress;
             this.progress = progress;
             this.overwrite = overwrite;
+            this.throttle = throttle;
         }
 
         @Override
         public void run(Run run) {
+            if (managerProgress.isCancelRequested()) {
+                return;
+            }
             try {
+                if (throttle != null) {
+                    throttle.beforeBuild(run);
+                }
                 if (overwrite) {
                     storeBuild(run);
                 } else {
@@ -42,6 +67,9 @@ public abstract class SearchBackend<T> {
                         storeBuild(run);
                     }
                 }
+            } catch (InterruptedException e) {
+                managerProgress.requestCancel();
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
                 progress.completedWithErrors(e);
                 LOGGER.warn("Error rebuilding build", e);
@@ -55,32 +83,107 @@ public abstract class SearchBackend<T> {
 
     public abstract void storeBuild(final Run<?, ?> run) throws IOException;
 
+    /**
+     * Indexes part of the console of a build that is still running. Storing a chunk with the same number again
+     * replaces it, and {@link #storeBuild(Run)} replaces all chunks of the build once it has completed.
+     *
+     * @param firstLine the line number of the first line of the chunk, starting at 1
+     */
+    public abstract void storeRunningBuildChunk(final Run<?, ?> run, int chunkNumber, int firstLine, String console)
+            throws IOException;
+
     public abstract boolean findRunIndex(Run<?, ?> run);
 
     public abstract List<FreeTextSearchItemImplementation> getHits(final String query, boolean searchNext);
 
+    /**
+     * Like {@link #getHits(String, boolean)}, with what the options ask for besides the hits. Backends that can't
+     * compute facets return {@link SearchFacets#EMPTY}.
+     */
+    public SearchPage search(final String query, boolean searchNext, SearchOptions options) {
+        return new SearchPage(getHits(query, searchNext), SearchFacets.EMPTY);
+    }
+
+    /**
+     * Only counts the builds matching the query per job, result and day, without collecting and loading the hits.
+     * Doesn't change where the next page of the last search starts. Backends that can't compute facets return
+     * {@link SearchFacets#EMPTY}.
+     *
+     * @param options the jobs to count, the other options are ignored
+     */
+    public SearchFacets getFacets(final String query, SearchOptions options) {
+        return SearchFacets.EMPTY;
+    }
+
     public abstract SearchBackend<?> reconfigure(Map<String, Object> config);
 
+    public Set<Capability> getCapabilities() {
+        return EnumSet.noneOf(Capability.class);
+    }
+
+    /**
+     * @return the number of tokens filtered at index time per field, empty if the backend doesn't filter
+     */
+    public Map<String, Long> getFilteredTokenCounts() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * @param query limits the count to the matching builds, all builds if empty
+     * @return the number of builds per exception class in their console, the most frequent first, empty if the
+     * backend doesn't extract exceptions
+     */
+    public Map<String, Long> getTopExceptions(String query, int limit) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * @return how much of each index file is in the page cache, by file name, empty if the backend has no files
+     */
+    public Map<String, PageCacheResidency.FileResidency> getResidency() {
+        return Collections.emptyMap();
+    }
+
     public abstract void removeBuild(Run<?, ?> run) throws IOException;
 
     public abstract void deleteJob(String jobName) throws IOException;
 
+    /**
+     * Makes everything stored so far durable. Called when a rebuild ends, also
+     * when it ends early because it was cancelled.
+     */
+    public abstract void commit() throws IOException;
+
+    /**
+     * @param throttle limits applied to each build, or null to index as fast as possible
+     */
     @SuppressWarnings("rawtypes")
-    public void rebuildJob(Progress progress, Job<?, ?> job, int maxWorkers, boolean overwrite) throws IOException {
-        BurstExecutor<Run> burstExecutor = BurstExecutor.create(new RebuildBuildWorker(progress, overwrite), maxWorkers)
-               .andStart();
+    public void rebuildJob(ManagerProgress managerProgress, Progress progress, Job<?, ?> job, int maxWorkers,
+            boolean overwrite, RebuildThrottle throttle) throws IOException {
+        BurstExecutor<Run> burstExecutor = BurstExecutor.create(
+                new RebuildBuildWorker(managerProgress, progress, overwrite, throttle), maxWorkers).andStart();
         if (overwrite) {
             deleteJob(job.getName());
         }
         for (Run<?, ?> run : job.getBuilds()) {
+            if (managerProgress.isCancelRequested()) {
+                burstExecutor.cancel();
+                break;
+            }
             progress.setMax(progress.getMax() + 1);
             burstExecutor.add(run);
         }
+        if (managerProgress.isCancelRequested()) {
+            // cancelled after the last build was queued, drop what the workers haven't started
+            burstExecutor.cancel();
+        }
         try {
             burstExecutor.waitForCompletion();
         } catch (InterruptedException e) {
-            e.printStackTrace();
-            LOGGER.warn("Why was I interrupted?", e);
+            LOGGER.warn("Rebuild of " + job.getName() + " was interrupted", e);
+            managerProgress.requestCancel();
+            burstExecutor.cancel();
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -101,43 +204,61 @@ public abstract class SearchBackend<T> {
     }
 
     @SuppressWarnings("rawtypes")
-    public void rebuildDatabase(ManagerProgress progress, int maxWorkers, Set<String> jobNames, boolean overwrite) {
+    public void rebuildDatabase(ManagerProgress progress, int maxWorkers, Set<String> jobNames, boolean overwrite,
+            RebuildThrottle throttle) {
         List<Job> allItems = Jenkins.getInstance().getAllItems(Job.class);
+        if (throttle != null) {
+            throttle.activate();
+        }
         try {
             if (!jobNames.isEmpty()) {
                 progress.setMax(jobNames.size());
                 for (Job job : allItems) {
+                    if (progress.isCancelRequested()) {
+                        break;
+                    }
                     if (jobNames.contains(job.getName())) {
-                        rebuildSingleJob(progress, job, maxWorkers, overwrite);
+                        rebuildSingleJob(progress, job, maxWorkers, overwrite, throttle);
                         jobNames.remove(job.getName());
                     }
                     if (jobNames.isEmpty()) {
-                        progress.setSuccessfullyCompleted();
-                        return;
+                        break;
                     }
                 }
             } else {
                 progress.setMax(allItems.size());
                 for (Job job : allItems) {
-                    rebuildSingleJob(progress, job, maxWorkers, overwrite);
+                    if (progress.isCancelRequested()) {
+                        break;
+                    }
+                    rebuildSingleJob(progress, job, maxWorkers, overwrite, throttle);
                 }
+            }
+            commit();
+            if (progress.isCancelRequested()) {
+                progress.setCancelled();
+            } else {
                 progress.setSuccessfullyCompleted();
             }
         } catch (Exception e) {
             progress.completedWithErrors(e);
             LOGGER.error("Rebuild database failed", e);
         } finally {
+            if (throttle != null) {
+                throttle.deactivate();
+            }
             progress.setFinished();
         }
     }
 
-    private void rebuildSingleJob(ManagerProgress progress, Job job, int maxWorkers, boolean overwrite) throws Exception {
+    private void rebuildSingleJob(ManagerProgress progress, Job job, int maxWorkers, boolean overwrite,
+            RebuildThrottle throttle) throws Exception {
         Progress currentJobProgress = progress.beginJob(job);
         try {
             if (job.getBuilds().isEmpty()) {
                 deleteJob(job.getName());
             } else {
-                rebuildJob(currentJobProgress, job, maxWorkers, overwrite);
+                rebuildJob(progress, currentJobProgress, job, maxWorkers, overwrite, throttle);
                 progress.assertNoErrors();
             }
         } finally {
@@ -2,6 +2,7 @@ package org.jenkinsci.plugins.lucene.search.databackend;
 
 import hudson.Extension;
 import hudson.model.Item;
+import hudson.model.Job;
 import hudson.model.Run;
 import hudson.search.SearchResult;
 import hudson.search.SuggestedItem;
@@ -18,7 +19,6 @@ import org.apache.log4j.Logger;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.jenkinsci.plugins.lucene.search.FreeTextSearchItemImplementation;
 import org.jenkinsci.plugins.lucene.search.SearchResultImpl;
-import org.jenkinsci.plugins.lucene.search.bashrunner.BashRunner;
 import org.jenkinsci.plugins.lucene.search.config.SearchBackendConfiguration;
 import org.kohsuke.stapler.bind.JavaScriptMethod;
 
@@ -26,30 +26,106 @@ import org.kohsuke.stapler.bind.JavaScriptMethod;
 public class SearchBackendManager {
     private static final Logger LOG = Logger.getLogger(SearchBackendManager.class);
 
+    public static final String REBUILD_THROTTLE = "rebuildThrottle";
+    // The id of the SearchBackendProvider in the configuration
+    public static final String BACKEND = "searchBackend";
+
     private transient SearchBackend<?> instance;
+    private transient String instanceProvider;
     private transient List<SearchFieldDefinition> cachedFieldDefinitions;
+    private final transient RebuildThrottle rebuildThrottle = new RebuildThrottle();
 
     @Inject
     private transient SearchBackendConfiguration backendConfig;
 
     private synchronized SearchBackend<?> getBackend() {
         if (instance == null) {
-            instance = LuceneSearchBackend.create(backendConfig.getConfig());
+            instance = create(withRuntimeConfig(backendConfig.getConfig()));
         }
         return instance;
     }
 
     public synchronized void reconfigure(final Map<String, Object> config) throws IOException {
-        if (instance != null) {
+        if (instance != null && getProviderId(config).equals(instanceProvider)) {
             instance.close();
-            instance = instance.reconfigure(config);
+            instance = instance.reconfigure(withRuntimeConfig(config));
         } else {
-            instance = LuceneSearchBackend.create(backendConfig.getConfig());
+            if (instance != null) {
+                instance.close();
+            }
+            instance = create(withRuntimeConfig(config));
+        }
+    }
+
+    /**
+     * Creates the backend of the provider selected in the configuration, or the Lucene backend if that provider
+     * is not installed.
+     */
+    private SearchBackend<?> create(final Map<String, Object> config) {
+        String id = getProviderId(config);
+        SearchBackendProvider provider = SearchBackendProvider.get(id);
+        if (provider == null) {
+            LOG.warn("No search backend " + id + ", using Lucene");
+            provider = SearchBackendProvider.get(LuceneSearchBackendProvider.ID);
         }
+        instanceProvider = id;
+        try {
+            return provider.create(config);
+        } catch (IOException e) {
+            LOG.error("Could not create the " + provider.getDisplayName() + " search backend", e);
+        }
+        return null;
+    }
+
+    private static String getProviderId(final Map<String, Object> config) {
+        Object id = config.get(BACKEND);
+        return id != null ? id.toString() : LuceneSearchBackendProvider.ID;
+    }
+
+    public Set<SearchBackend.Capability> getCapabilities() {
+        SearchBackend<?> backend = getBackend();
+        return backend != null ? backend.getCapabilities() : EnumSet.noneOf(SearchBackend.Capability.class);
+    }
+
+    public boolean hasCapability(SearchBackend.Capability capability) {
+        return getCapabilities().contains(capability);
+    }
+
+    private Map<String, Object> withRuntimeConfig(final Map<String, Object> config) {
+        Map<String, Object> runtimeConfig = new HashMap<String, Object>(config);
+        runtimeConfig.put(REBUILD_THROTTLE, rebuildThrottle);
+        return runtimeConfig;
+    }
+
+    public RebuildThrottle getRebuildThrottle() {
+        return rebuildThrottle;
+    }
+
+    public Map<String, Long> getFilteredTokenCounts() {
+        return getBackend().getFilteredTokenCounts();
+    }
+
+    public Map<String, PageCacheResidency.FileResidency> getResidency() {
+        return getBackend().getResidency();
+    }
+
+    public Map<String, Long> getTopExceptions(String query, int limit) {
+        return getBackend().getTopExceptions(query, limit);
     }
 
     public List<FreeTextSearchItemImplementation> getHits(String query, boolean searchNext) {
-        List<FreeTextSearchItemImplementation> hits = getBackend().getHits(query, searchNext);
+        return search(query, searchNext, SearchOptions.DEFAULT).getItems();
+    }
+
+    /**
+     * With security enabled the hits and facets only contain the jobs the current user may see.
+     */
+    public SearchPage search(String query, boolean searchNext, SearchOptions options) {
+        if (options.isFacets() || options.isCollapse()) {
+            options = withVisibleJobs(options);
+        }
+        SearchPage page = getBackend().search(query, searchNext, options);
+        List<FreeTextSearchItemImplementation> hits = page.getItems();
         if (backendConfig.isUseSecurity()) {
             Jenkins jenkins = Jenkins.getInstance();
             Iterator<FreeTextSearchItemImplementation> iter = hits.iterator();
@@ -61,7 +137,26 @@ public class SearchBackendManager {
                 }
             }
         }
-        return hits;
+        return page;
+    }
+
+    /**
+     * The facets of the builds matching the query, without a search for the hits. With security enabled they only
+     * contain the jobs the current user may see.
+     */
+    public SearchFacets getFacets(String query) {
+        return getBackend().getFacets(query, withVisibleJobs(SearchOptions.DEFAULT));
+    }
+
+    private SearchOptions withVisibleJobs(SearchOptions options) {
+        if (!backendConfig.isUseSecurity()) {
+            return options;
+        }
+        Set<String> visibleJobs = new HashSet<>();
+        for (Job<?, ?> job : Jenkins.getInstance().getAllItems(Job.class)) {
+            visibleJobs.add(job.getFullName());
+        }
+        return options.withVisibleJobs(visibleJobs);
     }
 
     public SearchResult getSuggestedItems(String query) {
@@ -74,6 +169,12 @@ public class SearchBackendManager {
 
     public void clean(ManagerProgress progress) {
         progress.setMax(1);
+        if (progress.isCancelRequested()) {
+            // aborted while waiting for the worker
+            progress.setCancelled();
+            progress.setFinished();
+            return;
+        }
         getBackend().cleanAllJob(progress);
     }
 
@@ -90,9 +191,15 @@ public class SearchBackendManager {
         getBackend().storeBuild(run);
     }
 
-    public void rebuildDatabase(ManagerProgress progress, int maxWorkers, Set<String> jobs, boolean overwrite) {
+    public void storeRunningBuildChunk(Run<?, ?> run, int chunkNumber, int firstLine, String console)
+            throws IOException {
+        getBackend().storeRunningBuildChunk(run, chunkNumber, firstLine, console);
+    }
+
+    public void rebuildDatabase(ManagerProgress progress, int maxWorkers, Set<String> jobs, boolean overwrite,
+            boolean throttled) {
         try {
-            getBackend().rebuildDatabase(progress, maxWorkers, jobs, overwrite);
+            getBackend().rebuildDatabase(progress, maxWorkers, jobs, overwrite, throttled ? rebuildThrottle : null);
         } catch (Exception e) {
             progress.completedWithErrors(e);
             LOG.error("Failed rebuilding search database", e);
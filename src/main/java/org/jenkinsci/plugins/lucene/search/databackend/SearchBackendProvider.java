@@ -0,0 +1,44 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+
+import java.io.IOException;
+import java.util.Map;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Extend this {@link ExtensionPoint} to add a search engine that can be selected in the global configuration.
+ */
+public abstract class SearchBackendProvider implements ExtensionPoint {
+
+    public static ExtensionList<SearchBackendProvider> all() {
+        return Jenkins.getInstance().getExtensionList(SearchBackendProvider.class);
+    }
+
+    /**
+     * @return the provider with the id, or null if there is none
+     */
+    public static SearchBackendProvider get(String id) {
+        for (SearchBackendProvider provider : all()) {
+            if (provider.getId().equals(id)) {
+                return provider;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The id stored in the configuration, like {@code LUCENE}.
+     */
+    public abstract String getId();
+
+    public abstract String getDisplayName();
+
+    /**
+     * @param config the backend configuration from {@code SearchBackendConfiguration}, options of other backends
+     *               are ignored
+     */
+    public abstract SearchBackend<?> create(Map<String, Object> config) throws IOException;
+}
@@ -0,0 +1,36 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The number of matching builds per job, per result and per start day ({@code yyyy-MM-dd} in the time zone of the
+ * server). Jobs and results are ordered by count, days by date.
+ */
+public class SearchFacets {
+
+    public static final SearchFacets EMPTY = new SearchFacets(Collections.<String, Long>emptyMap(),
+            Collections.<String, Long>emptyMap(), Collections.<String, Long>emptyMap());
+
+    private final Map<String, Long> jobs;
+    private final Map<String, Long> results;
+    private final Map<String, Long> days;
+
+    public SearchFacets(Map<String, Long> jobs, Map<String, Long> results, Map<String, Long> days) {
+        this.jobs = jobs;
+        this.results = results;
+        this.days = days;
+    }
+
+    public Map<String, Long> getJobs() {
+        return jobs;
+    }
+
+    public Map<String, Long> getResults() {
+        return results;
+    }
+
+    public Map<String, Long> getDays() {
+        return days;
+    }
+}
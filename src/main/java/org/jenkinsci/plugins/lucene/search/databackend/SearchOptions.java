@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.util.Set;
+
+/**
+ * What a search computes besides the page of hits. Immutable, the {@code with} methods return a copy.
+ */
+public class SearchOptions {
+
+    public static final SearchOptions DEFAULT = new SearchOptions(false, 0, null);
+
+    private final boolean facets;
+    private final int hitsPerJob;
+    private final Set<String> visibleJobs;
+
+    private SearchOptions(boolean facets, int hitsPerJob, Set<String> visibleJobs) {
+        this.facets = facets;
+        this.hitsPerJob = hitsPerJob;
+        this.visibleJobs = visibleJobs;
+    }
+
+    /**
+     * Also counts the matching builds per job, result and day, see {@link SearchFacets}.
+     */
+    public SearchOptions withFacets() {
+        return new SearchOptions(true, hitsPerJob, visibleJobs);
+    }
+
+    /**
+     * Only keeps the best {@code hitsPerJob} builds of each job and counts the matching builds per job. All hits
+     * are on the first page.
+     */
+    public SearchOptions withCollapse(int hitsPerJob) {
+        return new SearchOptions(facets, hitsPerJob, visibleJobs);
+    }
+
+    /**
+     * @param visibleJobs the full names of the jobs the user may see, the facets and collapsed hits only contain their builds
+     */
+    public SearchOptions withVisibleJobs(Set<String> visibleJobs) {
+        return new SearchOptions(facets, hitsPerJob, visibleJobs);
+    }
+
+    public boolean isFacets() {
+        return facets;
+    }
+
+    public boolean isCollapse() {
+        return hitsPerJob > 0;
+    }
+
+    /**
+     * @return the number of builds kept per job, 0 if the hits are not collapsed
+     */
+    public int getHitsPerJob() {
+        return hitsPerJob;
+    }
+
+    /**
+     * @return the jobs the user may see, or null for all jobs
+     */
+    public Set<String> getVisibleJobs() {
+        return visibleJobs;
+    }
+}
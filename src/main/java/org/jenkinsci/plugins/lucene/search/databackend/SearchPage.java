@@ -0,0 +1,43 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jenkinsci.plugins.lucene.search.FreeTextSearchItemImplementation;
+
+/**
+ * A page of hits and, if requested in the {@link SearchOptions}, the facets of all matching builds and the number of
+ * matching builds per job of collapsed hits.
+ */
+public class SearchPage {
+
+    private final List<FreeTextSearchItemImplementation> items;
+    private final SearchFacets facets;
+    private final Map<String, Long> jobTotals;
+
+    public SearchPage(List<FreeTextSearchItemImplementation> items, SearchFacets facets) {
+        this(items, facets, Collections.<String, Long>emptyMap());
+    }
+
+    public SearchPage(List<FreeTextSearchItemImplementation> items, SearchFacets facets, Map<String, Long> jobTotals) {
+        this.items = items;
+        this.facets = facets;
+        this.jobTotals = jobTotals;
+    }
+
+    public List<FreeTextSearchItemImplementation> getItems() {
+        return items;
+    }
+
+    public SearchFacets getFacets() {
+        return facets;
+    }
+
+    /**
+     * @return the number of matching builds per job if the hits are collapsed, otherwise empty
+     */
+    public Map<String, Long> getJobTotals() {
+        return jobTotals;
+    }
+}
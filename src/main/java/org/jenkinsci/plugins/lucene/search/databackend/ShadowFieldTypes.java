@@ -0,0 +1,33 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.IndexOptions;
+
+/**
+ * Field types of the fields that are only indexed to answer some queries faster and are never shown. None of
+ * them index positions, so phrase queries on them are turned into conjunctions by the query parser.
+ */
+final class ShadowFieldTypes {
+
+    /**
+     * For fields that only select candidates.
+     */
+    static final FieldType DOCS_ONLY = create(IndexOptions.DOCS);
+
+    /**
+     * For fields that are searched and scored on their own.
+     */
+    static final FieldType DOCS_AND_FREQS = create(IndexOptions.DOCS_AND_FREQS);
+
+    private ShadowFieldTypes() {
+    }
+
+    private static FieldType create(IndexOptions indexOptions) {
+        FieldType type = new FieldType();
+        type.setTokenized(true);
+        type.setOmitNorms(true);
+        type.setIndexOptions(indexOptions);
+        type.freeze();
+        return type;
+    }
+}
@@ -0,0 +1,52 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.json.JSONObject;
+
+/**
+ * The requests {@link SolrSearchBackend} sends to a Solr collection. Tests use a stand-in that records the updates.
+ */
+interface SolrConnection extends Closeable {
+
+    /**
+     * @param handler the request handler of the collection, like {@code select} or {@code get}
+     * @return the response, requested as JSON
+     */
+    JSONObject get(String handler, Map<String, String> params) throws IOException;
+
+    /**
+     * Sends update commands to the JSON update handler in one request, in order.
+     *
+     * @param commands the commands, like {@code "add":{"doc":{...}}} or {@code "delete":{"query":"..."}}, may be
+     *                 empty to only commit
+     */
+    void update(List<String> commands, Map<String, String> params) throws IOException;
+
+    /**
+     * Solr answered a request with an error status.
+     */
+    class StatusException extends IOException {
+        private final int status;
+
+        StatusException(String message, int status) {
+            super(message);
+            this.status = status;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        /**
+         * @return whether the request itself was rejected, like a document that doesn't fit the schema, so sending
+         *         it again fails the same way. A timeout or too many requests are worth another try.
+         */
+        boolean isPermanent() {
+            return status >= 400 && status < 500 && status != 408 && status != 429;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.jenkinsci.plugins.lucene.search.Field;
+import org.jenkinsci.plugins.lucene.search.FreeTextSearchExtension;
+import org.jenkinsci.plugins.lucene.search.FreeTextSearchItemImplementation;
+
+import static org.jenkinsci.plugins.lucene.search.Field.*;
+
+/**
+ * Stores the builds in a Solr collection, so the index and the search load are off the Jenkins heap. Like the
+ * Lucene backend a build is a build document and a document per console chunk carrying the build fields, and the
+ * hits are grouped per build. The console is read from the log a chunk at a time and the documents go through the
+ * {@link SolrUpdateQueue}, so a long log never has to be in memory as a whole.
+ *
+ * The fields use the dynamic field suffixes of the Solr schemaless configuration ({@code _s}, {@code _l},
+ * {@code _t}), the keywords of the query syntax are mapped to them as edismax field aliases.
+ */
+public class SolrSearchBackend extends SearchBackend<JSONObject> {
+    private static final Logger LOGGER = Logger.getLogger(SolrSearchBackend.class);
+
+    public static final String SOLR_URL = "solrUrl";
+    public static final String SOLR_COLLECTION = "solrCollection";
+
+    private static final int MAX_HITS_PER_PAGE = 100;
+    private static final int MAX_NUM_FRAGMENTS = 5;
+    private static final int MAX_BATCH_CHARS = 4 * 1024 * 1024;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    // running builds are searchable after about this long
+    private static final int COMMIT_WITHIN_MILLIS = 5000;
+
+    private static final String BUILD_ID = "build_s";
+    private static final String DOC_TYPE = "doctype_s";
+    private static final String BUILD = "build";
+    private static final String CHUNK = "chunk";
+    private static final String RUNNING_CHUNK = "livechunk";
+    private static final String CHUNK_FIRST_LINE = "firstline_l";
+    private static final String CHUNK_LAST_LINE = "lastline_l";
+    private static final String JOB_NAME_EXACT = "j_s";
+
+    static final Map<Field, String> FIELD_NAMES;
+
+    static {
+        Map<Field, String> names = new EnumMap<>(Field.class);
+        names.put(PROJECT_NAME, "j_t");
+        names.put(BUILD_NUMBER, "n_l");
+        // the unique key of the collection
+        names.put(ID, "id");
+        names.put(BUILD_DISPLAY_NAME, "d_t");
+        names.put(BUILD_PARAMETER, "p_t");
+        names.put(START_TIME, "starttime_l");
+        names.put(RESULT, "result_s");
+        names.put(DURATION, "duration_l");
+        names.put(NODE, "node_s");
+        names.put(CAUSE, "cause_ss");
+        names.put(CONSOLE, "c_t");
+        FIELD_NAMES = names;
+    }
+
+    private final SolrConnection connection;
+    private final SolrUpdateQueue updates;
+    private final boolean consolePreprocessing;
+    private volatile int nextStart;
+
+    SolrSearchBackend(SolrConnection connection, Map<String, Object> options, long flushIntervalMillis) {
+        this.connection = connection;
+        consolePreprocessing = Boolean.TRUE.equals(options.get(LuceneSearchBackend.CONSOLE_PREPROCESSING));
+        updates = new SolrUpdateQueue(connection, MAX_BATCH_CHARS, flushIntervalMillis, COMMIT_WITHIN_MILLIS);
+    }
+
+    public static SolrSearchBackend create(final Map<String, Object> config) throws IOException {
+        Object url = config.get(SOLR_URL);
+        Object collection = config.get(SOLR_COLLECTION);
+        if (url == null || StringUtils.isBlank(url.toString()) || collection == null
+                || StringUtils.isBlank(collection.toString())) {
+            throw new IOException("The Solr url and collection have to be configured");
+        }
+        return new SolrSearchBackend(new HttpSolrConnection(url.toString(), collection.toString()), config,
+                FLUSH_INTERVAL_MILLIS);
+    }
+
+    @Override
+    public Set<Capability> getCapabilities() {
+        return EnumSet.of(Capability.NEAR_REAL_TIME, Capability.HIGHLIGHTING);
+    }
+
+    @Override
+    public SearchBackend<?> reconfigure(Map<String, Object> config) {
+        close();
+        try {
+            return create(config);
+        } catch (IOException e) {
+            LOGGER.error("create solr search backend failed: " + e);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            updates.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not send the last updates to Solr", e);
+        }
+        IOUtils.closeQuietly(connection);
+    }
+
+    @Override
+    public void storeBuild(final Run<?, ?> run) throws IOException {
+        Map<String, Object> buildFields = getFieldValues(run);
+        String id = (String) ID.getValue(run);
+        // replaces the chunks of an earlier store and the chunks indexed while the build was running
+        updates.deleteByQuery(BUILD_ID + ":" + quote(id));
+
+        Map<String, Object> build = new LinkedHashMap<>(buildFields);
+        build.put(DOC_TYPE, BUILD);
+        for (FreeTextSearchExtension extension : FreeTextSearchExtension.all()) {
+            try {
+                String fieldValue = extension.getTextResult(run);
+                if (fieldValue != null) {
+                    build.put(extensionField(extension.getKeyword()), fieldValue);
+                }
+            } catch (Throwable t) {
+                LOGGER.warn("CRASH: " + extension.getClass().getName() + ", " + extension.getKeyword() + t);
+            }
+        }
+        updates.add(build);
+
+        Reader log = run.getLogReader();
+        try {
+            ConsoleChunker chunker = new ConsoleChunker(new ConsolePreprocessor(log, consolePreprocessing,
+                    consolePreprocessing));
+            ConsoleChunker.Chunk chunk;
+            int chunkNumber = 0;
+            while ((chunk = chunker.next()) != null) {
+                Map<String, Object> chunkDoc = createChunkDocument(buildFields, chunk);
+                chunkDoc.put(FIELD_NAMES.get(ID), id + "/" + chunkNumber++);
+                chunkDoc.put(DOC_TYPE, CHUNK);
+                updates.add(chunkDoc);
+            }
+        } finally {
+            IOUtils.closeQuietly(log);
+        }
+    }
+
+    @Override
+    public void storeRunningBuildChunk(final Run<?, ?> run, int chunkNumber, int firstLine, String console)
+            throws IOException {
+        int lines = StringUtils.countMatches(console, "\n") + (console.endsWith("\n") ? 0 : 1);
+        ConsoleChunker.Chunk chunk = new ConsoleChunker.Chunk(consolePreprocessing ? ConsolePreprocessor.strip(console)
+                : console, firstLine, firstLine + Math.max(lines, 1) - 1);
+        Map<String, Object> doc = createChunkDocument(getFieldValues(run), chunk);
+        doc.put(FIELD_NAMES.get(ID), ID.getValue(run) + "/" + RUNNING_CHUNK + "/" + chunkNumber);
+        doc.put(DOC_TYPE, RUNNING_CHUNK);
+        updates.add(doc);
+    }
+
+    /**
+     * All build fields except the console, by their Solr names.
+     */
+    private static Map<String, Object> getFieldValues(Run<?, ?> run) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Field field : Field.values()) {
+            if (field != CONSOLE) {
+                Object value = field.getValue(run);
+                if (value != null) {
+                    values.put(FIELD_NAMES.get(field), value);
+                }
+            }
+        }
+        values.put(JOB_NAME_EXACT, PROJECT_NAME.getValue(run));
+        values.put(BUILD_ID, ID.getValue(run));
+        return values;
+    }
+
+    private static Map<String, Object> createChunkDocument(Map<String, Object> buildFields,
+            ConsoleChunker.Chunk chunk) {
+        Map<String, Object> doc = new LinkedHashMap<>(buildFields);
+        doc.put(FIELD_NAMES.get(CONSOLE), chunk.text);
+        doc.put(CHUNK_FIRST_LINE, chunk.firstLine);
+        doc.put(CHUNK_LAST_LINE, chunk.lastLine);
+        return doc;
+    }
+
+    private static String extensionField(String keyword) {
+        return keyword + "_t";
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    @Override
+    public List<FreeTextSearchItemImplementation> getHits(String query, boolean searchNext) {
+        int start = searchNext ? nextStart : 0;
+        nextStart = start + MAX_HITS_PER_PAGE;
+        try {
+            return toSearchItems(connection.get("select", getSearchParams(query, start)));
+        } catch (IOException e) {
+            LOGGER.warn("Search IO Error: ", e);
+        }
+        return new ArrayList<>();
+    }
+
+    private Map<String, String> getSearchParams(String query, int start) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("q", query);
+        params.put("defType", "edismax");
+        params.put("q.op", "AND");
+        List<String> defaultFields = new ArrayList<>();
+        for (Field field : Field.values()) {
+            params.put("f." + field.fieldName + ".qf", FIELD_NAMES.get(field));
+            if (field.defaultSearchable) {
+                defaultFields.add(FIELD_NAMES.get(field));
+            }
+        }
+        for (FreeTextSearchExtension extension : FreeTextSearchExtension.all()) {
+            params.put("f." + extension.getKeyword() + ".qf", extensionField(extension.getKeyword()));
+            if (extension.isDefaultSearchable()) {
+                defaultFields.add(extensionField(extension.getKeyword()));
+            }
+        }
+        params.put("qf", StringUtils.join(defaultFields, ' '));
+        params.put("fl", StringUtils.join(new String[] { FIELD_NAMES.get(ID), BUILD_ID, JOB_NAME_EXACT,
+                FIELD_NAMES.get(BUILD_NUMBER), FIELD_NAMES.get(BUILD_DISPLAY_NAME), DOC_TYPE }, ','));
+        // a page of builds with their best chunks, newer builds first when the scores are equal
+        params.put("group", "true");
+        params.put("group.field", BUILD_ID);
+        params.put("group.limit", String.valueOf(MAX_NUM_FRAGMENTS));
+        params.put("sort", "score desc," + FIELD_NAMES.get(START_TIME) + " desc");
+        params.put("start", String.valueOf(start));
+        params.put("rows", String.valueOf(MAX_HITS_PER_PAGE));
+        params.put("hl", "true");
+        params.put("hl.fl", FIELD_NAMES.get(CONSOLE));
+        params.put("hl.snippets", String.valueOf(MAX_NUM_FRAGMENTS));
+        params.put("hl.encoder", "html");
+        params.put("hl.simple.pre", "<B>");
+        params.put("hl.simple.post", "</B>");
+        return params;
+    }
+
+    /**
+     * A hit per build group of the response, with the highlighted fragments of its chunks. The line of a fragment
+     * is not known, the console of the chunks isn't fetched.
+     */
+    static List<FreeTextSearchItemImplementation> toSearchItems(JSONObject response) {
+        List<FreeTextSearchItemImplementation> items = new ArrayList<>();
+        JSONObject grouped = response.optJSONObject("grouped");
+        JSONObject builds = grouped != null ? grouped.optJSONObject(BUILD_ID) : null;
+        if (builds == null) {
+            return items;
+        }
+        JSONObject highlighting = response.optJSONObject("highlighting");
+        JSONArray groups = builds.getJSONArray("groups");
+        for (int i = 0; i < groups.size(); i++) {
+            JSONArray docs = groups.getJSONObject(i).getJSONObject("doclist").getJSONArray("docs");
+            if (docs.isEmpty()) {
+                continue;
+            }
+            List<String> bestFragments = new ArrayList<>();
+            boolean running = false;
+            for (int j = 0; j < docs.size(); j++) {
+                JSONObject doc = docs.getJSONObject(j);
+                running |= RUNNING_CHUNK.equals(doc.optString(DOC_TYPE));
+                JSONObject docHighlights = highlighting != null
+                        ? highlighting.optJSONObject(doc.getString(FIELD_NAMES.get(ID))) : null;
+                JSONArray fragments = docHighlights != null
+                        ? docHighlights.optJSONArray(FIELD_NAMES.get(CONSOLE)) : null;
+                for (int k = 0; fragments != null && k < fragments.size()
+                        && bestFragments.size() < MAX_NUM_FRAGMENTS; k++) {
+                    bestFragments.add(fragments.getString(k));
+                }
+            }
+            JSONObject build = docs.getJSONObject(0);
+            String projectName = build.optString(JOB_NAME_EXACT);
+            String buildNumber = build.optString(FIELD_NAMES.get(BUILD_NUMBER));
+            String searchName = build.optString(FIELD_NAMES.get(BUILD_DISPLAY_NAME));
+            if (running) {
+                searchName += " (running)";
+            }
+            items.add(new FreeTextSearchItemImplementation(searchName, projectName,
+                    bestFragments.toArray(new String[bestFragments.size()]),
+                    "/job/" + projectName + "/" + buildNumber + "/", true));
+        }
+        return items;
+    }
+
+    /**
+     * Also finds builds that are sent but not yet searchable, through the real-time get of Solr.
+     */
+    @Override
+    public boolean findRunIndex(Run<?, ?> run) {
+        try {
+            updates.flush();
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put("id", (String) ID.getValue(run));
+            params.put("fl", FIELD_NAMES.get(ID));
+            JSONObject response = connection.get("get", params);
+            return response.optJSONObject("doc") != null && !response.optJSONObject("doc").isNullObject();
+        } catch (IOException e) {
+            LOGGER.warn("findRunIndex: " + e);
+        }
+        return false;
+    }
+
+    @Override
+    public void removeBuild(Run<?, ?> run) throws IOException {
+        updates.deleteByQuery(BUILD_ID + ":" + quote((String) ID.getValue(run)));
+    }
+
+    @Override
+    public void deleteJob(String jobName) throws IOException {
+        updates.deleteByQuery(JOB_NAME_EXACT + ":" + quote(jobName));
+    }
+
+    @Override
+    public void commit() throws IOException {
+        updates.commit();
+    }
+
+    @Override
+    public void cleanAllJob(ManagerProgress progress) {
+        Progress currentProgress = progress.beginCleanJob();
+        try {
+            updates.deleteByQuery("*:*");
+            updates.commit();
+            progress.setSuccessfullyCompleted();
+        } catch (IOException e) {
+            progress.completedWithErrors(e);
+        } finally {
+            currentProgress.setFinished();
+            progress.jobComplete();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import hudson.Extension;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A collection on a Solr server, configured with {@code solrUrl} and {@code solrCollection}.
+ */
+@Extension
+public class SolrSearchBackendProvider extends SearchBackendProvider {
+
+    public static final String ID = "SOLR";
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Solr";
+    }
+
+    @Override
+    public SearchBackend<?> create(Map<String, Object> config) throws IOException {
+        return SolrSearchBackend.create(config);
+    }
+}
@@ -0,0 +1,254 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Collects the documents and deletes for Solr and sends them in batches, so indexing a build doesn't wait for a
+ * request per document. A batch is sent when it gets larger than the batch size, by the thread that filled it, and
+ * otherwise after the flush interval by a background thread. The batches are sent in the order they were filled.
+ *
+ * The updates are made visible with {@code commitWithin}, a soft commit that Solr does at most once per interval,
+ * and only made durable by {@link #commit()}.
+ *
+ * A batch that could not be sent stays at the head of the queue. Until it is sent, every update and commit tries
+ * to send it again first and fails like the send, so the caller learns that Solr is not getting the updates. While
+ * Solr can't be reached the queue holds at most {@link #MAX_PENDING_BATCHES} batches, the updates beyond that are
+ * dropped and the index needs a rebuild once Solr is back. A batch that Solr rejects with a client error is dropped
+ * right away, it would be rejected again.
+ */
+class SolrUpdateQueue {
+    private static final Logger LOGGER = Logger.getLogger(SolrUpdateQueue.class);
+    static final int MAX_PENDING_BATCHES = 8;
+
+    private final SolrConnection connection;
+    private final int maxBatchChars;
+    private final long maxPendingChars;
+    private final Map<String, String> updateParams;
+    private final Object sendLock = new Object();
+    private final ScheduledExecutorService flusher;
+
+    private List<String> pending = new ArrayList<>();
+    private int pendingChars;
+    // the last send failed, its batch is still pending
+    private boolean failed;
+    // updates dropped since the last successful send
+    private int dropped;
+
+    /**
+     * @param maxBatchChars the size of the JSON of a batch that is sent right away
+     * @param flushIntervalMillis how long updates wait for a full batch, 0 sends them only when the batch is full
+     *                            or flushed
+     * @param commitWithinMillis how soon Solr makes the updates searchable
+     */
+    SolrUpdateQueue(SolrConnection connection, int maxBatchChars, long flushIntervalMillis, int commitWithinMillis) {
+        this.connection = connection;
+        this.maxBatchChars = maxBatchChars;
+        maxPendingChars = (long) maxBatchChars * MAX_PENDING_BATCHES;
+        updateParams = Collections.singletonMap("commitWithin", String.valueOf(commitWithinMillis));
+        if (flushIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Solr updates");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        LOGGER.warn("Could not send updates to Solr", e);
+                    }
+                }
+            }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Adds the document, or replaces the document with the same id.
+     *
+     * @param doc the fields, with String, Number or Collection values
+     */
+    void add(Map<String, Object> doc) throws IOException {
+        StringBuilder command = new StringBuilder("\"add\":{\"doc\":");
+        appendObject(command, doc);
+        command.append('}');
+        enqueue(command.toString());
+    }
+
+    void deleteByQuery(String query) throws IOException {
+        StringBuilder command = new StringBuilder("\"delete\":{\"query\":");
+        appendString(command, query);
+        command.append('}');
+        enqueue(command.toString());
+    }
+
+    private void enqueue(String command) throws IOException {
+        boolean full;
+        synchronized (this) {
+            if (failed && pendingChars + command.length() > maxPendingChars) {
+                if (dropped++ == 0) {
+                    LOGGER.warn("Solr can't be reached and " + pending.size()
+                            + " updates are pending, dropping the new ones until it is back");
+                }
+            } else {
+                pending.add(command);
+                pendingChars += command.length();
+            }
+            full = pendingChars >= maxBatchChars || failed;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the pending updates. If that fails they stay pending, ahead of the updates queued since, unless Solr
+     * rejected them.
+     */
+    void flush() throws IOException {
+        // taking and sending the batch under one lock keeps the batches in order
+        synchronized (sendLock) {
+            List<String> batch;
+            int batchChars;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                batchChars = pendingChars;
+                pending = new ArrayList<>();
+                pendingChars = 0;
+            }
+            boolean retry = true;
+            try {
+                connection.update(batch, updateParams);
+                retry = false;
+            } catch (SolrConnection.StatusException e) {
+                if (e.isPermanent()) {
+                    retry = false;
+                    LOGGER.warn("Solr rejected a batch of " + batch.size() + " updates, they are dropped");
+                }
+                throw e;
+            } finally {
+                synchronized (this) {
+                    failed = retry;
+                    if (retry) {
+                        List<String> requeued = new ArrayList<>(batch);
+                        requeued.addAll(pending);
+                        pending = requeued;
+                        pendingChars += batchChars;
+                    } else if (dropped > 0) {
+                        LOGGER.warn("Dropped " + dropped + " updates while Solr couldn't be reached, rebuild the"
+                                + " index to add them");
+                        dropped = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the pending updates and makes everything durable with a hard commit.
+     */
+    void commit() throws IOException {
+        flush();
+        synchronized (sendLock) {
+            connection.update(Collections.<String>emptyList(), Collections.singletonMap("commit", "true"));
+        }
+    }
+
+    /**
+     * Stops the background flushes and sends the pending updates.
+     */
+    void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+    }
+
+    private static void appendObject(StringBuilder json, Map<String, Object> doc) {
+        json.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> field : doc.entrySet()) {
+            if (field.getValue() == null) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, field.getKey());
+            json.append(':');
+            appendValue(json, field.getValue());
+        }
+        json.append('}');
+    }
+
+    private static void appendValue(StringBuilder json, Object value) {
+        if (value instanceof Number) {
+            json.append(value);
+        } else if (value instanceof Collection) {
+            json.append('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendValue(json, element);
+            }
+            json.append(']');
+        } else {
+            appendString(json, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,60 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that refills at a fixed rate per second and holds at most one
+ * second worth of tokens. A rate of zero or less means unlimited.
+ *
+ * Requests larger than the bucket are allowed to put it into debt, so a single
+ * huge log does not block forever; the following callers pay for it instead.
+ */
+public class TokenBucket {
+
+    private long ratePerSecond;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(long ratePerSecond) {
+        setRate(ratePerSecond);
+    }
+
+    public synchronized long getRate() {
+        return ratePerSecond;
+    }
+
+    public synchronized void setRate(long ratePerSecond) {
+        refill();
+        this.ratePerSecond = ratePerSecond;
+        if (ratePerSecond <= 0) {
+            tokens = 0;
+        } else {
+            tokens = Math.min(tokens, ratePerSecond);
+        }
+        notifyAll();
+    }
+
+    public synchronized void acquire(long permits) throws InterruptedException {
+        while (true) {
+            if (ratePerSecond <= 0) {
+                return;
+            }
+            refill();
+            if (tokens >= 0) {
+                tokens -= permits;
+                return;
+            }
+            long waitMillis = (long) Math.ceil(-tokens * TimeUnit.SECONDS.toMillis(1) / ratePerSecond);
+            wait(Math.max(1, waitMillis));
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (ratePerSecond > 0) {
+            double refilled = (now - lastRefill) * (double) ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            tokens = Math.min(ratePerSecond, tokens + refilled);
+        }
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,110 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Counts the builds per exception class of the matching documents, from the doc values of
+ * {@link ExceptionExtractor#CLASS_FIELD}. A matching console chunk counts for its build, every build is counted
+ * once. Counts are kept per ordinal within a segment and only resolved to class names when the segment is done.
+ */
+class TopExceptionsCollector extends SimpleCollector {
+
+    private static final Comparator<Map.Entry<String, Long>> BY_COUNT = new Comparator<Map.Entry<String, Long>>() {
+        @Override
+        public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+            int byCount = o2.getValue().compareTo(o1.getValue());
+            return byCount != 0 ? byCount : o1.getKey().compareTo(o2.getKey());
+        }
+    };
+
+    private final ParentBitSets parentBitSets;
+    private final Map<String, Long> counts = new HashMap<>();
+
+    private LeafReaderContext leaf;
+    private SortedSetDocValues exceptions;
+    private FixedBitSet countedBuilds;
+    private long[] ordCounts;
+
+    TopExceptionsCollector(ParentBitSets parentBitSets) {
+        this.parentBitSets = parentBitSets;
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        resolveOrds();
+        leaf = context;
+        exceptions = context.reader().getSortedSetDocValues(ExceptionExtractor.CLASS_FIELD);
+        if (exceptions != null) {
+            countedBuilds = new FixedBitSet(context.reader().maxDoc());
+            ordCounts = new long[(int) exceptions.getValueCount()];
+        }
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (exceptions == null) {
+            return;
+        }
+        int build = parentBitSets.getParent(leaf, doc);
+        if (build < 0 || countedBuilds.getAndSet(build)) {
+            return;
+        }
+        exceptions.setDocument(build);
+        long ord;
+        while ((ord = exceptions.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+            ordCounts[(int) ord]++;
+        }
+    }
+
+    private void resolveOrds() {
+        if (ordCounts == null) {
+            return;
+        }
+        for (int ord = 0; ord < ordCounts.length; ord++) {
+            if (ordCounts[ord] > 0) {
+                String className = exceptions.lookupOrd(ord).utf8ToString();
+                Long count = counts.get(className);
+                counts.put(className, (count != null ? count : 0) + ordCounts[ord]);
+            }
+        }
+        ordCounts = null;
+    }
+
+    @Override
+    public boolean needsScores() {
+        return false;
+    }
+
+    /**
+     * @return the exception classes with the most builds first
+     */
+    Map<String, Long> getTop(int limit) {
+        resolveOrds();
+        return top(counts, limit);
+    }
+
+    /**
+     * @return the {@code limit} largest counts, the largest first
+     */
+    static Map<String, Long> top(Map<String, Long> counts, int limit) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        Collections.sort(entries, BY_COUNT);
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+}
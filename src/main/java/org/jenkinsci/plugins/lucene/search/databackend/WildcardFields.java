@@ -0,0 +1,166 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.miscellaneous.LengthFilter;
+import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
+import org.apache.lucene.analysis.reverse.ReverseStringFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Shadow fields of the console that make wildcard queries cheap. A leading wildcard like {@code *Exception} has
+ * to enumerate the whole term dictionary of the console field; it becomes a prefix query on the reversed tokens
+ * instead. An infix wildcard like {@code *Pointer*} becomes a single term lookup on the substrings of the tokens.
+ * Substrings are only indexed for tokens up to {@link #MAX_SUBSTRING_TOKEN_LENGTH} chars, the longer tokens, like
+ * base64 blobs, are indexed once more on their own and an infix wildcard scans their few terms as well.
+ */
+class WildcardFields {
+
+    static final String REVERSED = "c_rev";
+    static final String SUBSTRINGS = "c_sub";
+    static final String LONG_TOKENS = "c_long";
+
+    static final int MIN_SUBSTRING = 3;
+    static final int MAX_SUBSTRING = 16;
+    // substrings of longer tokens, like hashes, are not indexed
+    static final int MAX_SUBSTRING_TOKEN_LENGTH = 64;
+
+    private WildcardFields() {
+    }
+
+    static boolean isShadowField(String field) {
+        return REVERSED.equals(field) || SUBSTRINGS.equals(field) || LONG_TOKENS.equals(field);
+    }
+
+    static void addTo(Document doc, String console) {
+        doc.add(new org.apache.lucene.document.Field(REVERSED, console, ShadowFieldTypes.DOCS_ONLY));
+        doc.add(new org.apache.lucene.document.Field(SUBSTRINGS, console, ShadowFieldTypes.DOCS_ONLY));
+        doc.add(new org.apache.lucene.document.Field(LONG_TOKENS, console, ShadowFieldTypes.DOCS_ONLY));
+    }
+
+    /**
+     * Tokenizes the shadow fields like the console, with the reversing, substring or length filters on top.
+     */
+    static Analyzer wrap(final Analyzer analyzer) {
+        return new AnalyzerWrapper(Analyzer.PER_FIELD_REUSE_STRATEGY) {
+            @Override
+            protected Analyzer getWrappedAnalyzer(String fieldName) {
+                return analyzer;
+            }
+
+            @Override
+            protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+                if (REVERSED.equals(fieldName)) {
+                    return new TokenStreamComponents(components.getTokenizer(),
+                            new ReverseStringFilter(components.getTokenStream()));
+                } else if (SUBSTRINGS.equals(fieldName)) {
+                    TokenStream substrings = new EdgeNGramTokenFilter(new SuffixFilter(components.getTokenStream()),
+                            MIN_SUBSTRING, MAX_SUBSTRING);
+                    return new TokenStreamComponents(components.getTokenizer(), substrings);
+                } else if (LONG_TOKENS.equals(fieldName)) {
+                    return new TokenStreamComponents(components.getTokenizer(), new LengthFilter(
+                            components.getTokenStream(), MAX_SUBSTRING_TOKEN_LENGTH + 1, Integer.MAX_VALUE));
+                }
+                return components;
+            }
+        };
+    }
+
+    /**
+     * @param termStr a wildcard term on the console field, as passed to the query parser
+     * @return an equivalent query on a shadow field, or null if the wildcard can't be routed
+     */
+    static Query rewrite(String termStr) {
+        if (termStr.isEmpty() || termStr.indexOf('\\') >= 0 || !isWildcard(termStr.charAt(0))) {
+            return null;
+        }
+        String infix = termStr.length() > 2 && termStr.startsWith("*") && termStr.endsWith("*")
+                ? termStr.substring(1, termStr.length() - 1) : null;
+        if (infix != null && !containsWildcard(infix)) {
+            if (infix.length() >= MIN_SUBSTRING && infix.length() <= MAX_SUBSTRING) {
+                return new BooleanQuery.Builder()
+                        .add(new TermQuery(new Term(SUBSTRINGS, infix)), BooleanClause.Occur.SHOULD)
+                        .add(new WildcardQuery(new Term(LONG_TOKENS, termStr)), BooleanClause.Occur.SHOULD)
+                        .build();
+            }
+            return null;
+        }
+        String reversed = new StringBuilder(termStr).reverse().toString();
+        if (isWildcard(reversed.charAt(0))) {
+            // wildcards at both ends, the reversed query would enumerate all terms again
+            return null;
+        }
+        if (reversed.endsWith("*") && !containsWildcard(reversed.substring(0, reversed.length() - 1))) {
+            return new PrefixQuery(new Term(REVERSED, reversed.substring(0, reversed.length() - 1)));
+        }
+        return new WildcardQuery(new Term(REVERSED, reversed));
+    }
+
+    private static boolean isWildcard(char c) {
+        return c == '*' || c == '?';
+    }
+
+    private static boolean containsWildcard(String s) {
+        return s.indexOf('*') >= 0 || s.indexOf('?') >= 0;
+    }
+
+    /**
+     * Follows every token with its suffixes of at least {@link #MIN_SUBSTRING} characters, at the same position.
+     */
+    private static final class SuffixFilter extends TokenFilter {
+        private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+        private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+
+        private char[] token = new char[MAX_SUBSTRING_TOKEN_LENGTH];
+        private int length;
+        private int nextStart;
+        private State state;
+
+        SuffixFilter(TokenStream input) {
+            super(input);
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            if (state != null && nextStart <= length - MIN_SUBSTRING) {
+                restoreState(state);
+                termAtt.copyBuffer(token, nextStart, length - nextStart);
+                posIncAtt.setPositionIncrement(0);
+                nextStart++;
+                return true;
+            }
+            state = null;
+            if (!input.incrementToken()) {
+                return false;
+            }
+            length = termAtt.length();
+            if (length > MIN_SUBSTRING && length <= MAX_SUBSTRING_TOKEN_LENGTH) {
+                token = ArrayUtil.grow(token, length);
+                System.arraycopy(termAtt.buffer(), 0, token, 0, length);
+                nextStart = 1;
+                state = captureState();
+            }
+            return true;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            state = null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.jenkinsci.plugins.lucene.search.management;
 import hudson.Extension;
+import hudson.init.Terminator;
 import hudson.model.Job;
 import hudson.model.ManagementLink;
 import jenkins.model.Jenkins;
@@ -7,6 +8,7 @@ import net.sf.json.JSONSerializer;
 import org.apache.log4j.Logger;
 import org.jenkinsci.plugins.lucene.search.config.SearchBackendConfiguration;
 import org.jenkinsci.plugins.lucene.search.databackend.ManagerProgress;
+import org.jenkinsci.plugins.lucene.search.databackend.RebuildThrottle;
 import org.jenkinsci.plugins.lucene.search.databackend.SearchBackend;
 import org.jenkinsci.plugins.lucene.search.databackend.SearchBackendManager;
 import org.kohsuke.stapler.QueryParameter;
@@ -19,17 +21,34 @@ import javax.servlet.ServletException;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 @Extension
 public class LuceneManager extends ManagementLink {
 
     private static final Logger LOGGER = Logger.getLogger(SearchBackend.class);
+    private static final double BYTES_PER_MB = 1024 * 1024;
+    private static final int DEFAULT_TOP_EXCEPTIONS = 20;
+    private static final long SHUTDOWN_WAIT_SECONDS = 30;
 
     @Inject
     private transient SearchBackendManager backendManager;
-    private ManagerProgress progress;
+    private volatile ManagerProgress progress;
     private int workers = 0;
 
+    // Rebuild and clean run here so that the Stapler request thread returns at once
+    private final transient ExecutorService backgroundWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Lucene Search Manager worker");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     @Override
     public String getDisplayName() {
         return "Lucene Search Manager";
@@ -46,7 +65,7 @@ public class LuceneManager extends ManagementLink {
     }
 
     @JavaScriptMethod
-    public JSReturnCollection rebuildDatabase(int workers, String jobNames, String overwrite) {
+    public JSReturnCollection rebuildDatabase(int workers, String jobNames, String overwrite, boolean throttled) {
         JSReturnCollection statement = verifyNotInProgress();
         this.workers = workers;
         if (this.workers <= 0) {
@@ -56,16 +75,27 @@ public class LuceneManager extends ManagementLink {
         }
 
         if (statement.code == 0) {
-            progress = new ManagerProgress();
-            Set<String> jobs = new HashSet(Arrays.asList(jobNames.split("\\s+")));
+            final ManagerProgress currentProgress = new ManagerProgress();
+            progress = currentProgress;
+            final Set<String> jobs = new HashSet(Arrays.asList(jobNames.split("\\s+")));
             jobs.removeAll(Collections.singleton(""));
             if (checkJobNames(jobs)) {
-                backendManager.rebuildDatabase(progress, this.workers, jobs, overwrite.equals("overwrite"));
-                statement.message = "Work completed successfully";
+                final int rebuildWorkers = this.workers;
+                final boolean overwriteIndex = overwrite.equals("overwrite");
+                final boolean throttledRebuild = throttled;
+                backgroundWorker.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        backendManager.rebuildDatabase(currentProgress, rebuildWorkers, jobs, overwriteIndex,
+                                throttledRebuild);
+                    }
+                });
+                statement.message = "Rebuild started";
                 statement.code = 0;
+                statement.running = true;
             } else {
-                progress.completedWithErrors(new Exception("The entered job names are invalid"));
-                progress.setFinished();
+                currentProgress.completedWithErrors(new Exception("The entered job names are invalid"));
+                currentProgress.setFinished();
             }
         }
         return statement;
@@ -84,7 +114,7 @@ public class LuceneManager extends ManagementLink {
 
     public void doPostRebuildDatabase(StaplerRequest req, StaplerResponse rsp, @QueryParameter int workers)
             throws IOException, ServletException {
-        writeStatus(rsp, rebuildDatabase(workers, "", "overwrite"));
+        writeStatus(rsp, rebuildDatabase(workers, "", "overwrite", false));
     }
 
     private JSReturnCollection verifyNotInProgress() {
@@ -101,19 +131,13 @@ public class LuceneManager extends ManagementLink {
     @JavaScriptMethod
     public JSReturnCollection abort() {
         JSReturnCollection statement = verifyNotInProgress();
-//        if (statement.code == 1) {
-//            statement.message = "Aborted";
-//            statement.code = 0;
-//            statement.running = false;
-//            statement.neverStarted = true;
-//            try {
-//                progress.assertNoErrors();
-//            } catch (Exception e) {
-//                progress.completedWithErrors(e);
-//                return statement;
-//            }
-//            progress.jobComplete();
-//        }
+        ManagerProgress currentProgress = progress;
+        if (statement.running) {
+            currentProgress.requestCancel();
+            statement.message = "Aborting, waiting for the current builds to finish";
+            statement.code = 0;
+            return statement;
+        }
         this.progress = null;
         return statement;
     }
@@ -122,17 +146,44 @@ public class LuceneManager extends ManagementLink {
     public JSReturnCollection clean() {
         JSReturnCollection statement = verifyNotInProgress();
         if (statement.code == 0) {
-            progress = new ManagerProgress();
-            backendManager.clean(progress);
-            statement.message = "Index cleaned successfully";
+            final ManagerProgress currentProgress = new ManagerProgress();
+            progress = currentProgress;
+            backgroundWorker.submit(new Runnable() {
+                @Override
+                public void run() {
+                    backendManager.clean(currentProgress);
+                }
+            });
+            statement.message = "Cleaning index";
             statement.code = 0;
+            statement.running = true;
         }
         return statement;
     }
 
+    /**
+     * Changes the limits of the throttled rebuild mode, also for a rebuild that is already running. Zero means
+     * unlimited.
+     */
+    @JavaScriptMethod
+    public JSReturnCollection setThrottle(double logMBPerSecond, int buildsPerSecond, double mergeMBPerSecond) {
+        backendManager.getRebuildThrottle().setLimits((long) (Math.max(0, logMBPerSecond) * BYTES_PER_MB),
+                Math.max(0, buildsPerSecond), Math.max(0, mergeMBPerSecond));
+        JSReturnCollection statement = getStatus();
+        statement.message = "Rebuild limits updated";
+        return statement;
+    }
+
     @JavaScriptMethod
     public JSReturnCollection getStatus() {
         JSReturnCollection statement = new JSReturnCollection();
+        RebuildThrottle throttle = backendManager.getRebuildThrottle();
+        statement.throttled = throttle.isActive();
+        statement.logMBPerSecond = throttle.getBytesPerSecond() / BYTES_PER_MB;
+        statement.buildsPerSecond = throttle.getBuildsPerSecond();
+        statement.mergeMBPerSecond = throttle.getMergeMBPerSecond();
+        statement.filteredTokens = backendManager.getFilteredTokenCounts();
+        ManagerProgress progress = this.progress;
         if (progress != null) {
             statement.progress = progress;
             statement.workers = workers;
@@ -144,9 +195,12 @@ public class LuceneManager extends ManagementLink {
                     statement.message = progress.getReasonsAsString();
                     statement.code = 2;
                     break;
+                case CANCELLED:
+                    statement.message = "Aborted, builds indexed before the abort are kept";
+                    break;
                 case PROCESSING:
                     statement.running = true;
-                    statement.message = "processing";
+                    statement.message = progress.isCancelRequested() ? "aborting" : "processing";
                     break;
             }
         } else {
@@ -162,6 +216,32 @@ public class LuceneManager extends ManagementLink {
         writeStatus(rsp, status);
     }
 
+    /**
+     * The exception classes found in the most builds as JSON, like {@code {"java.io.IOException":12}}. With
+     * {@code q} only the builds matching the query are counted.
+     */
+    public void doTopExceptions(StaplerRequest req, StaplerResponse rsp, @QueryParameter String q,
+            @QueryParameter int limit) throws IOException, ServletException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        Map<String, Long> top = backendManager.getTopExceptions(q, limit > 0 ? limit : DEFAULT_TOP_EXCEPTIONS);
+        Writer writer = rsp.getWriter();
+        JSONSerializer.toJSON(top).write(writer);
+        rsp.setStatus(200);
+        writer.flush();
+    }
+
+    /**
+     * How much of each index file is in the page cache as JSON, like
+     * {@code {"_0.tim":{"bytes":1048576,"residentBytes":1048576}}}.
+     */
+    public void doResidency(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        Writer writer = rsp.getWriter();
+        JSONSerializer.toJSON(backendManager.getResidency()).write(writer);
+        rsp.setStatus(200);
+        writer.flush();
+    }
+
     public void writeStatus(StaplerResponse rsp, JSReturnCollection status) throws IOException {
         Writer compressedWriter = rsp.getWriter();
         JSONSerializer.toJSON(status).write(compressedWriter);
@@ -169,6 +249,22 @@ public class LuceneManager extends ManagementLink {
         compressedWriter.flush();
     }
 
+    /**
+     * Asks a running rebuild or clean to stop and waits for it, so the index isn't closed under it when Jenkins
+     * stops.
+     */
+    @Terminator
+    public void shutdown() throws InterruptedException {
+        ManagerProgress currentProgress = progress;
+        if (currentProgress != null) {
+            currentProgress.requestCancel();
+        }
+        backgroundWorker.shutdown();
+        if (!backgroundWorker.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+            LOGGER.warn("The Lucene Search Manager worker did not stop within " + SHUTDOWN_WAIT_SECONDS + " seconds");
+        }
+    }
+
     public static class JSReturnCollection {
         public int code;
         public String message = "";
@@ -176,5 +272,10 @@ public class LuceneManager extends ManagementLink {
         public ManagerProgress progress;
         public int workers;
         public boolean neverStarted;
+        public boolean throttled;
+        public double logMBPerSecond;
+        public long buildsPerSecond;
+        public double mergeMBPerSecond;
+        public Map<String, Long> filteredTokens;
     }
 }
@@ -2,10 +2,22 @@ function rebuildDatabase() {
 	var workers = document.getElementById("txtWorkers").value;
 	var jobs = document.getElementById("txtJob").value;
 	var overwrite = document.getElementById("selectOverwrite").value;
+	var throttled = document.getElementById("chkThrottled").checked;
 	if (workers < 1) {
 		return;
 	}
-	luceneSearchManager.rebuildDatabase(workers, jobs, overwrite, function(t) {
+	luceneSearchManager.rebuildDatabase(workers, jobs, overwrite, throttled, function(t) {
+		updateStatusFromResponse(t.responseObject());
+	});
+}
+
+var throttleLoaded = false;
+
+function setThrottle() {
+	var logMBPerSecond = document.getElementById("txtLogMBPerSecond").value;
+	var buildsPerSecond = document.getElementById("txtBuildsPerSecond").value;
+	var mergeMBPerSecond = document.getElementById("txtMergeMBPerSecond").value;
+	luceneSearchManager.setThrottle(logMBPerSecond, buildsPerSecond, mergeMBPerSecond, function(t) {
 		updateStatusFromResponse(t.responseObject());
 	});
 }
@@ -52,6 +64,22 @@ function updateStatusFromResponse(statement) {
             : "")
     document.getElementById("lblWorkers").style.display = ((statement.running) ? "none"
             : "")
+    document.getElementById("chkThrottled").style.display = ((statement.running) ? "none"
+            : "")
+    document.getElementById("lblThrottled").style.display = ((statement.running) ? "none"
+            : "")
+	if (!throttleLoaded) {
+		document.getElementById("txtLogMBPerSecond").value = statement.logMBPerSecond;
+		document.getElementById("txtBuildsPerSecond").value = statement.buildsPerSecond;
+		document.getElementById("txtMergeMBPerSecond").value = statement.mergeMBPerSecond;
+		throttleLoaded = true;
+	}
+	var filtered = "";
+	for (var field in statement.filteredTokens) {
+		filtered += (filtered ? ", " : "") + field + ": " + statement.filteredTokens[field];
+	}
+	document.getElementById("filteredTokens").innerHTML = filtered ? "Junk tokens filtered since startup, "
+			+ filtered : "";
 	if (statement.progress) {
 		var progress = statement.progress;
 		document.getElementById("currentWorkers").innerHTML = statement.workers;
@@ -38,17 +38,23 @@ function load(hits) {
 
         a.appendChild(name);
         list.appendChild(a);
+        if (hit.projectName) {
+            list.setAttribute("data-job", hit.projectName);
+        }
 
-        var div = document.createElement("div");
-        div.className = "collapsible";
         if (hit.showConsole) {
             for (var j = 0; j < hit.bestFragments.length; j++) {
-                div.innerHTML = hit.bestFragments[j];
+                var div = document.createElement("div");
+                div.className = "collapsible";
+                var line = (hit.fragmentLines && j < hit.fragmentLines.length)
+                        ? "<span class=\"line\">line " + hit.fragmentLines[j] + ":</span> " : "";
+                div.innerHTML = line + hit.bestFragments[j];
                 list.appendChild(div);
             }
         }
         results.appendChild(list);
     }
+    addJobTotals(results);
     search.isFirstPage(function(t) {
         document.getElementById("btnPrev").style.display = (t.responseObject()) ? "none" : "";
     })
@@ -56,4 +62,82 @@ function load(hits) {
         document.getElementById("btnNext").style.display = (t.responseObject()) ? "none" : "";
     })
     window.scrollTo(0, 0);
+}
+
+function addJobTotals(results) {
+    var query = new URLSearchParams(window.location.search).get("q") || "";
+    search.getJobTotals(function(t) {
+        var totals = t.responseObject() || {};
+        var shown = {};
+        var last = {};
+        for (var i = 0; i < results.children.length; i++) {
+            var job = results.children[i].getAttribute("data-job");
+            if (job) {
+                shown[job] = (shown[job] || 0) + 1;
+                last[job] = results.children[i];
+            }
+        }
+        for (var job in last) {
+            if (totals[job] > shown[job]) {
+                var div = document.createElement("div");
+                var a = document.createElement("a");
+                a.href = "?q=" + encodeURIComponent(job + " " + query);
+                a.textContent = (totals[job] - shown[job]) + " more matching builds of " + job;
+                div.appendChild(a);
+                last[job].appendChild(div);
+            }
+        }
+    });
+}
+
+function setupCollapse() {
+    var params = new URLSearchParams(window.location.search);
+    var link = document.getElementById("collapse");
+    var query = "?q=" + encodeURIComponent(params.get("q") || "");
+    if (params.get("collapse")) {
+        link.href = query;
+        link.textContent = "Show all hits";
+    } else {
+        link.href = query + "&collapse=3";
+        link.textContent = "Group by job";
+    }
+}
+
+function loadFacets() {
+    var query = new URLSearchParams(window.location.search).get("q") || "";
+    search.getFacets(function(t) {
+        var facets = t.responseObject();
+        var container = document.getElementById("facets");
+        addFacet(container, "Jobs", facets.jobs, function(job) {
+            return job + " " + query;
+        });
+        addFacet(container, "Results", facets.results, function(result) {
+            return query + " result:" + result;
+        });
+        addFacet(container, "Days", facets.days, function(day) {
+            return query + " starttime:[" + day + " TO " + day + "]";
+        });
+    });
+}
+
+function addFacet(container, title, counts, refine) {
+    var keys = Object.keys(counts || {});
+    if (keys.length == 0) {
+        return;
+    }
+    var h = document.createElement("h3");
+    h.textContent = title;
+    container.appendChild(h);
+    var list = document.createElement("ul");
+    list.className = "facet";
+    for (var i = 0; i < keys.length; i++) {
+        var item = document.createElement("li");
+        var a = document.createElement("a");
+        a.href = "?q=" + encodeURIComponent(refine(keys[i]));
+        a.textContent = keys[i];
+        item.appendChild(a);
+        item.appendChild(document.createTextNode(" (" + counts[keys[i]] + ")"));
+        list.appendChild(item);
+    }
+    container.appendChild(list);
 }
\ No newline at end of file
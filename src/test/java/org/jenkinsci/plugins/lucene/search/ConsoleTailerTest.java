@@ -0,0 +1,203 @@
+package org.jenkinsci.plugins.lucene.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import hudson.model.queue.QueueTaskFuture;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.lucene.search.databackend.SearchBackend;
+import org.jenkinsci.plugins.lucene.search.databackend.SearchBackendManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+public class ConsoleTailerTest {
+    @Rule
+    public JenkinsRule rule = new JenkinsRule();
+
+    private static class StoredChunk {
+        final int number;
+        final int firstLine;
+        final String text;
+
+        StoredChunk(int number, int firstLine, String text) {
+            this.number = number;
+            this.firstLine = firstLine;
+            this.text = text;
+        }
+    }
+
+    private static class RecordingManager extends SearchBackendManager {
+        final List<StoredChunk> chunks = Collections.synchronizedList(new ArrayList<StoredChunk>());
+
+        @Override
+        public boolean hasCapability(SearchBackend.Capability capability) {
+            return true;
+        }
+
+        @Override
+        public void storeRunningBuildChunk(Run<?, ?> run, int chunkNumber, int firstLine, String console) {
+            chunks.add(new StoredChunk(chunkNumber, firstLine, console));
+        }
+    }
+
+    /**
+     * Writes the given outputs one at a time, waiting for the test to let it go on after each one.
+     */
+    private static class SteppedBuilder extends TestBuilder {
+        final Semaphore written = new Semaphore(0);
+        final Semaphore proceed = new Semaphore(0);
+        private final String[] outputs;
+
+        SteppedBuilder(String... outputs) {
+            this.outputs = outputs;
+        }
+
+        @Override
+        public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                throws InterruptedException {
+            for (String output : outputs) {
+                listener.getLogger().print(output);
+                listener.getLogger().flush();
+                written.release();
+                proceed.acquire();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Writes the text in the charset of the build in two steps, the first one ends within the bytes of a char.
+     */
+    private static class SplitCharBuilder extends TestBuilder {
+        final Semaphore written = new Semaphore(0);
+        final Semaphore proceed = new Semaphore(0);
+        private final String before;
+        private final String after;
+
+        SplitCharBuilder(String before, String after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                throws InterruptedException, IOException {
+            Charset charset = build.getCharset();
+            byte[] rest = after.getBytes(charset);
+            listener.getLogger().write(before.getBytes(charset));
+            listener.getLogger().write(rest, 0, 1);
+            listener.getLogger().flush();
+            written.release();
+            proceed.acquire();
+            listener.getLogger().write(rest, 1, rest.length - 1);
+            listener.getLogger().flush();
+            written.release();
+            proceed.acquire();
+            return true;
+        }
+    }
+
+    private static String lines(String prefix, int count) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append(prefix).append(' ').append(i).append(' ').append(StringUtils.repeat("x", 70)).append('\n');
+        }
+        return lines.toString();
+    }
+
+    @Test(timeout = 30000)
+    public void reindexesOnlyTheGrowingChunkOfATrackedRun() throws Exception {
+        FreeStyleProject project = rule.createFreeStyleProject("project");
+        SteppedBuilder builder = new SteppedBuilder("first output\n", lines("more", 1000), "after untrack\n");
+        project.getBuildersList().add(builder);
+        RecordingManager manager = new RecordingManager();
+        ConsoleTailer tailer = new ConsoleTailer();
+        tailer.searchBackendManager = manager;
+
+        QueueTaskFuture<FreeStyleBuild> future = project.scheduleBuild2(0);
+        FreeStyleBuild build = future.waitForStart();
+        builder.written.acquire();
+        tailer.doRun();
+        assertTrue("untracked runs are not tailed", manager.chunks.isEmpty());
+
+        tailer.track(build);
+        tailer.doRun();
+        assertEquals(1, manager.chunks.size());
+        assertEquals(0, manager.chunks.get(0).number);
+        assertEquals(1, manager.chunks.get(0).firstLine);
+        assertTrue(manager.chunks.get(0).text.endsWith("first output\n"));
+
+        tailer.doRun();
+        assertEquals("nothing new was written", 1, manager.chunks.size());
+
+        builder.proceed.release();
+        builder.written.acquire();
+        tailer.doRun();
+        // the growing chunk is stored again from its start, then the chunks that were closed and the new growing one
+        List<StoredChunk> stored = manager.chunks.subList(1, manager.chunks.size());
+        assertTrue(stored.size() >= 3);
+        int expectedFirstLine = 1;
+        for (int i = 0; i < stored.size(); i++) {
+            StoredChunk chunk = stored.get(i);
+            assertEquals(i, chunk.number);
+            assertEquals(expectedFirstLine, chunk.firstLine);
+            assertTrue(chunk.text.length() <= ConsoleTailer.CHUNK_SIZE);
+            expectedFirstLine += StringUtils.countMatches(chunk.text, "\n");
+        }
+        assertTrue(stored.get(0).text.contains("first output\nmore 0 "));
+        assertTrue(stored.get(stored.size() - 1).text.endsWith("more 999 " + StringUtils.repeat("x", 70) + "\n"));
+
+        tailer.untrack(build);
+        int storedBeforeUntrack = manager.chunks.size();
+        builder.proceed.release();
+        builder.written.acquire();
+        tailer.doRun();
+        assertEquals(storedBeforeUntrack, manager.chunks.size());
+
+        builder.proceed.release();
+        rule.assertBuildStatusSuccess(future);
+    }
+
+    @Test(timeout = 30000)
+    public void charCutOffByATailIsDecodedWithTheNextOne() throws Exception {
+        FreeStyleProject project = rule.createFreeStyleProject("project");
+        SplitCharBuilder builder = new SplitCharBuilder("before ", "\u00fc after\n");
+        project.getBuildersList().add(builder);
+        RecordingManager manager = new RecordingManager();
+        ConsoleTailer tailer = new ConsoleTailer();
+        tailer.searchBackendManager = manager;
+
+        QueueTaskFuture<FreeStyleBuild> future = project.scheduleBuild2(0);
+        FreeStyleBuild build = future.waitForStart();
+        tailer.track(build);
+        builder.written.acquire();
+        tailer.doRun();
+        // not decoded as a broken char
+        assertFalse(manager.chunks.get(manager.chunks.size() - 1).text.contains("\ufffd"));
+
+        builder.proceed.release();
+        builder.written.acquire();
+        tailer.doRun();
+        assertTrue(manager.chunks.get(manager.chunks.size() - 1).text.endsWith("before \u00fc after\n"));
+
+        builder.proceed.release();
+        rule.assertBuildStatusSuccess(future);
+    }
+}
@@ -0,0 +1,89 @@
+package org.jenkinsci.plugins.lucene.search.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.jenkinsci.plugins.lucene.search.databackend.CaseSensitiveAnalyzer;
+import org.jenkinsci.plugins.lucene.search.databackend.LogAnalyzer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the analyzers on the console logs in the benchmark resources. Run with
+ * {@code java -cp <test classpath> org.jenkinsci.plugins.lucene.search.benchmark.AnalyzerBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+    @Param({ "standard", "log" })
+    public String analyzerType;
+
+    @Param({ "maven.log", "gradle.log", "shell.log" })
+    public String sample;
+
+    private Analyzer analyzer;
+    private String console;
+
+    @Setup
+    public void setup() throws IOException {
+        analyzer = "log".equals(analyzerType) ? LogAnalyzer.forIndexing() : new CaseSensitiveAnalyzer();
+        console = readSample(sample);
+    }
+
+    @TearDown
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) throws IOException {
+        try (TokenStream stream = analyzer.tokenStream("c", console)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                blackhole.consume(term.length());
+            }
+            stream.end();
+        }
+    }
+
+    static String readSample(String name) throws IOException {
+        InputStream in = AnalyzerBenchmark.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing benchmark sample " + name);
+        }
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AnalyzerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
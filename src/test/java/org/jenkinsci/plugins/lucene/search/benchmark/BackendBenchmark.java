@@ -0,0 +1,179 @@
+package org.jenkinsci.plugins.lucene.search.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
+import org.apache.lucene.search.highlight.QueryTermScorer;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.jenkinsci.plugins.lucene.search.Field;
+import org.jenkinsci.plugins.lucene.search.FreeTextSearchItemImplementation;
+import org.jenkinsci.plugins.lucene.search.databackend.CaseSensitiveAnalyzer;
+import org.jenkinsci.plugins.lucene.search.databackend.LuceneSearchBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the hot paths of {@link LuceneSearchBackend} on a {@link SyntheticCorpus}, without Jenkins: parsing a
+ * query, searching the build fields and the consoles, highlighting a chunk, tokenizing a console, storing one build
+ * and storing all of them into an empty index. Run with {@code mvn -Pbenchmark test -Dbenchmark=BackendBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BackendBenchmark {
+    private static final String QUERY = "j:job-3 result:failure c:\"connection refused\"";
+    private static final String METADATA_QUERY = "j:job-3 result:failure";
+    private static final String CONSOLE_QUERY = "c:timeout";
+
+    @Param({ "200", "2000" })
+    public int builds;
+
+    @Param({ "100", "1000" })
+    public int consoleLines;
+
+    private SyntheticCorpus corpus;
+    private File indexPath;
+    private LuceneSearchBackend backend;
+    private Analyzer analyzer;
+    private Highlighter highlighter;
+    private String console;
+    private int stored;
+
+    /**
+     * An empty index for each invocation.
+     */
+    @State(Scope.Thread)
+    public static class EmptyIndex {
+        File indexPath;
+        LuceneSearchBackend backend;
+
+        @Setup(Level.Invocation)
+        public void setup() throws IOException {
+            indexPath = Files.createTempDirectory("lucene-rebuild").toFile();
+            backend = new LuceneSearchBackend(indexPath, Collections.<String, Object>emptyMap());
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            backend.close();
+            FileUtils.deleteDirectory(indexPath);
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException, ParseException {
+        corpus = new SyntheticCorpus(42, 20, consoleLines);
+        indexPath = Files.createTempDirectory("lucene-benchmark").toFile();
+        backend = new LuceneSearchBackend(indexPath, Collections.<String, Object>emptyMap());
+        storeAll(backend, corpus, builds);
+        analyzer = new CaseSensitiveAnalyzer();
+        highlighter = new Highlighter(new SimpleHTMLFormatter(), new QueryTermScorer(backend.parse(CONSOLE_QUERY)));
+        highlighter.setMaxDocCharsToAnalyze(Integer.MAX_VALUE);
+        console = corpus.console(0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        analyzer.close();
+        backend.close();
+        FileUtils.deleteDirectory(indexPath);
+    }
+
+    static void storeAll(LuceneSearchBackend backend, SyntheticCorpus corpus, int builds) throws IOException {
+        for (int i = 0; i < builds; i++) {
+            backend.storeBuild(corpus.build(i), corpus.console(i));
+        }
+    }
+
+    @Benchmark
+    public Query parse() throws ParseException {
+        return backend.parse(QUERY);
+    }
+
+    @Benchmark
+    public List<FreeTextSearchItemImplementation> searchMetadata() {
+        return backend.getHits(METADATA_QUERY, false);
+    }
+
+    /**
+     * Includes highlighting the best fragments of the hits.
+     */
+    @Benchmark
+    public List<FreeTextSearchItemImplementation> searchConsole() {
+        return backend.getHits(CONSOLE_QUERY, false);
+    }
+
+    @Benchmark
+    public String[] highlight() throws IOException, InvalidTokenOffsetsException {
+        return highlighter.getBestFragments(analyzer, Field.CONSOLE.fieldName, console, 5);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void analyze(Blackhole blackhole) throws IOException {
+        try (TokenStream stream = analyzer.tokenStream(Field.CONSOLE.fieldName, console)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                blackhole.consume(term.length());
+            }
+            stream.end();
+        }
+    }
+
+    /**
+     * Stores a new build number of an existing job, each one commits like a finished build does.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void storeBuild() throws IOException {
+        int build = builds + stored++;
+        Map<Field, Object> values = corpus.build(build);
+        backend.storeBuild(values, corpus.console(build));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public void rebuild(EmptyIndex empty) throws IOException {
+        storeAll(empty.backend, corpus, builds);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BackendBenchmark.class.getSimpleName()).build()).run();
+    }
+}
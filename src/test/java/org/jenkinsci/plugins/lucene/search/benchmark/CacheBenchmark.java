@@ -0,0 +1,173 @@
+package org.jenkinsci.plugins.lucene.search.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jenkinsci.plugins.lucene.search.databackend.LuceneSearchBackend;
+import org.jenkinsci.plugins.lucene.search.databackend.PageCacheResidency;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * Measures the query latency of an existing index cold and warm, without Jenkins and without root. Cold is the
+ * first search of a backend opened for it, so the index and its files are opened through new channels and
+ * mappings and no Lucene cache is filled. Warm is the same query again on a backend that has run it before. The
+ * page cache of the OS is left alone, the residency of the index files before the run tells how cold it was.
+ *
+ * Run with {@code java -cp <test classpath> org.jenkinsci.plugins.lucene.search.benchmark.CacheBenchmark
+ * <index dir> <queries file> <result json>}, one query per line. The layout of the index and how it is opened is
+ * set with {@code -Ddirectory=FS|MMAP|NIO}, {@code -Dpreload=true}, {@code -Dshards=n},
+ * {@code -DpartitionByMonth=true} and {@code -DconsoleAnalyzer=LOG}, the samples per query with
+ * {@code -Diterations=n}. Run it once per layout and compare the JSON files. The backend takes the write lock of
+ * the index, so run it on a copy of the index of a running Jenkins.
+ */
+public class CacheBenchmark {
+
+    private final File indexPath;
+    private final Map<String, Object> options;
+    private final int iterations;
+
+    CacheBenchmark(File indexPath, Map<String, Object> options, int iterations) {
+        this.indexPath = indexPath;
+        this.options = options;
+        this.iterations = iterations;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: CacheBenchmark <index dir> <queries file> <result json>");
+            System.exit(1);
+        }
+        List<String> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(new File(args[1]).toPath(), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                queries.add(line.trim());
+            }
+        }
+        CacheBenchmark benchmark = new CacheBenchmark(new File(args[0]), getOptions(), Integer.getInteger(
+                "iterations", 10));
+        Map<String, Object> result = benchmark.run(queries);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(args[2]), StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(result, writer);
+        }
+    }
+
+    static Map<String, Object> getOptions() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(LuceneSearchBackend.DIRECTORY, System.getProperty("directory", "FS"));
+        options.put(LuceneSearchBackend.PRELOAD, Boolean.getBoolean("preload"));
+        options.put(LuceneSearchBackend.SHARDS, Integer.getInteger("shards", 1));
+        options.put(LuceneSearchBackend.PARTITION_BY_MONTH, Boolean.getBoolean("partitionByMonth"));
+        options.put(LuceneSearchBackend.CONSOLE_ANALYZER, System.getProperty("consoleAnalyzer", "STANDARD"));
+        return options;
+    }
+
+    Map<String, Object> run(List<String> queries) throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("index", indexPath.getAbsolutePath());
+        result.put("options", new LinkedHashMap<>(options));
+        result.put("iterations", iterations);
+        addResidency(result, "Before");
+
+        List<Map<String, Object>> queryResults = new ArrayList<>();
+        for (String query : queries) {
+            Map<String, Object> queryResult = new LinkedHashMap<>();
+            queryResult.put("query", query);
+            queryResult.put("hits", runCold(query, queryResult));
+            runWarm(query, queryResult);
+            queryResults.add(queryResult);
+        }
+        result.put("queries", queryResults);
+        addResidency(result, "After");
+        return result;
+    }
+
+    /**
+     * @return the number of hits of the first page
+     */
+    private int runCold(String query, Map<String, Object> queryResult) throws IOException {
+        long[] open = new long[iterations];
+        long[] search = new long[iterations];
+        int hits = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            LuceneSearchBackend backend = new LuceneSearchBackend(indexPath, options);
+            try {
+                long opened = System.nanoTime();
+                hits = backend.getHits(query, false).size();
+                search[i] = System.nanoTime() - opened;
+                open[i] = opened - start;
+            } finally {
+                backend.close();
+            }
+        }
+        queryResult.put("coldOpen", summary(open));
+        queryResult.put("cold", summary(search));
+        return hits;
+    }
+
+    private void runWarm(String query, Map<String, Object> queryResult) throws IOException {
+        long[] search = new long[iterations];
+        LuceneSearchBackend backend = new LuceneSearchBackend(indexPath, options);
+        try {
+            backend.getHits(query, false);
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                backend.getHits(query, false);
+                search[i] = System.nanoTime() - start;
+            }
+        } finally {
+            backend.close();
+        }
+        queryResult.put("warm", summary(search));
+    }
+
+    /**
+     * Checks the files without opening the index, which would preload it with {@code -Dpreload=true}.
+     */
+    private void addResidency(Map<String, Object> result, String when) throws IOException {
+        long bytes = 0;
+        long residentBytes = 0;
+        for (PageCacheResidency.FileResidency file : PageCacheResidency.ofDirectory(indexPath).values()) {
+            bytes += file.bytes;
+            residentBytes += file.residentBytes;
+        }
+        result.put("indexBytes", bytes);
+        result.put("residentBytes" + when, residentBytes);
+    }
+
+    /**
+     * @return the percentiles of the samples in milliseconds
+     */
+    static Map<String, Double> summary(long[] nanos) {
+        if (nanos.length == 0) {
+            return Collections.emptyMap();
+        }
+        long[] sorted = Arrays.copyOf(nanos, nanos.length);
+        Arrays.sort(sorted);
+        Map<String, Double> summary = new LinkedHashMap<>();
+        summary.put("minMillis", sorted[0] / 1e6);
+        summary.put("p50Millis", percentile(sorted, 50) / 1e6);
+        summary.put("p90Millis", percentile(sorted, 90) / 1e6);
+        summary.put("p99Millis", percentile(sorted, 99) / 1e6);
+        summary.put("maxMillis", sorted[sorted.length - 1] / 1e6);
+        return summary;
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+}
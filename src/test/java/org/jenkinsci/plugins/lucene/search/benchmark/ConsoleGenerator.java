@@ -0,0 +1,327 @@
+package org.jenkinsci.plugins.lucene.search.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Makes up console logs that look like Maven and Gradle builds: module and task headers, downloads, compiler and
+ * test output, warnings and, for failed builds, stack traces with causes and the error summary of the tool. The
+ * free text is drawn from a vocabulary with Zipf distributed frequencies, a few build words being very common and
+ * a long tail of made up identifiers being rare, like in real logs. The same seed gives the same vocabulary.
+ *
+ * Run with {@code java -cp <test classpath> org.jenkinsci.plugins.lucene.search.benchmark.ConsoleGenerator
+ * <output dir> <builds>} to write the logs as files, with {@code -Dlines=n}, {@code -Dseed=n},
+ * {@code -DvocabularySize=n} and {@code -Dexponent=s}. Every seventh build fails.
+ */
+public class ConsoleGenerator {
+    public static final int DEFAULT_VOCABULARY_SIZE = 50000;
+    public static final double DEFAULT_EXPONENT = 1.0;
+
+    public enum Style {
+        MAVEN, GRADLE
+    }
+
+    // the most common words, in order of rank
+    private static final String[] COMMON_WORDS = { "the", "to", "from", "of", "in", "file", "files", "source",
+            "target", "classes", "build", "test", "tests", "resources", "module", "version", "plugin", "jar",
+            "compiling", "copying", "dependency", "dependencies", "artifact", "project", "using", "encoding", "UTF-8",
+            "skipping", "deprecated", "warning", "unchecked", "workspace", "checkout", "revision", "fetching", "remote",
+            "branch", "commit", "changes", "timeout", "connection", "refused", "retrying", "cache", "daemon",
+            "configuration", "task", "up-to-date", "executed", "report", "coverage", "generated", "packaging",
+            "installing", "deploying", "snapshot", "release", "repository", "checksum", "signature" };
+    private static final String[] SYLLABLES = { "ka", "lo", "mi", "ne", "ro", "su", "ta", "vi", "zo", "pre", "con",
+            "ser", "man", "fac", "tor", "ing", "ent", "ex", "im", "pl", "ry", "st", "gr", "ch", "qu", "ab", "ul" };
+    private static final String[][] EXCEPTIONS = {
+            { "java.lang.NullPointerException", null },
+            { "java.lang.IllegalStateException", "Unexpected state: %s" },
+            { "java.lang.IllegalArgumentException", "Invalid %s" },
+            { "java.net.SocketTimeoutException", "Read timed out" },
+            { "java.net.ConnectException", "Connection refused (Connection refused)" },
+            { "java.io.FileNotFoundException", "/workspace/%s/target/classes (No such file or directory)" },
+            { "java.lang.AssertionError", "expected:<%s> but was:<null>" },
+            { "java.util.ConcurrentModificationException", null } };
+    private static final String[] JDK_FRAMES = { "java.lang.Thread.run(Thread.java:748)",
+            "java.util.concurrent.ThreadPoolExecutor.runWorker(ThreadPoolExecutor.java:1149)",
+            "java.util.concurrent.ThreadPoolExecutor$Worker.run(ThreadPoolExecutor.java:624)",
+            "sun.reflect.NativeMethodAccessorImpl.invoke0(Native Method)",
+            "java.lang.reflect.Method.invoke(Method.java:498)",
+            "org.junit.runners.model.FrameworkMethod$1.runReflectiveCall(FrameworkMethod.java:50)" };
+    private static final String[] MAVEN_GOALS = { "maven-resources-plugin:2.6:resources (default-resources)",
+            "maven-compiler-plugin:3.1:compile (default-compile)",
+            "maven-resources-plugin:2.6:testResources (default-testResources)",
+            "maven-compiler-plugin:3.1:testCompile (default-testCompile)",
+            "maven-surefire-plugin:2.12.4:test (default-test)", "maven-jar-plugin:2.4:jar (default-jar)" };
+    private static final String[] GRADLE_TASKS = { "compileJava", "processResources", "classes", "jar",
+            "compileTestJava", "processTestResources", "testClasses", "test", "check", "assemble", "build" };
+
+    private final String[] vocabulary;
+    private final double[] cumulative;
+
+    public ConsoleGenerator(long seed) {
+        this(seed, DEFAULT_VOCABULARY_SIZE, DEFAULT_EXPONENT);
+    }
+
+    /**
+     * @param exponent how fast the frequencies fall with the rank, around 1 for natural language
+     */
+    public ConsoleGenerator(long seed, int vocabularySize, double exponent) {
+        Random random = new Random(seed);
+        vocabulary = new String[Math.max(vocabularySize, COMMON_WORDS.length)];
+        System.arraycopy(COMMON_WORDS, 0, vocabulary, 0, COMMON_WORDS.length);
+        for (int i = COMMON_WORDS.length; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 2 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            vocabulary[i] = word.toString();
+        }
+        cumulative = new double[vocabulary.length];
+        double sum = 0;
+        for (int rank = 0; rank < vocabulary.length; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < cumulative.length; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    /**
+     * @return a word of the vocabulary, drawn by its frequency
+     */
+    public String word(Random random) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        return vocabulary[Math.min(rank < 0 ? -rank - 1 : rank, vocabulary.length - 1)];
+    }
+
+    /**
+     * @param lines the number of lines before the summary at the end
+     */
+    public String generate(Random random, Style style, int lines, boolean failed) {
+        Output out = new Output(lines);
+        if (style == Style.MAVEN) {
+            maven(random, out, failed);
+        } else {
+            gradle(random, out, failed);
+        }
+        return out.text.toString();
+    }
+
+    private void maven(Random random, Output out, boolean failed) {
+        out.line("[INFO] Scanning for projects...");
+        String module = "app";
+        String failingModule = null;
+        while (!out.isFull()) {
+            module = word(random) + "-" + word(random);
+            out.line("[INFO] ");
+            out.line("[INFO] ------------------------------------------------------------------------");
+            out.line("[INFO] Building " + module + " 1." + random.nextInt(20) + "-SNAPSHOT");
+            out.line("[INFO] ------------------------------------------------------------------------");
+            for (String goal : MAVEN_GOALS) {
+                if (out.isFull()) {
+                    break;
+                }
+                out.line("[INFO] ");
+                out.line("[INFO] --- " + goal + " @ " + module + " ---");
+                if (random.nextInt(4) == 0) {
+                    download(random, out, "Downloading from central: https://repo.maven.apache.org/maven2/");
+                }
+                if (goal.contains(":compile") || goal.contains(":testCompile")) {
+                    out.line("[INFO] Compiling " + (1 + random.nextInt(200)) + " source files to /workspace/"
+                            + module + "/target/" + (goal.contains(":testCompile") ? "test-classes" : "classes"));
+                } else if (goal.contains(":test ")) {
+                    tests(random, out, module);
+                }
+                text(random, out, "[INFO] ", 1 + random.nextInt(8));
+                if (random.nextInt(10) == 0) {
+                    text(random, out, "[WARNING] ", 1);
+                }
+            }
+            if (failed && failingModule == null && out.lines > out.maxLines / 2) {
+                failingModule = module;
+                out.line("[ERROR] Tests run: 1, Failures: 0, Errors: 1, Skipped: 0, Time elapsed: 0.2 s <<< FAILURE!");
+                stackTrace(random, out, "");
+            }
+        }
+        if (failed && failingModule == null) {
+            failingModule = module;
+            stackTrace(random, out, "");
+        }
+        out.line("[INFO] ------------------------------------------------------------------------");
+        if (failed) {
+            out.line("[INFO] BUILD FAILURE");
+            out.line("[INFO] ------------------------------------------------------------------------");
+            out.line("[ERROR] Failed to execute goal org.apache.maven.plugins:maven-surefire-plugin:2.12.4:test "
+                    + "(default-test) on project " + failingModule + ": There are test failures.");
+        } else {
+            out.line("[INFO] BUILD SUCCESS");
+            out.line("[INFO] ------------------------------------------------------------------------");
+        }
+        out.line("[INFO] Total time: " + (1 + random.nextInt(59)) + ":" + String.format("%02d", random.nextInt(60))
+                + " min");
+    }
+
+    private void gradle(Random random, Output out, boolean failed) {
+        out.line("Starting a Gradle Daemon (subsequent builds will be faster)");
+        int tasks = 0;
+        String failingTask = null;
+        while (!out.isFull()) {
+            String module = word(random);
+            for (String task : GRADLE_TASKS) {
+                if (out.isFull()) {
+                    break;
+                }
+                tasks++;
+                String path = ":" + module + ":" + task;
+                if (random.nextInt(3) == 0) {
+                    out.line("> Task " + path + " UP-TO-DATE");
+                    continue;
+                }
+                out.line("> Task " + path);
+                if (random.nextInt(5) == 0) {
+                    download(random, out, "Download https://plugins.gradle.org/m2/");
+                }
+                if ("test".equals(task)) {
+                    tests(random, out, module);
+                }
+                text(random, out, "", random.nextInt(6));
+                if (failed && failingTask == null && out.lines > out.maxLines / 2 && "test".equals(task)) {
+                    failingTask = path;
+                    out.line("");
+                    stackTrace(random, out, "    ");
+                }
+            }
+        }
+        if (failed && failingTask == null) {
+            failingTask = ":test";
+            out.line("");
+            stackTrace(random, out, "    ");
+        }
+        if (failed) {
+            out.line("");
+            out.line("FAILURE: Build failed with an exception.");
+            out.line("");
+            out.line("* What went wrong:");
+            out.line("Execution failed for task '" + failingTask + "'.");
+            out.line("> There were failing tests. See the report at: file:///workspace/build/reports/tests/test/"
+                    + "index.html");
+            out.line("");
+            out.line("BUILD FAILED in " + (1 + random.nextInt(10)) + "m " + random.nextInt(60) + "s");
+        } else {
+            out.line("");
+            out.line("BUILD SUCCESSFUL in " + (1 + random.nextInt(10)) + "m " + random.nextInt(60) + "s");
+        }
+        out.line(tasks + " actionable tasks: " + (tasks * 2 / 3) + " executed, " + (tasks - tasks * 2 / 3)
+                + " up-to-date");
+    }
+
+    private void download(Random random, Output out, String prefix) {
+        String group = word(random);
+        String artifact = word(random);
+        String version = random.nextInt(5) + "." + random.nextInt(20) + "." + random.nextInt(10);
+        out.line(prefix + "org/" + group + "/" + artifact + "/" + version + "/" + artifact + "-" + version + ".jar");
+    }
+
+    private void tests(Random random, Output out, String module) {
+        int classes = 1 + random.nextInt(5);
+        for (int i = 0; i < classes; i++) {
+            String testClass = "com.example." + module.replace('-', '.') + "." + className(word(random)) + "Test";
+            out.line("Running " + testClass);
+            out.line("Tests run: " + (1 + random.nextInt(40)) + ", Failures: 0, Errors: 0, Skipped: "
+                    + random.nextInt(2) + ", Time elapsed: " + random.nextInt(10) + "." + random.nextInt(1000)
+                    + " s - in " + testClass);
+        }
+    }
+
+    private void stackTrace(Random random, Output out, String indent) {
+        int causes = 1 + random.nextInt(2);
+        for (int cause = 0; cause < causes; cause++) {
+            String[] exception = EXCEPTIONS[random.nextInt(EXCEPTIONS.length)];
+            String message = exception[1] == null ? "" : ": " + String.format(exception[1], word(random));
+            out.line(indent + (cause == 0 ? "" : "Caused by: ") + exception[0] + message);
+            int frames = 5 + random.nextInt(20);
+            for (int frame = 0; frame < frames; frame++) {
+                String type = className(word(random)) + (random.nextBoolean() ? "Service" : "Impl");
+                out.line(indent + "\tat com.example." + word(random) + "." + type + "." + word(random) + "(" + type
+                        + ".java:" + (1 + random.nextInt(900)) + ")");
+            }
+            for (String jdkFrame : JDK_FRAMES) {
+                out.line(indent + "\tat " + jdkFrame);
+            }
+            if (cause > 0) {
+                out.line(indent + "\t... " + (1 + random.nextInt(30)) + " more");
+            }
+        }
+    }
+
+    private void text(Random random, Output out, String prefix, int lines) {
+        for (int i = 0; i < lines; i++) {
+            StringBuilder line = new StringBuilder(prefix);
+            int words = 3 + random.nextInt(10);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    line.append(' ');
+                }
+                line.append(word(random));
+            }
+            out.line(line.toString());
+        }
+    }
+
+    private static String className(String word) {
+        return word.substring(0, 1).toUpperCase(Locale.ENGLISH) + word.substring(1).replace("-", "");
+    }
+
+    private static class Output {
+        final StringBuilder text;
+        final int maxLines;
+        int lines;
+
+        Output(int maxLines) {
+            this.maxLines = maxLines;
+            text = new StringBuilder(maxLines * 80);
+        }
+
+        void line(String line) {
+            text.append(line).append('\n');
+            lines++;
+        }
+
+        boolean isFull() {
+            return lines >= maxLines;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ConsoleGenerator <output dir> <builds>");
+            System.exit(1);
+        }
+        File directory = new File(args[0]);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        long seed = Long.getLong("seed", 42);
+        int lines = Integer.getInteger("lines", 1000);
+        ConsoleGenerator generator = new ConsoleGenerator(seed, Integer.getInteger("vocabularySize",
+                DEFAULT_VOCABULARY_SIZE), Double.parseDouble(System.getProperty("exponent",
+                String.valueOf(DEFAULT_EXPONENT))));
+        int builds = Integer.parseInt(args[1]);
+        for (int build = 0; build < builds; build++) {
+            Style style = build % 2 == 0 ? Style.MAVEN : Style.GRADLE;
+            String console = generator.generate(new Random(seed ^ build), style, lines, build % 7 == 0);
+            File file = new File(directory, "build-" + build + ".log");
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                writer.write(console);
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.jenkinsci.plugins.lucene.search.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.lucene.search.databackend.LuceneSearchBackend;
+import org.jenkinsci.plugins.lucene.search.databackend.PageCacheResidency;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * Puts a {@link LuceneSearchBackend} under mixed load without Jenkins: searchers, indexers and deleters run at the
+ * same time for a fixed duration against an index of a {@link SyntheticCorpus}. Reports the latency percentiles and
+ * throughput per kind of operation, the collections and time of each garbage collector, the heap in use and the
+ * size of the index before and after.
+ *
+ * Run with {@code java -cp <test classpath> org.jenkinsci.plugins.lucene.search.benchmark.LoadHarness
+ * <index dir> <result json>}. The index dir is emptied first and filled with {@code -Dbuilds=n} builds of
+ * {@code -Djobs=n} jobs and {@code -DconsoleLines=n} lines each. The load runs for {@code -Dseconds=n} with
+ * {@code -Dsearchers=n}, {@code -Dindexers=n} and {@code -Ddeleters=n} threads. Indexers store new builds,
+ * deleters remove random stored ones and searchers run job, result and console queries with words drawn like the
+ * console text. The index options are those of {@link CacheBenchmark}.
+ */
+public class LoadHarness {
+
+    private final LuceneSearchBackend backend;
+    private final SyntheticCorpus corpus;
+    private final AtomicInteger nextBuild;
+    private final int jobs;
+
+    /**
+     * Repeats an operation until the deadline and records how long each took.
+     */
+    private abstract static class Worker extends Thread {
+        final String kind;
+        final long seed;
+        long deadline;
+        long[] samples = new long[1024];
+        int count;
+        int errors;
+        String firstError;
+
+        Worker(String kind, long seed) {
+            super(kind + "-" + seed);
+            this.kind = kind;
+            this.seed = seed;
+        }
+
+        abstract void operation(Random random) throws Exception;
+
+        @Override
+        public void run() {
+            Random random = new Random(seed);
+            while (System.nanoTime() < deadline) {
+                long start = System.nanoTime();
+                try {
+                    operation(random);
+                } catch (Exception e) {
+                    if (errors++ == 0) {
+                        firstError = e.toString();
+                    }
+                    continue;
+                }
+                if (count == samples.length) {
+                    samples = Arrays.copyOf(samples, count * 2);
+                }
+                samples[count++] = System.nanoTime() - start;
+            }
+        }
+    }
+
+    LoadHarness(LuceneSearchBackend backend, SyntheticCorpus corpus, int builds, int jobs) {
+        this.backend = backend;
+        this.corpus = corpus;
+        this.jobs = jobs;
+        nextBuild = new AtomicInteger(builds);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: LoadHarness <index dir> <result json>");
+            System.exit(1);
+        }
+        File indexPath = new File(args[0]);
+        Map<String, Object> options = CacheBenchmark.getOptions();
+        int builds = Integer.getInteger("builds", 10000);
+        int jobs = Integer.getInteger("jobs", 100);
+        SyntheticCorpus corpus = new SyntheticCorpus(Long.getLong("seed", 42), jobs,
+                Integer.getInteger("consoleLines", 1000));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("options", new LinkedHashMap<>(options));
+        result.put("builds", builds);
+        result.put("jobs", jobs);
+        FileUtils.deleteDirectory(indexPath);
+        LuceneSearchBackend backend = new LuceneSearchBackend(indexPath, options);
+        try {
+            long start = System.nanoTime();
+            for (int build = 0; build < builds; build++) {
+                backend.storeBuild(corpus.build(build), corpus.console(build));
+            }
+            result.put("initialIndexSeconds", (System.nanoTime() - start) / 1e9);
+            result.put("indexBytesBefore", indexBytes(backend));
+
+            LoadHarness harness = new LoadHarness(backend, corpus, builds, jobs);
+            result.putAll(harness.run(Integer.getInteger("seconds", 60), Integer.getInteger("searchers", 4),
+                    Integer.getInteger("indexers", 1), Integer.getInteger("deleters", 1)));
+            result.put("indexBytesAfter", indexBytes(backend));
+        } finally {
+            backend.close();
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(args[1]), StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(result, writer);
+        }
+    }
+
+    Map<String, Object> run(int seconds, int searchers, int indexers, int deleters) throws InterruptedException {
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < searchers; i++) {
+            workers.add(new Worker("search", i) {
+                @Override
+                void operation(Random random) {
+                    backend.getHits(randomQuery(random), false);
+                }
+            });
+        }
+        for (int i = 0; i < indexers; i++) {
+            workers.add(new Worker("index", i) {
+                @Override
+                void operation(Random random) throws IOException {
+                    int build = nextBuild.getAndIncrement();
+                    backend.storeBuild(corpus.build(build), corpus.console(build));
+                }
+            });
+        }
+        for (int i = 0; i < deleters; i++) {
+            workers.add(new Worker("delete", i) {
+                @Override
+                void operation(Random random) throws IOException {
+                    backend.removeBuild(corpus.id(random.nextInt(nextBuild.get())));
+                }
+            });
+        }
+
+        Map<String, long[]> gcBefore = gcStats();
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        for (Worker worker : workers) {
+            worker.deadline = deadline;
+            worker.start();
+        }
+        for (Worker worker : workers) {
+            worker.join();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("seconds", seconds);
+        result.put("search", summary(workers, "search", seconds));
+        result.put("index", summary(workers, "index", seconds));
+        result.put("delete", summary(workers, "delete", seconds));
+        result.put("gc", gcDelta(gcBefore, gcStats()));
+        Runtime runtime = Runtime.getRuntime();
+        result.put("heapUsedBytes", runtime.totalMemory() - runtime.freeMemory());
+        return result;
+    }
+
+    private String randomQuery(Random random) {
+        String job = "job-" + random.nextInt(jobs);
+        switch (random.nextInt(4)) {
+            case 0:
+                return "j:" + job;
+            case 1:
+                return "j:" + job + " result:failure";
+            case 2:
+                return "c:" + corpus.getGenerator().word(random);
+            default:
+                return "c:" + corpus.getGenerator().word(random) + " c:" + corpus.getGenerator().word(random);
+        }
+    }
+
+    private static Map<String, Object> summary(List<Worker> workers, String kind, int seconds) {
+        long[] samples = new long[0];
+        int errors = 0;
+        String firstError = null;
+        for (Worker worker : workers) {
+            if (worker.kind.equals(kind)) {
+                int offset = samples.length;
+                samples = Arrays.copyOf(samples, offset + worker.count);
+                System.arraycopy(worker.samples, 0, samples, offset, worker.count);
+                errors += worker.errors;
+                if (firstError == null) {
+                    firstError = worker.firstError;
+                }
+            }
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("operations", samples.length);
+        summary.put("perSecond", samples.length / (double) seconds);
+        summary.put("errors", errors);
+        if (firstError != null) {
+            summary.put("firstError", firstError);
+        }
+        summary.put("latency", CacheBenchmark.summary(samples));
+        return summary;
+    }
+
+    /**
+     * @return the collection count and time in milliseconds per collector
+     */
+    private static Map<String, long[]> gcStats() {
+        Map<String, long[]> stats = new LinkedHashMap<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            stats.put(collector.getName(), new long[] { collector.getCollectionCount(),
+                    collector.getCollectionTime() });
+        }
+        return stats;
+    }
+
+    private static Map<String, Object> gcDelta(Map<String, long[]> before, Map<String, long[]> after) {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> collector : after.entrySet()) {
+            long[] start = before.get(collector.getKey());
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("collections", collector.getValue()[0] - (start != null ? start[0] : 0));
+            stats.put("millis", collector.getValue()[1] - (start != null ? start[1] : 0));
+            delta.put(collector.getKey(), stats);
+        }
+        return delta;
+    }
+
+    private static long indexBytes(LuceneSearchBackend backend) throws IOException {
+        long bytes = 0;
+        for (PageCacheResidency.FileResidency file : backend.getResidency().values()) {
+            bytes += file.bytes;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.lucene.search.benchmark;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.jenkinsci.plugins.lucene.search.Field;
+
+/**
+ * Makes up builds for the benchmarks, the same ones for the same seed. The consoles are made by a
+ * {@link ConsoleGenerator} when asked for, so a large corpus doesn't have to fit in memory. The even jobs build with
+ * Maven and the odd ones with Gradle.
+ */
+public class SyntheticCorpus {
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private final long seed;
+    private final int jobs;
+    private final int consoleLines;
+    private final long startTime;
+    private final ConsoleGenerator generator;
+
+    public SyntheticCorpus(long seed, int jobs, int consoleLines) {
+        this(seed, jobs, consoleLines, new ConsoleGenerator(seed));
+    }
+
+    public SyntheticCorpus(long seed, int jobs, int consoleLines, ConsoleGenerator generator) {
+        this.seed = seed;
+        this.jobs = jobs;
+        this.consoleLines = consoleLines;
+        this.generator = generator;
+        startTime = 1420070400000L; // 2015-01-01
+    }
+
+    public ConsoleGenerator getGenerator() {
+        return generator;
+    }
+
+    public String jobName(int build) {
+        return "job-" + build % jobs;
+    }
+
+    /**
+     * @return the fields of the build, numbered per job in the order of {@code build}
+     */
+    public Map<Field, Object> build(int build) {
+        Random random = new Random(seed + build);
+        String job = jobName(build);
+        int number = build / jobs + 1;
+        Map<Field, Object> values = new EnumMap<>(Field.class);
+        values.put(Field.PROJECT_NAME, job);
+        values.put(Field.BUILD_NUMBER, String.valueOf(number));
+        values.put(Field.ID, id(build));
+        values.put(Field.BUILD_DISPLAY_NAME, "#" + number);
+        values.put(Field.START_TIME, startTime + build * HOUR);
+        values.put(Field.RESULT, isFailure(build) ? "failure" : "success");
+        values.put(Field.DURATION, 1000L + random.nextInt(600000));
+        values.put(Field.NODE, "agent-" + random.nextInt(4));
+        values.put(Field.CAUSE, Collections.singletonList(random.nextBoolean() ? "scmtrigger" : "timertrigger"));
+        return values;
+    }
+
+    public String id(int build) {
+        return jobName(build) + "#" + (build / jobs + 1);
+    }
+
+    public boolean isFailure(int build) {
+        return build % 7 == 0;
+    }
+
+    public String console(int build) {
+        ConsoleGenerator.Style style = build % jobs % 2 == 0 ? ConsoleGenerator.Style.MAVEN
+                : ConsoleGenerator.Style.GRADLE;
+        return generator.generate(new Random(seed ^ build), style, consoleLines, isFailure(build));
+    }
+}
@@ -0,0 +1,35 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.jenkinsci.plugins.lucene.search.Field;
+
+/**
+ * Stores builds in a {@link LuceneSearchBackend} from their field values, without Jenkins. Build {@code n} of a job
+ * has the id {@code job#n} and starts {@code n} milliseconds after {@link #START_TIME}.
+ */
+final class BackendBuilds {
+    static final long START_TIME = 1420070400000L;
+
+    private BackendBuilds() {
+    }
+
+    /**
+     * @return the values of a build without a result, duration, node or cause
+     */
+    static Map<Field, Object> values(String job, int number) {
+        Map<Field, Object> values = new EnumMap<>(Field.class);
+        values.put(Field.PROJECT_NAME, job);
+        values.put(Field.BUILD_NUMBER, String.valueOf(number));
+        values.put(Field.ID, job + "#" + number);
+        values.put(Field.BUILD_DISPLAY_NAME, "#" + number);
+        values.put(Field.START_TIME, START_TIME + number);
+        return values;
+    }
+
+    static void store(LuceneSearchBackend backend, String job, int number, String console) throws IOException {
+        backend.storeBuild(values(job, number), console);
+    }
+}
@@ -0,0 +1,107 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.junit.Test;
+
+public class BuildBlockTest {
+
+    private static final int LINES = 5000;
+
+    /**
+     * Counts the chars read so far.
+     */
+    private static class CountingReader extends FilterReader {
+        int read;
+
+        CountingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            read += Math.max(count, 0);
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            read += c >= 0 ? 1 : 0;
+            return c;
+        }
+    }
+
+    private static String log() {
+        StringBuilder log = new StringBuilder();
+        for (int line = 1; line <= LINES; line++) {
+            log.append("line ").append(line).append('\n');
+        }
+        return log.toString();
+    }
+
+    @Test
+    public void chunksAreAddedWhileTheConsoleIsRead() throws IOException {
+        final ConsoleRetentionPolicy policy = new ConsoleRetentionPolicy(1000, 100, 100, null);
+        String log = log();
+        CountingReader console = new CountingReader(new StringReader(log));
+        Document build = new Document();
+        build.add(new StringField("type", "build", Store.NO));
+        final List<ConsoleChunker.Chunk> chunks = new ArrayList<>();
+        BuildBlock block = new BuildBlock(new ConsoleChunker(console), policy, build) {
+            @Override
+            protected Document createChunkDocument(ConsoleChunker.Chunk chunk, boolean stored) {
+                // decided as if the whole log had been read
+                assertEquals(policy.isStored(chunk, LINES), stored);
+                chunks.add(chunk);
+                Document doc = new Document();
+                doc.add(new StoredField("first", chunk.firstLine));
+                return doc;
+            }
+        };
+
+        Iterator<Document> documents = block.iterator();
+        documents.next();
+        documents.next();
+        assertTrue("read " + console.read, console.read < log.length());
+        while (documents.hasNext()) {
+            Document doc = documents.next();
+            if (!documents.hasNext()) {
+                assertEquals(build, doc);
+            }
+        }
+        assertEquals(LINES, chunks.get(chunks.size() - 1).lastLine);
+        // in line order, so the build stays the parent of its chunks
+        for (int i = 1; i < chunks.size(); i++) {
+            assertEquals(chunks.get(i - 1).lastLine + 1, chunks.get(i).firstLine);
+        }
+    }
+
+    @Test
+    public void buildWithoutConsoleIsItsOwnBlock() {
+        Document build = new Document();
+        Iterator<Document> documents = new BuildBlock(null, ConsoleRetentionPolicy.KEEP_ALL, build) {
+            @Override
+            protected Document createChunkDocument(ConsoleChunker.Chunk chunk, boolean stored) {
+                throw new AssertionError();
+            }
+        }.iterator();
+        assertEquals(build, documents.next());
+        assertFalse(documents.hasNext());
+    }
+}
@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * A small index in memory of build blocks like the Lucene backend writes them: the console chunks followed by the
+ * build document with the job, result and start time doc values. Every document stores the id of its build. The
+ * chunks of running builds are single documents with the doc values of the build.
+ */
+class BuildBlocks implements Closeable {
+
+    static final String ID = "id";
+    static final String JOB = "job";
+    static final String RESULT = "result";
+    static final String START_TIME = "start";
+    static final String CONSOLE = "console";
+    static final String RUNNING_BUILD = "running";
+
+    private static final String TYPE = "type";
+
+    final ParentBitSets parentBitSets = new ParentBitSets(new BooleanQuery.Builder()
+            .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+            .add(new TermQuery(new Term(TYPE, "chunk")), BooleanClause.Occur.MUST_NOT)
+            .build());
+
+    private final RAMDirectory directory = new RAMDirectory();
+    private final IndexWriter writer;
+    private final List<DirectoryReader> readers = new ArrayList<>();
+
+    BuildBlocks() throws IOException {
+        writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()));
+    }
+
+    void addBuild(String id, String job, String result, long startTime, String... chunks) throws IOException {
+        List<Document> block = new ArrayList<>();
+        for (String chunk : chunks) {
+            Document doc = new Document();
+            doc.add(new StringField(TYPE, "chunk", Store.NO));
+            doc.add(new StringField(ID, id, Store.YES));
+            doc.add(new TextField(CONSOLE, chunk, Store.NO));
+            block.add(doc);
+        }
+        Document build = new Document();
+        build.add(new StringField(TYPE, "build", Store.NO));
+        build.add(new StringField(ID, id, Store.YES));
+        build.add(new SortedSetDocValuesField(JOB, new BytesRef(job)));
+        build.add(new SortedSetDocValuesField(RESULT, new BytesRef(result)));
+        build.add(new NumericDocValuesField(START_TIME, startTime));
+        block.add(build);
+        writer.addDocuments(block);
+    }
+
+    void addRunningChunk(String id, String job, long startTime, String chunk) throws IOException {
+        Document doc = new Document();
+        doc.add(new StringField(ID, id, Store.YES));
+        doc.add(new SortedDocValuesField(RUNNING_BUILD, new BytesRef(id)));
+        doc.add(new SortedSetDocValuesField(JOB, new BytesRef(job)));
+        doc.add(new NumericDocValuesField(START_TIME, startTime));
+        doc.add(new TextField(CONSOLE, chunk, Store.NO));
+        writer.addDocument(doc);
+    }
+
+    void deleteBuild(String id) throws IOException {
+        writer.deleteDocuments(new Term(ID, id));
+    }
+
+    /**
+     * Starts a new segment, so the collectors see more than one.
+     */
+    void flush() throws IOException {
+        writer.commit();
+    }
+
+    /**
+     * @return a searcher of the documents added so far, the searchers returned before stay open until the close
+     */
+    IndexSearcher searcher() throws IOException {
+        DirectoryReader reader = DirectoryReader.open(writer, true);
+        readers.add(reader);
+        return new IndexSearcher(reader);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DirectoryReader reader : readers) {
+            reader.close();
+        }
+        writer.close();
+        directory.close();
+    }
+}
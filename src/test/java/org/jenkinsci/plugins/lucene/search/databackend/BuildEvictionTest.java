@@ -0,0 +1,68 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildEvictionTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int BUILDS = 40;
+
+    private LuceneSearchBackend backend;
+
+    @Before
+    public void setUp() throws IOException {
+        Map<String, Object> options = new HashMap<>();
+        options.put(LuceneSearchBackend.DIRECTORY, LuceneSearchBackend.DirectoryType.RAM.name());
+        options.put(LuceneSearchBackend.RAM_MAX_MB, 1);
+        backend = new LuceneSearchBackend(folder.newFolder(), options);
+        // random words hardly compress, every build takes about a tenth of the limit or more
+        Random random = new Random(42);
+        for (int number = 1; number <= BUILDS; number++) {
+            BackendBuilds.store(backend, "job", number, "build " + number + "\n" + randomWords(random, 64 * 1024));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        backend.close();
+    }
+
+    private static String randomWords(Random random, int length) {
+        StringBuilder words = new StringBuilder(length);
+        while (words.length() < length) {
+            for (int i = 3 + random.nextInt(6); i > 0; i--) {
+                words.append((char) ('a' + random.nextInt(26)));
+            }
+            words.append(words.length() % 80 < 8 ? '\n' : ' ');
+        }
+        return words.toString();
+    }
+
+    @Test
+    public void evictsTheOldestBuilds() {
+        int kept = backend.getHits("j:job", false).size();
+        assertTrue("kept " + kept, kept > 0 && kept < BUILDS);
+        assertEquals(0, backend.getHits("n:1", false).size());
+        // the kept builds are the newest ones
+        assertEquals(kept, backend.getHits("n:[" + (BUILDS - kept + 1) + " TO " + BUILDS + "]", false).size());
+    }
+
+    @Test
+    public void keepsTheNewestBuild() {
+        assertEquals(1, backend.getHits("n:" + BUILDS, false).size());
+        assertEquals(1, backend.getHits("c:build AND n:" + BUILDS, false).size());
+    }
+}
@@ -0,0 +1,131 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.jenkinsci.plugins.lucene.search.Field;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildFacetsCollectorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    // noon on 2017-03-01 in the time zone of the server
+    private static final long MARCH_1 = 1488326400000L + DAY / 2 - TimeZone.getDefault().getOffset(1488326400000L);
+
+    private BuildBlocks index;
+
+    @Before
+    public void setUp() throws IOException {
+        index = new BuildBlocks();
+        index.addBuild("a#1", "a", "SUCCESS", MARCH_1, "error here", "error there");
+        index.addBuild("a#2", "a", "FAILURE", MARCH_1 + DAY, "error");
+        index.flush();
+        index.addBuild("b#1", "b", "FAILURE", MARCH_1, "error");
+        index.addBuild("b#2", "b", "SUCCESS", MARCH_1 + DAY, "fine");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    private SearchFacets facets(Set<String> visibleJobs) throws IOException {
+        BuildFacetsCollector collector = new BuildFacetsCollector(index.parentBitSets, BuildBlocks.RUNNING_BUILD,
+                BuildBlocks.JOB, BuildBlocks.RESULT, BuildBlocks.START_TIME, visibleJobs);
+        index.searcher().search(new TermQuery(new Term(BuildBlocks.CONSOLE, "error")), collector);
+        return collector.getFacets();
+    }
+
+    private static Map<String, Long> counts(Object... keysAndCounts) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndCounts.length; i += 2) {
+            counts.put((String) keysAndCounts[i], ((Number) keysAndCounts[i + 1]).longValue());
+        }
+        return counts;
+    }
+
+    @Test
+    public void countsEveryMatchingBuildOnce() throws IOException {
+        SearchFacets facets = facets(null);
+        assertEquals(counts("a", 2, "b", 1), facets.getJobs());
+        assertEquals(counts("FAILURE", 2, "SUCCESS", 1), facets.getResults());
+        assertEquals(counts("2017-03-01", 2, "2017-03-02", 1), facets.getDays());
+        // ordered by count
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(facets.getJobs().keySet().toArray()));
+    }
+
+    @Test
+    public void onlyCountsVisibleJobs() throws IOException {
+        SearchFacets facets = facets(Collections.singleton("b"));
+        assertEquals(counts("b", 1), facets.getJobs());
+        assertEquals(counts("FAILURE", 1), facets.getResults());
+        assertEquals(counts("2017-03-01", 1), facets.getDays());
+    }
+
+    @Test
+    public void sumsTheCollectorsOfParallelSlices() throws IOException {
+        BuildFacetsCollector first = new BuildFacetsCollector(index.parentBitSets, BuildBlocks.RUNNING_BUILD,
+                BuildBlocks.JOB, BuildBlocks.RESULT, BuildBlocks.START_TIME, null);
+        BuildFacetsCollector second = new BuildFacetsCollector(index.parentBitSets, BuildBlocks.RUNNING_BUILD,
+                BuildBlocks.JOB, BuildBlocks.RESULT, BuildBlocks.START_TIME, null);
+        index.searcher().search(new TermQuery(new Term(BuildBlocks.CONSOLE, "error")), first);
+        index.searcher().search(new TermQuery(new Term(BuildBlocks.CONSOLE, "fine")), second);
+        SearchFacets facets = BuildFacetsCollector.getFacets(Arrays.asList(first, second));
+        assertEquals(counts("a", 2, "b", 2), facets.getJobs());
+        assertEquals(counts("FAILURE", 2, "SUCCESS", 2), facets.getResults());
+    }
+
+    @Test
+    public void countsARunningBuildOnce() throws IOException {
+        // the chunks are their own parents, in two segments
+        index.addRunningChunk("b#3", "b", MARCH_1 + DAY, "error one");
+        index.addRunningChunk("b#3", "b", MARCH_1 + DAY, "error two");
+        index.flush();
+        index.addRunningChunk("b#3", "b", MARCH_1 + DAY, "error three");
+        SearchFacets facets = facets(null);
+        assertEquals(counts("a", 2, "b", 2), facets.getJobs());
+        assertEquals(counts("2017-03-01", 2, "2017-03-02", 2), facets.getDays());
+        // no result yet
+        assertEquals(counts("FAILURE", 2, "SUCCESS", 1), facets.getResults());
+        assertEquals(counts("b", 2), facets(Collections.singleton("b")).getJobs());
+    }
+
+    @Test
+    public void facetsOnlySearchKeepsThePageOfTheLastSearch() throws IOException {
+        LuceneSearchBackend backend = new LuceneSearchBackend(folder.newFolder());
+        try {
+            for (int number = 1; number <= 120; number++) {
+                Map<Field, Object> values = BackendBuilds.values(number % 3 == 0 ? "b" : "a", number);
+                values.put(Field.RESULT, number % 2 == 0 ? "success" : "failure");
+                backend.storeBuild(values, "build " + number + "\n");
+            }
+            assertEquals(100, backend.getHits("c:build", false).size());
+
+            SearchFacets facets = backend.getFacets("c:build AND result:failure", SearchOptions.DEFAULT);
+            assertEquals(counts("a", 40, "b", 20), facets.getJobs());
+            assertEquals(counts("failure", 60), facets.getResults());
+            assertEquals(counts("a", 40), backend.getFacets("result:failure",
+                    SearchOptions.DEFAULT.withVisibleJobs(Collections.singleton("a"))).getJobs());
+
+            // the next page is still the one of the search
+            assertEquals(20, backend.getHits("c:build", true).size());
+        } finally {
+            backend.close();
+        }
+    }
+}
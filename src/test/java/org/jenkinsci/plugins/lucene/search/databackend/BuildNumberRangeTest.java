@@ -0,0 +1,70 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.jenkinsci.plugins.lucene.search.Field;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildNumberRangeTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LuceneSearchBackend backend;
+
+    @Before
+    public void setUp() throws IOException {
+        backend = new LuceneSearchBackend(folder.newFolder());
+        for (int number = 1; number <= 30; number++) {
+            BackendBuilds.store(backend, "job", number, "build " + number + "\n");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        backend.close();
+    }
+
+    @Test
+    public void rangeIsANumericFilter() throws ParseException {
+        assertEquals(new ConstantScoreQuery(NumericRangeQuery.newLongRange("n", 10L, 20L, true, true)),
+                backend.parse("n:[10 TO 20]"));
+        assertEquals(new ConstantScoreQuery(NumericRangeQuery.newLongRange("n", 25L, null, false, true)),
+                backend.parse("n:{25 TO *]"));
+    }
+
+    @Test
+    public void rangesSelectTheBuilds() {
+        assertEquals(11, backend.getHits("n:[10 TO 20]", false).size());
+        assertEquals(9, backend.getHits("n:{10 TO 20}", false).size());
+        assertEquals(6, backend.getHits("n:[25 TO *]", false).size());
+        assertEquals(3, backend.getHits("n:[* TO 3]", false).size());
+        assertEquals(1, backend.getHits("n:7", false).size());
+    }
+
+    @Test
+    public void numbersAreComparedAsNumbers() {
+        // as strings 9 would sort after 10
+        assertEquals(3, backend.getHits("n:[9 TO 11]", false).size());
+    }
+
+    @Test
+    public void openBoundIsNull() throws ParseException {
+        assertNull(RangeBounds.parse(Field.BUILD_NUMBER, "*", false, 0));
+        assertEquals(12L, (long) RangeBounds.parse(Field.BUILD_NUMBER, "12", true, 0));
+    }
+
+    @Test(expected = ParseException.class)
+    public void notANumberIsAParseError() throws ParseException {
+        backend.parse("n:[ten TO 20]");
+    }
+}
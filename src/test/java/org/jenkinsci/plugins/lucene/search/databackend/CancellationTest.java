@@ -0,0 +1,129 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jenkinsci.plugins.lucene.search.FreeTextSearchItemImplementation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class CancellationTest {
+    @Rule
+    public JenkinsRule rule = new JenkinsRule();
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Records the stored builds, and asks the rebuild to stop at the first one when given a progress.
+     */
+    private static class RecordingBackend extends SearchBackend<Object> {
+        final List<Run<?, ?>> stored = Collections.synchronizedList(new ArrayList<Run<?, ?>>());
+        private final ManagerProgress cancelOnStore;
+
+        RecordingBackend(ManagerProgress cancelOnStore) {
+            this.cancelOnStore = cancelOnStore;
+        }
+
+        @Override
+        public void storeBuild(Run<?, ?> run) {
+            stored.add(run);
+            if (cancelOnStore != null) {
+                cancelOnStore.requestCancel();
+            }
+        }
+
+        @Override
+        public void storeRunningBuildChunk(Run<?, ?> run, int chunkNumber, int firstLine, String console) {
+        }
+
+        @Override
+        public boolean findRunIndex(Run<?, ?> run) {
+            return false;
+        }
+
+        @Override
+        public List<FreeTextSearchItemImplementation> getHits(String query, boolean searchNext) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public SearchBackend<?> reconfigure(Map<String, Object> config) {
+            return this;
+        }
+
+        @Override
+        public void removeBuild(Run<?, ?> run) {
+        }
+
+        @Override
+        public void deleteJob(String jobName) {
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void cleanAllJob(ManagerProgress progress) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private FreeStyleProject projectWithBuilds(int builds) throws Exception {
+        FreeStyleProject project = rule.createFreeStyleProject("project");
+        for (int i = 0; i < builds; i++) {
+            rule.buildAndAssertSuccess(project);
+        }
+        return project;
+    }
+
+    @Test
+    public void cancelledRebuildStoresNothing() throws Exception {
+        FreeStyleProject project = projectWithBuilds(3);
+        ManagerProgress progress = new ManagerProgress();
+        progress.requestCancel();
+        RecordingBackend backend = new RecordingBackend(null);
+        backend.rebuildJob(progress, progress.beginJob(project), project, 1, true, null);
+        assertTrue(backend.stored.isEmpty());
+    }
+
+    @Test
+    public void cancelDuringRebuildDropsTheQueuedBuilds() throws Exception {
+        FreeStyleProject project = projectWithBuilds(3);
+        ManagerProgress progress = new ManagerProgress();
+        RecordingBackend backend = new RecordingBackend(progress);
+        backend.rebuildJob(progress, progress.beginJob(project), project, 1, true, null);
+        // the worker thread and the waiting thread may each have started a build before the cancel
+        assertTrue(backend.stored.size() < 3);
+    }
+
+    @Test
+    public void cancelledCleanKeepsTheIndex() throws IOException {
+        LuceneSearchBackend backend = new LuceneSearchBackend(folder.newFolder());
+        try {
+            BackendBuilds.store(backend, "job", 1, "some output\n");
+
+            ManagerProgress progress = new ManagerProgress();
+            progress.requestCancel();
+            backend.cleanAllJob(progress);
+            assertEquals(Progress.ProgressState.CANCELLED, progress.getState());
+            assertEquals(1, backend.getHits("j:job", false).size());
+        } finally {
+            backend.close();
+        }
+    }
+}
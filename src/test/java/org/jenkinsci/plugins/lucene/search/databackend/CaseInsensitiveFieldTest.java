@@ -0,0 +1,60 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CaseInsensitiveFieldTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LuceneSearchBackend backend;
+
+    @Before
+    public void setUp() throws IOException {
+        backend = new LuceneSearchBackend(folder.newFolder(), Collections.<String, Object>singletonMap(
+                LuceneSearchBackend.CASE_INSENSITIVE_FIELD, true));
+        BackendBuilds.store(backend, "job", 1, "Connecting to the host\nConnection Refused by host\n");
+    }
+
+    @After
+    public void tearDown() {
+        backend.close();
+    }
+
+    @Test
+    public void quotedQueryBecomesAConjunctionOfLowerCaseTerms() throws ParseException {
+        BooleanQuery expected = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term("ci", "connection")), BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term("ci", "refused")), BooleanClause.Occur.MUST)
+                .build();
+        assertEquals(expected, backend.parse("ci:\"Connection REFUSED\""));
+    }
+
+    @Test
+    public void caseInsensitiveFieldIgnoresCase() {
+        assertEquals(1, backend.getHits("ci:\"connection refused\"", false).size());
+        assertEquals(1, backend.getHits("ci:CONNECTION", false).size());
+        assertEquals(0, backend.getHits("c:connection", false).size());
+        assertEquals(1, backend.getHits("c:Connection", false).size());
+    }
+
+    @Test
+    public void quotedWordsOnlyHaveToBeInTheSameChunk() {
+        // the field has no positions, the order of the words is not checked
+        assertEquals(1, backend.getHits("ci:\"refused connection\"", false).size());
+        assertEquals(0, backend.getHits("ci:\"connection timeout\"", false).size());
+    }
+}
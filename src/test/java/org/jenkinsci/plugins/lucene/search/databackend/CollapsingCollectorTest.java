@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.jenkinsci.plugins.lucene.search.FreeTextSearchItemImplementation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CollapsingCollectorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BuildBlocks index;
+
+    @Before
+    public void setUp() throws IOException {
+        // shorter chunks score higher
+        index = new BuildBlocks();
+        index.addBuild("a#1", "a", "SUCCESS", 1, "error foo bar baz");
+        index.addBuild("a#2", "a", "SUCCESS", 2, "error foo bar baz qux", "error");
+        index.addBuild("a#3", "a", "SUCCESS", 3, "error foo");
+        index.flush();
+        index.addBuild("b#1", "b", "SUCCESS", 1, "error foo bar baz qux quux corge grault garply");
+        index.addBuild("c#1", "c", "SUCCESS", 1, "fine");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    private List<String> collapse(int hitsPerJob, Set<String> visibleJobs, int maxHits, Map<String, Long> totals)
+            throws IOException {
+        CollapsingCollector collector = new CollapsingCollector(index.parentBitSets, BuildBlocks.RUNNING_BUILD,
+                BuildBlocks.JOB, hitsPerJob, visibleJobs);
+        IndexSearcher searcher = index.searcher();
+        searcher.search(new TermQuery(new Term(BuildBlocks.CONSOLE, "error")), collector);
+        List<String> ids = new ArrayList<>();
+        for (ScoreDoc hit : collector.getTopDocs(maxHits)) {
+            ids.add(searcher.doc(hit.doc).get(BuildBlocks.ID));
+        }
+        totals.putAll(collector.getTotals());
+        return ids;
+    }
+
+    @Test
+    public void keepsTheBestBuildsOfEveryJob() throws IOException {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        assertEquals(Arrays.asList("a#2", "a#3", "b#1"), collapse(2, null, 10, totals));
+        // a#2 is counted once, although two of its chunks match
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(totals.keySet()));
+        assertEquals(3L, (long) totals.get("a"));
+        assertEquals(1L, (long) totals.get("b"));
+    }
+
+    @Test
+    public void stopsAtTheMaximumNumberOfHits() throws IOException {
+        assertEquals(Arrays.asList("a#2", "a#3"), collapse(2, null, 2, new LinkedHashMap<String, Long>()));
+        assertEquals(Arrays.asList("a#2", "b#1"), collapse(1, null, 10, new LinkedHashMap<String, Long>()));
+    }
+
+    @Test
+    public void skipsHiddenJobs() throws IOException {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        assertEquals(Arrays.asList("b#1"), collapse(2, Collections.singleton("b"), 10, totals));
+        assertEquals(Collections.singletonMap("b", 1L), totals);
+    }
+
+    @Test
+    public void runningBuildTakesOnePlace() throws IOException {
+        // the chunks are their own parents, in two segments
+        index.addRunningChunk("b#2", "b", 2, "error foo bar baz qux");
+        index.addRunningChunk("b#2", "b", 2, "error foo bar baz qux quux");
+        index.flush();
+        index.addRunningChunk("b#2", "b", 2, "error foo bar baz qux quux corge");
+        Map<String, Long> totals = new LinkedHashMap<>();
+        // without the build id the chunks of b#2 would take both places of b
+        assertEquals(Arrays.asList("a#2", "a#3", "b#2", "b#1"), collapse(2, null, 10, totals));
+        assertEquals(2L, (long) totals.get("b"));
+        assertEquals(3L, (long) totals.get("a"));
+    }
+
+    @Test
+    public void collapsedSearchKeepsTheJobsTogether() throws IOException {
+        LuceneSearchBackend backend = new LuceneSearchBackend(folder.newFolder());
+        try {
+            BackendBuilds.store(backend, "b", 1, "error\n");
+            BackendBuilds.store(backend, "b", 2, "error foo bar baz qux quux corge grault garply\n");
+            BackendBuilds.store(backend, "a", 1, "error foo bar baz\n");
+            List<String> builds = new ArrayList<>();
+            for (FreeTextSearchItemImplementation item : backend.search("c:error", false,
+                    SearchOptions.DEFAULT.withCollapse(2)).getItems()) {
+                builds.add(item.getProjectName() + item.getSearchName());
+            }
+            // sorted by score a#1 would come before b#2
+            assertEquals(Arrays.asList("b#1", "b#2", "a#1"), builds);
+        } finally {
+            backend.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+public class ConsoleChunkerTest {
+
+    @Test
+    public void cutsAfterLinesPerChunk() throws IOException {
+        StringBuilder log = new StringBuilder();
+        for (int i = 1; i <= ConsoleChunker.LINES_PER_CHUNK + 1; i++) {
+            log.append("line ").append(i).append('\n');
+        }
+        ConsoleChunker chunker = new ConsoleChunker(new StringReader(log.toString()));
+        ConsoleChunker.Chunk chunk = chunker.next();
+        assertEquals(1, chunk.firstLine);
+        assertEquals(ConsoleChunker.LINES_PER_CHUNK, chunk.lastLine);
+        assertTrue(chunk.text.startsWith("line 1\n"));
+        chunk = chunker.next();
+        assertEquals("line " + (ConsoleChunker.LINES_PER_CHUNK + 1) + "\n", chunk.text);
+        assertEquals(ConsoleChunker.LINES_PER_CHUNK + 1, chunk.firstLine);
+        assertNull(chunker.next());
+    }
+
+    @Test
+    public void closesAChunkBeforeItGetsTooLong() throws IOException {
+        String line = StringUtils.repeat("x", ConsoleChunker.MAX_CHUNK_CHARS / 3);
+        ConsoleChunker chunker = new ConsoleChunker(new StringReader(StringUtils.repeat(line + "\n", 4)));
+        ConsoleChunker.Chunk chunk = chunker.next();
+        assertEquals(StringUtils.repeat(line + "\n", 2), chunk.text);
+        assertEquals(1, chunk.firstLine);
+        assertEquals(2, chunk.lastLine);
+        chunk = chunker.next();
+        assertEquals(3, chunk.firstLine);
+        assertEquals(4, chunk.lastLine);
+        assertNull(chunker.next());
+    }
+
+    @Test
+    public void splitsALineLongerThanAChunk() throws IOException {
+        String longLine = StringUtils.repeat("0123456789", ConsoleChunker.MAX_CHUNK_CHARS / 4);
+        ConsoleChunker chunker = new ConsoleChunker(new StringReader("before\n" + longLine + "\nafter\n"));
+        ConsoleChunker.Chunk chunk = chunker.next();
+        assertEquals("before\n", chunk.text);
+        assertEquals(1, chunk.lastLine);
+
+        for (int piece = 0; piece < 2; piece++) {
+            chunk = chunker.next();
+            assertEquals(longLine.substring(piece * ConsoleChunker.MAX_CHUNK_CHARS,
+                    (piece + 1) * ConsoleChunker.MAX_CHUNK_CHARS), chunk.text);
+            assertEquals(2, chunk.firstLine);
+            assertEquals(2, chunk.lastLine);
+        }
+        // the last piece ends the line and leaves room for the next ones
+        chunk = chunker.next();
+        assertEquals(longLine.substring(2 * ConsoleChunker.MAX_CHUNK_CHARS) + "\nafter\n", chunk.text);
+        assertEquals(2, chunk.firstLine);
+        assertEquals(3, chunk.lastLine);
+        assertNull(chunker.next());
+    }
+
+    @Test
+    public void doesNotSplitASurrogatePair() throws IOException {
+        String longLine = StringUtils.repeat("x", ConsoleChunker.MAX_CHUNK_CHARS - 1) + "\uD83D\uDE00tail";
+        ConsoleChunker chunker = new ConsoleChunker(new StringReader(longLine + "\n"));
+        ConsoleChunker.Chunk chunk = chunker.next();
+        assertEquals(ConsoleChunker.MAX_CHUNK_CHARS - 1, chunk.text.length());
+        assertEquals("\uD83D\uDE00tail\n", chunker.next().text);
+        assertNull(chunker.next());
+    }
+}
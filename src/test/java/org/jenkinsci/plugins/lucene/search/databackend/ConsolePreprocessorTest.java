@@ -0,0 +1,58 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class ConsolePreprocessorTest {
+
+    @Test
+    public void stripsNotesEscapesAndTimestamps() {
+        assertEquals("Started by user admin",
+                ConsolePreprocessor.strip("Started by user \u001B[8mha:AAAAlh+LCAAAAAAAAP9b\u001B[0madmin"));
+        assertEquals("BUILD FAILURE", ConsolePreprocessor.strip("\u001B[1;31mBUILD FAILURE\u001B[m"));
+        assertEquals("first\nsecond", ConsolePreprocessor.strip("[2019-05-03T12:34:56.789Z] first\n12:34:57 second"));
+        assertEquals("12:34:56", ConsolePreprocessor.strip("12:34:56"));
+    }
+
+    @Test
+    public void collapsesLongRunsOnly() throws IOException {
+        StringBuilder log = new StringBuilder("a\na\n");
+        for (int i = 0; i < ConsolePreprocessor.MIN_COLLAPSED_RUN; i++) {
+            log.append("[12:00:0").append(i % 10).append("] Downloading...\n");
+        }
+        log.append("b\n");
+        ConsolePreprocessor lines = new ConsolePreprocessor(new StringReader(log.toString()), true, true);
+        assertEquals("a", lines.readLine());
+        assertEquals(1, lines.getSourceLines());
+        assertEquals("a", lines.readLine());
+        assertEquals("Downloading...", lines.readLine());
+        assertEquals(ConsolePreprocessor.MIN_COLLAPSED_RUN, lines.getSourceLines());
+        assertEquals("b", lines.readLine());
+        assertEquals(1, lines.getSourceLines());
+        assertNull(lines.readLine());
+    }
+
+    @Test
+    public void chunksKeepOriginalLineNumbers() throws IOException {
+        StringBuilder log = new StringBuilder("start\n");
+        for (int i = 0; i < 50; i++) {
+            log.append("progress\n");
+        }
+        log.append("end\n");
+        ConsoleChunker chunker = new ConsoleChunker(new ConsolePreprocessor(new StringReader(log.toString()), true,
+                true));
+        ConsoleChunker.Chunk chunk = chunker.next();
+        assertEquals("start\nprogress\n", chunk.text);
+        assertEquals(1, chunk.firstLine);
+        assertEquals(51, chunk.lastLine);
+        chunk = chunker.next();
+        assertEquals("end\n", chunk.text);
+        assertEquals(52, chunk.firstLine);
+        assertNull(chunker.next());
+    }
+}
@@ -0,0 +1,59 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class ConsoleRetentionPolicyTest {
+
+    private static ConsoleChunker.Chunk chunk(int firstLine, int lastLine, String text) {
+        return new ConsoleChunker.Chunk(text, firstLine, lastLine);
+    }
+
+    @Test
+    public void keepAllStoresEverything() {
+        assertTrue(ConsoleRetentionPolicy.KEEP_ALL.isStored(chunk(500, 599, "middle"), 100000));
+    }
+
+    @Test
+    public void shortLogsAreStoredCompletely() {
+        ConsoleRetentionPolicy policy = new ConsoleRetentionPolicy(1000, 100, 100, null);
+        assertTrue(policy.isStored(chunk(401, 500, "middle"), 1000));
+    }
+
+    @Test
+    public void longLogsKeepHeadAndTail() {
+        ConsoleRetentionPolicy policy = new ConsoleRetentionPolicy(1000, 100, 100, null);
+        assertTrue(policy.isStored(chunk(1, 100, "head"), 5000));
+        assertTrue("a chunk starting in the head", policy.isStored(chunk(51, 150, "head"), 5000));
+        assertFalse(policy.isStored(chunk(101, 200, "middle"), 5000));
+        assertFalse(policy.isStored(chunk(4801, 4900, "middle"), 5000));
+        assertTrue("a chunk ending in the tail", policy.isStored(chunk(4851, 4950, "tail"), 5000));
+        assertTrue(policy.isStored(chunk(4901, 5000, "tail"), 5000));
+    }
+
+    @Test
+    public void matchingChunksAreStoredOutsideHeadAndTail() {
+        ConsoleRetentionPolicy policy = new ConsoleRetentionPolicy(1000, 100, 100,
+                Pattern.compile("ERROR|Exception"));
+        assertTrue(policy.isStored(chunk(2001, 2100, "[INFO] ok\n[ERROR] failed\n"), 5000));
+        assertTrue(policy.isStored(chunk(2101, 2200, "java.lang.IllegalStateException: no\n"), 5000));
+        assertFalse(policy.isStored(chunk(2201, 2300, "[INFO] ok\n"), 5000));
+    }
+
+    @Test
+    public void middleChunksAreDecidedBeforeTheEndOfTheLog() {
+        ConsoleRetentionPolicy policy = new ConsoleRetentionPolicy(1000, 100, 100, Pattern.compile("ERROR"));
+        assertTrue(policy.isDecided(chunk(1, 100, "head"), 100));
+        assertTrue(policy.isDecided(chunk(501, 600, "[ERROR] failed\n"), 600));
+        // the log may still end within the limit or right after the chunk
+        assertFalse(policy.isDecided(chunk(501, 600, "middle"), 1000));
+        assertFalse(policy.isDecided(chunk(1001, 1100, "middle"), 1150));
+        assertTrue(policy.isDecided(chunk(1001, 1100, "middle"), 1200));
+        assertFalse(policy.isStored(chunk(1001, 1100, "middle"), 1200));
+        assertTrue(ConsoleRetentionPolicy.KEEP_ALL.isDecided(chunk(500, 599, "middle"), 599));
+    }
+}
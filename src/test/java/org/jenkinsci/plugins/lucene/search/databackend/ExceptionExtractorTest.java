@@ -0,0 +1,43 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class ExceptionExtractorTest {
+
+    @Test
+    public void extractsClassMessageAndTopFrames() {
+        ExceptionExtractor extractor = new ExceptionExtractor();
+        extractor.addLines("[INFO] Building foo\n"
+                + "java.io.IOException: No space left on device\n"
+                + "\tat java.io.FileOutputStream.writeBytes(Native Method)\n"
+                + "\tat java.io.FileOutputStream.write(FileOutputStream.java:326)\n");
+        // the stack trace continues in the next chunk
+        extractor.addLines("\tat org.foo.Archiver.copy(Archiver.java:42)\n"
+                + "\tat org.foo.Archiver.run(Archiver.java:12)\n"
+                + "Caused by: org.foo.QuotaExceededError\n"
+                + "ERROR: Build step failed with exception\n");
+        assertEquals(Arrays.asList("java.io.IOException", "org.foo.QuotaExceededError"),
+                Arrays.asList(extractor.getClassNames().toArray()));
+        assertEquals(Collections.singletonList("No space left on device"), extractor.getMessages());
+        assertEquals(Arrays.asList("java.io.FileOutputStream.writeBytes", "java.io.FileOutputStream.write",
+                "org.foo.Archiver.copy"), Arrays.asList(extractor.getFrames().toArray()));
+    }
+
+    @Test
+    public void ignoresClassNamesInsideOtherText() {
+        ExceptionExtractor extractor = new ExceptionExtractor();
+        extractor.addLines("[ERROR] Failed to execute goal: org.apache.maven.plugin.MojoFailureException: "
+                + "There are test failures\n"
+                + "Compiling org/foo/MyException.java\n"
+                + "see org.foo.MyException.create for details\n");
+        assertEquals(Collections.singleton("org.apache.maven.plugin.MojoFailureException"),
+                extractor.getClassNames());
+        assertTrue(extractor.getFrames().isEmpty());
+    }
+}
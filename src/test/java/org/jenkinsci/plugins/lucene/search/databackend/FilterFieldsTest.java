@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.jenkinsci.plugins.lucene.search.Field;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FilterFieldsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Query RESULT = new TermQuery(new Term(Field.RESULT.fieldName, "failure"));
+    private static final Query NODE = new TermQuery(new Term(Field.NODE.fieldName, "master"));
+    private static final Query CONSOLE = new TermQuery(new Term(Field.CONSOLE.fieldName, "error"));
+
+    private LuceneSearchBackend backend;
+
+    @Before
+    public void setUp() throws IOException {
+        backend = new LuceneSearchBackend(folder.newFolder());
+        for (int number = 1; number <= 20; number++) {
+            Map<Field, Object> values = BackendBuilds.values("job", number);
+            values.put(Field.RESULT, number % 2 == 0 ? "success" : "failure");
+            values.put(Field.NODE, number <= 10 ? "master" : "agent-1");
+            values.put(Field.CAUSE, number % 5 == 0 ? Arrays.asList("userid", "upstream")
+                    : Arrays.asList("scmtrigger"));
+            values.put(Field.DURATION, number * 1000L);
+            backend.storeBuild(values, "build " + number + "\n" + (number % 4 == 0 ? "error\n" : ""));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        backend.close();
+    }
+
+    private static BooleanQuery.Builder bool() {
+        return new BooleanQuery.Builder();
+    }
+
+    @Test
+    public void requiredFilterFieldClausesDontScore() {
+        assertEquals(new ConstantScoreQuery(RESULT), LuceneSearchBackend.toFilterClauses(RESULT));
+        assertEquals(bool().add(RESULT, BooleanClause.Occur.FILTER).add(CONSOLE, BooleanClause.Occur.MUST).build(),
+                LuceneSearchBackend.toFilterClauses(bool().add(RESULT, BooleanClause.Occur.MUST)
+                        .add(CONSOLE, BooleanClause.Occur.MUST).build()));
+        // a nested clause of filter fields only is a filter as a whole
+        Query resultOrNode = bool().add(RESULT, BooleanClause.Occur.SHOULD).add(NODE, BooleanClause.Occur.SHOULD)
+                .build();
+        assertEquals(bool().add(resultOrNode, BooleanClause.Occur.FILTER).add(CONSOLE, BooleanClause.Occur.MUST)
+                .build(), LuceneSearchBackend.toFilterClauses(bool().add(resultOrNode, BooleanClause.Occur.MUST)
+                .add(CONSOLE, BooleanClause.Occur.MUST).build()));
+    }
+
+    @Test
+    public void optionalFilterFieldClausesScoreConstantly() {
+        // still a clause that adds to the score when it matches, but without term statistics
+        assertEquals(bool().add(new ConstantScoreQuery(RESULT), BooleanClause.Occur.SHOULD)
+                .add(CONSOLE, BooleanClause.Occur.SHOULD).build(),
+                LuceneSearchBackend.toFilterClauses(bool().add(RESULT, BooleanClause.Occur.SHOULD)
+                        .add(CONSOLE, BooleanClause.Occur.SHOULD).build()));
+        assertEquals(bool().add(CONSOLE, BooleanClause.Occur.MUST)
+                .add(new ConstantScoreQuery(RESULT), BooleanClause.Occur.MUST_NOT).build(),
+                LuceneSearchBackend.toFilterClauses(bool().add(CONSOLE, BooleanClause.Occur.MUST)
+                        .add(RESULT, BooleanClause.Occur.MUST_NOT).build()));
+        assertEquals(CONSOLE, LuceneSearchBackend.toFilterClauses(CONSOLE));
+    }
+
+    @Test
+    public void keywordFieldsAreFound() {
+        // results and causes are lower case, the query is lower cased too
+        assertEquals(10, backend.getHits("result:FAILURE", false).size());
+        assertEquals(10, backend.getHits("node:master", false).size());
+        assertEquals(10, backend.getHits("node:agent-1", false).size());
+        assertEquals(4, backend.getHits("cause:upstream", false).size());
+        assertEquals(16, backend.getHits("cause:scmtrigger", false).size());
+        // on the console chunks as well, so they combine with console words
+        assertEquals(4, backend.getHits("c:error AND result:success AND cause:scmtrigger", false).size());
+    }
+
+    @Test
+    public void durationsAreNumeric() {
+        assertEquals(5, backend.getHits("duration:[1000 TO 5000]", false).size());
+        assertEquals(11, backend.getHits("duration:[10s TO *]", false).size());
+        assertEquals(1, backend.getHits("duration:20000", false).size());
+        assertEquals(2, backend.getHits("c:error AND duration:[1s TO 10s]", false).size());
+    }
+
+    @Test
+    public void filtersGoThroughTheQueryCache() {
+        LRUQueryCache cache = backend.getQueryCache();
+        long lookups = cache.getTotalCount();
+        backend.getHits("c:error", false);
+        long scoringLookups = cache.getTotalCount() - lookups;
+
+        lookups = cache.getTotalCount();
+        assertEquals(2, backend.getHits("c:error AND duration:[1s TO 10s]", false).size());
+        // the segments of the test are too small for the caching policy to keep the filter, but it is looked up
+        assertTrue(cache.getTotalCount() - lookups > scoringLookups);
+    }
+}
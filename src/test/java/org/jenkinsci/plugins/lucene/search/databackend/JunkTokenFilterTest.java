@@ -0,0 +1,151 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JunkTokenFilterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String SHA = "0123456789abcdef0123456789abcdef01234567";
+
+    /**
+     * @return the tokens with their position increments, and the increment after {@code end()} as last element
+     */
+    private static List<String> filter(JunkTokenFilter.Mode mode, String text, AtomicLong filtered)
+            throws IOException {
+        WhitespaceTokenizer tokenizer = new WhitespaceTokenizer();
+        tokenizer.setReader(new StringReader(text));
+        List<String> tokens = new ArrayList<>();
+        try (TokenStream stream = new JunkTokenFilter(tokenizer, mode, filtered)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute posInc = stream.addAttribute(PositionIncrementAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(term + "/" + posInc.getPositionIncrement());
+            }
+            stream.end();
+            tokens.add("end/" + posInc.getPositionIncrement());
+        }
+        return tokens;
+    }
+
+    @Test
+    public void classifiesJunk() {
+        assertEquals("<sha>", JunkTokenFilter.classify(SHA));
+        assertEquals("<uuid>", JunkTokenFilter.classify("123e4567-e89b-12d3-a456-426655440000"));
+        assertEquals("<hex>", JunkTokenFilter.classify("4f2a9c81b7de"));
+        assertEquals("<timestamp>", JunkTokenFilter.classify("2017-05-03T12:34:56Z"));
+        assertEquals("<timestamp>", JunkTokenFilter.classify("12:34:56.789"));
+        assertEquals("<duration>", JunkTokenFilter.classify("12.345s"));
+        assertEquals("<percent>", JunkTokenFilter.classify("99.5%"));
+        assertEquals("<number>", JunkTokenFilter.classify("1493814896000"));
+        assertEquals("<tmp>", JunkTokenFilter.classify("jenkins6042913328402740012.sh"));
+        assertEquals("<tmp>", JunkTokenFilter.classify("/var/tmp/build"));
+        assertNull(JunkTokenFilter.classify("BUILD"));
+        assertNull(JunkTokenFilter.classify("NullPointerException"));
+        assertNull(JunkTokenFilter.classify("12345"));
+        assertNull(JunkTokenFilter.classify("deadbeefcafe"));
+    }
+
+    @Test
+    public void normalizeReplacesJunkInPlace() throws IOException {
+        AtomicLong filtered = new AtomicLong();
+        assertEquals(Arrays.asList("commit/1", "<sha>/1", "at/1", "<timestamp>/1", "end/0"),
+                filter(JunkTokenFilter.Mode.NORMALIZE, "commit " + SHA + " at 12:34:56", filtered));
+        assertEquals(2, filtered.get());
+    }
+
+    @Test
+    public void dropKeepsThePositionsOfTheDroppedTokens() throws IOException {
+        AtomicLong filtered = new AtomicLong();
+        assertEquals(Arrays.asList("commit/1", "built/2", "end/0"),
+                filter(JunkTokenFilter.Mode.DROP, "commit " + SHA + " built", filtered));
+        assertEquals(1, filtered.get());
+    }
+
+    @Test
+    public void dropCarriesTrailingPositionsIntoEnd() throws IOException {
+        assertEquals(Arrays.asList("built/1", "end/2"),
+                filter(JunkTokenFilter.Mode.DROP, "built " + SHA + " 12:34:56", new AtomicLong()));
+        assertEquals(Arrays.asList("end/1"), filter(JunkTokenFilter.Mode.DROP, SHA, new AtomicLong()));
+    }
+
+    @Test
+    public void statsCountPerFilteredField() throws IOException {
+        JunkTokenStats stats = new JunkTokenStats();
+        try (Analyzer analyzer = JunkTokenFilter.wrap(new WhitespaceAnalyzer(), JunkTokenFilter.Mode.NORMALIZE,
+                Collections.singleton("c"), stats)) {
+            consume(analyzer.tokenStream("c", SHA + " and " + SHA));
+            consume(analyzer.tokenStream("c", "1493814896000"));
+            consume(analyzer.tokenStream("other", SHA));
+        }
+        assertEquals(Collections.singletonMap("c", 3L), stats.getCounts());
+    }
+
+    @Test
+    public void queriesAreNormalizedWithoutTheShas() throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (Analyzer analyzer = JunkTokenFilter.wrapForQuerying(new WhitespaceAnalyzer(),
+                Collections.singleton("c"))) {
+            try (TokenStream stream = analyzer.tokenStream("c", "at 12:34:56 " + SHA)) {
+                CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+                stream.reset();
+                while (stream.incrementToken()) {
+                    tokens.add(term.toString());
+                }
+                stream.end();
+            }
+        }
+        assertEquals(Arrays.asList("at", "<timestamp>", SHA), tokens);
+    }
+
+    @Test
+    public void normalizedJunkIsFoundByTheConsoleQuery() throws IOException {
+        Map<String, Object> options = new HashMap<>();
+        options.put(LuceneSearchBackend.JUNK_TOKENS, JunkTokenFilter.Mode.NORMALIZE.name());
+        LuceneSearchBackend backend = new LuceneSearchBackend(folder.newFolder(), options);
+        try {
+            BackendBuilds.store(backend, "job", 1, "built on 2017-05-03\ncommit " + SHA + "\n");
+            BackendBuilds.store(backend, "job", 2, "nothing to see\n");
+            assertEquals(1, backend.getHits("c:2017-05-03", false).size());
+            assertEquals(1, backend.getHits("c:\"on 2017-05-03\"", false).size());
+            assertEquals(1, backend.getHits("c:" + SHA, false).size());
+            assertEquals(1, backend.getHits(SHA, false).size());
+        } finally {
+            backend.close();
+        }
+    }
+
+    private static void consume(TokenStream stream) throws IOException {
+        try {
+            stream.reset();
+            while (stream.incrementToken()) {
+                // only counted
+            }
+            stream.end();
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.junit.Test;
+
+public class LogTokenizerTest {
+
+    private static List<String> tokens(Analyzer analyzer, String text) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream("c", text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute posInc = stream.addAttribute(PositionIncrementAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add((posInc.getPositionIncrement() == 0 ? "+" : "") + term.toString());
+            }
+            stream.end();
+        }
+        return tokens;
+    }
+
+    @Test
+    public void stackFrameKeepsIdentifiersAndEmitsParts() throws IOException {
+        assertEquals(Arrays.asList("at", "org.foo.Bar.run", "+org", "+foo", "+Bar", "+run", "Bar.java:42", "+Bar",
+                "+java", "+42"), tokens(LogAnalyzer.forIndexing(), "\tat org.foo.Bar.run(Bar.java:42)"));
+    }
+
+    @Test
+    public void queryAnalyzerDoesNotEmitParts() throws IOException {
+        assertEquals(Arrays.asList("java.lang.NullPointerException", "var/lib/jenkins"),
+                tokens(LogAnalyzer.forQuerying(), "java.lang.NullPointerException: /var/lib/jenkins."));
+    }
+
+    @Test
+    public void errorCodesAreOneToken() throws IOException {
+        try (TokenStream stream = LogAnalyzer.forQuerying().tokenStream("c", "ORA-00942: table")) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            TypeAttribute type = stream.addAttribute(TypeAttribute.class);
+            OffsetAttribute offset = stream.addAttribute(OffsetAttribute.class);
+            stream.reset();
+            stream.incrementToken();
+            assertEquals("ORA-00942", term.toString());
+            assertEquals(LogTokenizer.ERROR_CODE, type.type());
+            assertEquals(0, offset.startOffset());
+            assertEquals(9, offset.endOffset());
+            stream.end();
+        }
+    }
+
+    @Test
+    public void longInputSpansReadBuffers() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("line").append(i).append('\n');
+        }
+        List<String> tokens = tokens(LogAnalyzer.forQuerying(), text.toString());
+        assertEquals(2000, tokens.size());
+        assertEquals("line1999", tokens.get(1999));
+    }
+}
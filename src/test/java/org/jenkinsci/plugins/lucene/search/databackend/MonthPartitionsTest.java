@@ -0,0 +1,72 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Test;
+
+public class MonthPartitionsTest {
+
+    private static long time(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void monthOfStartTime() {
+        assertEquals("2017-03", MonthPartitions.monthOf(time(2017, 3, 31)));
+        assertTrue(MonthPartitions.isMonth("2017-03"));
+        assertFalse(MonthPartitions.isMonth("shard-1"));
+    }
+
+    @Test
+    public void overlaps() {
+        assertTrue(MonthPartitions.overlaps("2017-03", time(2017, 3, 31), null));
+        assertTrue(MonthPartitions.overlaps("2017-03", null, time(2017, 3, 1)));
+        assertFalse(MonthPartitions.overlaps("2017-03", time(2017, 4, 1), null));
+        assertFalse(MonthPartitions.overlaps("2017-03", null, time(2017, 3, 1) - 1));
+        assertFalse(MonthPartitions.overlaps("2017-03/shard-1", time(2017, 4, 1), null));
+        // not a month, always searched
+        assertTrue(MonthPartitions.overlaps("", time(2017, 4, 1), time(2017, 4, 2)));
+    }
+
+    @Test
+    public void expiredMonths() {
+        long now = time(2017, 3, 15);
+        assertFalse(MonthPartitions.isExpired("2017-01", 3, now));
+        assertTrue(MonthPartitions.isExpired("2016-12", 3, now));
+        assertTrue(MonthPartitions.isExpired("2016-12/shard-0", 3, now));
+        assertFalse(MonthPartitions.isExpired("2010-01", 0, now));
+    }
+
+    @Test
+    public void requiredRangesAreIntersected() {
+        BooleanQuery query = new BooleanQuery.Builder()
+                .add(NumericRangeQuery.newLongRange("starttime", 10L, 100L, true, true), BooleanClause.Occur.FILTER)
+                .add(NumericRangeQuery.newLongRange("starttime", 50L, null, false, true), BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term("c", "error")), BooleanClause.Occur.MUST)
+                .build();
+        assertArrayEquals(new Long[] { 51L, 100L }, MonthPartitions.startTimeRange(query, "starttime"));
+    }
+
+    @Test
+    public void optionalRangesDontRestrict() {
+        BooleanQuery query = new BooleanQuery.Builder()
+                .add(NumericRangeQuery.newLongRange("starttime", 10L, 100L, true, true), BooleanClause.Occur.SHOULD)
+                .add(new TermQuery(new Term("c", "error")), BooleanClause.Occur.SHOULD)
+                .build();
+        assertNull(MonthPartitions.startTimeRange(query, "starttime"));
+    }
+}
@@ -0,0 +1,108 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PageCacheResidencyTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reportsTheSizeOfTheFiles() throws IOException {
+        File file = folder.newFile();
+        FileUtils.writeByteArrayToFile(file, new byte[100000]);
+        PageCacheResidency.FileResidency residency = PageCacheResidency.of(file);
+        assertEquals(100000, residency.bytes);
+        assertTrue(residency.residentBytes >= 0 && residency.residentBytes <= residency.bytes);
+    }
+
+    @Test
+    public void largeFilesAreCheckedInWindows() throws IOException {
+        File file = folder.newFile();
+        long size = 2 * PageCacheResidency.WINDOW_BYTES + 1000;
+        FileUtils.writeByteArrayToFile(file, new byte[(int) size]);
+        PageCacheResidency.FileResidency residency = PageCacheResidency.of(file);
+        assertEquals(size, residency.bytes);
+        // resident or not by whole windows, the last one is shorter
+        long rest = residency.residentBytes % PageCacheResidency.WINDOW_BYTES;
+        assertTrue(rest == 0 || rest == 1000);
+    }
+
+    @Test
+    public void skipsDeletedFiles() throws IOException {
+        File file = folder.newFile();
+        Map<String, PageCacheResidency.FileResidency> report = new TreeMap<>();
+        PageCacheResidency.addFile(file, "kept", report);
+        assertTrue(file.delete());
+        PageCacheResidency.addFile(file, "deleted", report);
+        assertEquals(1, report.size());
+        assertTrue(report.containsKey("kept"));
+    }
+
+    @Test
+    public void directoryIsCheckedWithItsPartitions() throws IOException {
+        File indexPath = folder.newFolder();
+        FileUtils.writeByteArrayToFile(new File(indexPath, "segments_1"), new byte[100]);
+        FileUtils.writeByteArrayToFile(new File(indexPath, "2017-03/shard-1/_0.cfs"), new byte[200]);
+        Map<String, PageCacheResidency.FileResidency> report = PageCacheResidency.ofDirectory(indexPath);
+        assertEquals(2, report.size());
+        assertEquals(100, report.get("segments_1").bytes);
+        assertEquals(200, report.get("2017-03/shard-1/_0.cfs").bytes);
+    }
+
+    /**
+     * With preload the index is opened through a FileSwitchDirectory over two memory mapped directories of the
+     * same path.
+     */
+    @Test
+    public void preloadedIndexIsWrittenAndReopened() throws IOException {
+        File indexPath = folder.newFolder();
+        Map<String, Object> options = new HashMap<>();
+        options.put(LuceneSearchBackend.DIRECTORY, LuceneSearchBackend.DirectoryType.MMAP.name());
+        options.put(LuceneSearchBackend.PRELOAD, true);
+        LuceneSearchBackend backend = new LuceneSearchBackend(indexPath, options);
+        try {
+            for (int number = 1; number <= 20; number++) {
+                BackendBuilds.store(backend, "job", number, "build " + number + "\n");
+            }
+            assertEquals(20, backend.getHits("c:build", false).size());
+        } finally {
+            backend.close();
+        }
+
+        backend = new LuceneSearchBackend(indexPath, options);
+        try {
+            assertEquals(20, backend.getHits("c:build", false).size());
+            BackendBuilds.store(backend, "job", 21, "build 21\n");
+            assertEquals(21, backend.getHits("c:build", false).size());
+
+            Map<String, PageCacheResidency.FileResidency> report = backend.getResidency();
+            assertFalse(report.isEmpty());
+            boolean commitPoint = false;
+            // the index files once, although both directories list them
+            for (Map.Entry<String, PageCacheResidency.FileResidency> file : report.entrySet()) {
+                commitPoint |= file.getKey().startsWith("segments_");
+                File indexFile = new File(indexPath, file.getKey());
+                // unless a merge deleted it since
+                if (indexFile.exists()) {
+                    assertEquals(file.getKey(), indexFile.length(), file.getValue().bytes);
+                }
+            }
+            assertTrue(commitPoint);
+        } finally {
+            backend.close();
+        }
+    }
+}
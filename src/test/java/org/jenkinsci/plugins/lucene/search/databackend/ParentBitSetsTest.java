@@ -0,0 +1,51 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParentBitSetsTest {
+
+    private BuildBlocks index;
+
+    @Before
+    public void setUp() throws IOException {
+        index = new BuildBlocks();
+        index.addBuild("a#1", "a", "SUCCESS", 1, "error");
+        index.addBuild("a#2", "a", "SUCCESS", 2, "error");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    private String parentId(IndexSearcher searcher, int doc) throws IOException {
+        LeafReaderContext leaf = searcher.getIndexReader().leaves().get(0);
+        return searcher.doc(leaf.docBase + index.parentBitSets.getParent(leaf, doc)).get(BuildBlocks.ID);
+    }
+
+    @Test
+    public void chunksFindTheirParent() throws IOException {
+        IndexSearcher searcher = index.searcher();
+        assertEquals("a#1", parentId(searcher, 0));
+        assertEquals("a#1", parentId(searcher, 1));
+        assertEquals("a#2", parentId(searcher, 2));
+    }
+
+    @Test
+    public void readersWithOtherDeletionsShareTheParents() throws IOException {
+        IndexSearcher before = index.searcher();
+        index.deleteBuild("a#1");
+        IndexSearcher after = index.searcher();
+        // the same segment core, the bits are cached for the reader without a#1 first
+        assertEquals("a#2", parentId(after, 2));
+        assertEquals("a#1", parentId(before, 0));
+    }
+}
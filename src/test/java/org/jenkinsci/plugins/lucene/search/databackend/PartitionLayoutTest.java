@@ -0,0 +1,64 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+
+import org.junit.Test;
+
+public class PartitionLayoutTest {
+    private static long time(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void shardIsTheHashOfTheJob() {
+        PartitionLayout layout = new PartitionLayout(null, false, 0, 4);
+        // String.hashCode is specified, so the shard of a job doesn't change across restarts or JVMs
+        assertEquals(1, layout.shardOf("a"));
+        assertEquals(2, layout.shardOf("b"));
+        assertEquals(3, layout.shardOf("c"));
+        assertEquals(0, layout.shardOf("d"));
+        assertEquals(0, layout.shardOf(null));
+        for (int i = 0; i < 100; i++) {
+            int shard = layout.shardOf("job-" + i);
+            assertTrue(shard >= 0 && shard < 4);
+            assertEquals(shard, new PartitionLayout(null, false, 0, 4).shardOf("job-" + i));
+        }
+    }
+
+    @Test
+    public void negativeHashesGetAShard() {
+        // "polygenelubricants".hashCode() is Integer.MIN_VALUE
+        assertEquals(0, new PartitionLayout(null, false, 0, 3).shardOf("polygenelubricants"));
+        assertEquals(1, new PartitionLayout(null, false, 0, 3).shardOf("zz"));
+    }
+
+    @Test
+    public void partitionNames() {
+        long now = time(2017, 3, 15);
+        assertEquals("", new PartitionLayout(null, false, 0, 1).partitionOf("a", now, now));
+        assertEquals("shard-1", new PartitionLayout(null, false, 0, 4).partitionOf("a", now, now));
+        assertEquals("2017-03", new PartitionLayout(null, true, 0, 1).partitionOf("a", now, now));
+        assertEquals("2017-03/shard-2", new PartitionLayout(null, true, 0, 4).partitionOf("b", now, now));
+        assertNull(new PartitionLayout(null, true, 2, 4).partitionOf("b", time(2017, 1, 31), now));
+    }
+
+    @Test
+    public void partitionsOfAnotherLayoutAreIgnored() {
+        PartitionLayout layout = new PartitionLayout(null, true, 0, 4);
+        assertTrue(layout.isPartition("2017-03/shard-3"));
+        assertFalse(layout.isPartition("2017-03/shard-4"));
+        assertFalse(layout.isPartition("2017-03"));
+        assertFalse(layout.isPartition("shard-1"));
+        assertFalse(layout.isPartition("2017-03/shard-x"));
+        assertTrue(new PartitionLayout(null, false, 0, 1).isPartition(""));
+        assertFalse(new PartitionLayout(null, false, 0, 2).isPartition("shard-2"));
+    }
+}
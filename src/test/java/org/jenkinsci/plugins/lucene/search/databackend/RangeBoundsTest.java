@@ -0,0 +1,62 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Calendar;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.jenkinsci.plugins.lucene.search.Field;
+import org.junit.Test;
+
+public class RangeBoundsTest {
+
+    private static long time(int year, int month, int day, int hour, int minute, int second, int millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, second);
+        calendar.set(Calendar.MILLISECOND, millis);
+        return calendar.getTimeInMillis();
+    }
+
+    private static final long NOW = time(2017, 3, 15, 14, 35, 27, 123);
+
+    @Test
+    public void nowIsRoundedToTheMinute() throws ParseException {
+        assertEquals(time(2017, 3, 15, 14, 35, 0, 0), (long) RangeBounds.parse(Field.START_TIME, "now", false, NOW));
+        assertEquals(time(2017, 3, 15, 14, 35, 59, 999), (long) RangeBounds.parse(Field.START_TIME, "now", true, NOW));
+    }
+
+    @Test
+    public void dateMath() throws ParseException {
+        assertEquals(time(2017, 3, 8, 14, 35, 0, 0), (long) RangeBounds.parse(Field.START_TIME, "now-7d", false, NOW));
+        assertEquals(time(2017, 3, 14, 0, 0, 0, 0), (long) RangeBounds.parse(Field.START_TIME, "now-1d/d", false, NOW));
+        assertEquals(time(2017, 3, 15, 23, 59, 59, 999),
+                (long) RangeBounds.parse(Field.START_TIME, "now/d", true, NOW));
+        assertEquals(time(2017, 2, 1, 0, 0, 0, 0), (long) RangeBounds.parse(Field.START_TIME, "now-1M/M", false, NOW));
+    }
+
+    @Test
+    public void datesIncludeTheWholeUnitAsUpperBound() throws ParseException {
+        assertEquals(time(2017, 3, 1, 0, 0, 0, 0),
+                (long) RangeBounds.parse(Field.START_TIME, "2017-03-01", false, NOW));
+        assertEquals(time(2017, 3, 1, 23, 59, 59, 999),
+                (long) RangeBounds.parse(Field.START_TIME, "2017-03-01", true, NOW));
+        assertEquals(time(2017, 3, 1, 12, 30, 59, 999),
+                (long) RangeBounds.parse(Field.START_TIME, "2017-03-01T12:30", true, NOW));
+    }
+
+    @Test
+    public void numbersDurationsAndOpenBounds() throws ParseException {
+        assertEquals(100L, (long) RangeBounds.parse(Field.BUILD_NUMBER, "100", false, NOW));
+        assertEquals(600000L, (long) RangeBounds.parse(Field.DURATION, "10m", false, NOW));
+        assertEquals(90000L, (long) RangeBounds.parse(Field.DURATION, "90s", false, NOW));
+        assertNull(RangeBounds.parse(Field.BUILD_NUMBER, "*", false, NOW));
+        assertNull(RangeBounds.parse(Field.BUILD_NUMBER, null, true, NOW));
+    }
+
+    @Test(expected = ParseException.class)
+    public void invalidBound() throws ParseException {
+        RangeBounds.parse(Field.BUILD_NUMBER, "now", false, NOW);
+    }
+}
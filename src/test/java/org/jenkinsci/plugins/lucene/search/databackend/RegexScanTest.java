@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RegexScanTest {
+
+    private static final Query CONSOLE_DOCS = new BooleanQuery.Builder()
+            .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+            .add(new TermQuery(new Term("type", "build")), BooleanClause.Occur.MUST_NOT)
+            .build();
+
+    private RAMDirectory directory;
+    private IndexWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = new RAMDirectory();
+        writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        writer.close();
+        directory.close();
+    }
+
+    private void addChunk(long time, int firstLine, String console) throws IOException {
+        Document doc = new Document();
+        doc.add(new StringField("type", "chunk", StringField.Store.NO));
+        doc.add(new StoredField("console", console));
+        doc.add(new StoredField("firstline", firstLine));
+        doc.add(new NumericDocValuesField("time", time));
+        writer.addDocument(doc);
+    }
+
+    private void addBuild(long time) throws IOException {
+        Document doc = new Document();
+        doc.add(new StringField("type", "build", StringField.Store.NO));
+        doc.add(new NumericDocValuesField("time", time));
+        writer.addDocument(doc);
+    }
+
+    private List<String> find(String regex, int maxChunks, long maxMillis) throws IOException {
+        RegexScan scan = new RegexScan("console", "firstline", null, CONSOLE_DOCS, "time", maxChunks,
+                Long.MAX_VALUE, maxMillis);
+        List<String> fragments = new ArrayList<>();
+        try (DirectoryReader reader = DirectoryReader.open(writer, true)) {
+            for (RegexScan.Match match : scan.find(new IndexSearcher(reader), regex, 10, 5)) {
+                for (int i = 0; i < match.fragments.size(); i++) {
+                    fragments.add(match.lines.get(i) + ":" + match.fragments.get(i));
+                }
+            }
+        }
+        return fragments;
+    }
+
+    @Test
+    public void matchesNewestFirstWithLineNumbers() throws IOException {
+        addChunk(2000, 1, "build two\nERROR: two\n");
+        addChunk(3000, 101, "ERROR: three\n");
+        addChunk(1000, 1, "ERROR: <one>\n");
+        List<String> fragments = find("ERROR: \\S+", 100, RegexScan.DEFAULT_MAX_MILLIS);
+        assertEquals("101:<B>ERROR: three</B>", fragments.get(0));
+        assertEquals("2:<B>ERROR: two</B>", fragments.get(1));
+        assertEquals("1:<B>ERROR: &lt;one&gt;</B>", fragments.get(2));
+        assertEquals(3, fragments.size());
+    }
+
+    @Test
+    public void buildDocumentsDontUseUpTheChunkLimit() throws IOException {
+        addChunk(1000, 1, "ERROR: old\n");
+        for (int i = 0; i < 10; i++) {
+            addBuild(2000 + i);
+        }
+        assertEquals(1, find("ERROR", 1, RegexScan.DEFAULT_MAX_MILLIS).size());
+    }
+
+    @Test(timeout = 20000)
+    public void catastrophicBacktrackingIsStoppedAtTheDeadline() throws IOException {
+        addChunk(1000, 1, StringUtils.repeat("a", 40) + "!\n");
+        long start = System.currentTimeMillis();
+        assertTrue(find("(a|aa)+b", 100, 200).isEmpty());
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+
+    @Test
+    public void invalidRegexFindsNothing() throws IOException {
+        addChunk(1000, 1, "ERROR\n");
+        assertTrue(find("ERROR(", 100, RegexScan.DEFAULT_MAX_MILLIS).isEmpty());
+    }
+}
@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Test;
+
+public class RegexTrigramsTest {
+
+    private static final String FIELD = "t";
+
+    private static boolean accepts(Query query, Set<String> trigrams) {
+        if (query == null) {
+            return true;
+        }
+        if (query instanceof TermQuery) {
+            return trigrams.contains(((TermQuery) query).getTerm().text());
+        }
+        boolean any = false;
+        for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+            boolean accepted = accepts(clause.getQuery(), trigrams);
+            if (clause.getOccur() == BooleanClause.Occur.SHOULD) {
+                any |= accepted;
+            } else if (!accepted) {
+                return false;
+            } else {
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    private static boolean candidate(String regex, String text) {
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(text.substring(i, i + 3));
+        }
+        return accepts(RegexTrigrams.requiredTrigrams(regex, FIELD), trigrams);
+    }
+
+    private static void assertNeverMisses(String regex, String... texts) {
+        for (String text : texts) {
+            if (Pattern.compile(regex).matcher(text).find()) {
+                assertTrue(regex + " should accept " + text, candidate(regex, text));
+            }
+        }
+    }
+
+    @Test
+    public void matchingTextsAreAlwaysCandidates() {
+        assertNeverMisses("timeout after \\d+ms", "[INFO] timeout after 300ms", "timeout after ms");
+        assertNeverMisses("ab(cd|ef)gh", "xxabcdghxx", "abefgh");
+        assertNeverMisses("Caused by: [a-z.]+Exception", "Caused by: java.io.IOException");
+        assertNeverMisses("(?:ORA|TNS)-\\d{5}", "ORA-00942", "TNS-12541");
+        assertNeverMisses("colou?r", "color", "colour");
+        assertNeverMisses("fail(ed)?\\b", "failed", "fail here");
+        assertNeverMisses("\\Qa.b(c)\\E", "xa.b(c)x");
+        assertNeverMisses("(?<name>build)-(\\d+)\\1", "build-11build");
+    }
+
+    @Test
+    public void literalTextFiltersCandidates() {
+        assertFalse(candidate("timeout after \\d+ms", "connection refused"));
+        assertFalse(candidate("ab(cd|ef)gh", "abxxgh"));
+        assertFalse(candidate("(?:ORA|TNS)-\\d{5}", "ERROR 00942"));
+    }
+
+    @Test
+    public void unanalysableRegexesGiveNoQuery() {
+        assertNull(RegexTrigrams.requiredTrigrams("(?i)timeout", FIELD));
+        assertNull(RegexTrigrams.requiredTrigrams("\\d+ms", FIELD));
+        assertNull(RegexTrigrams.requiredTrigrams(".*", FIELD));
+        assertNull(RegexTrigrams.requiredTrigrams("unbalanced)", FIELD));
+    }
+}
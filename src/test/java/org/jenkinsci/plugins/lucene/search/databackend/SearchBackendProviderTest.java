@@ -0,0 +1,148 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jenkinsci.plugins.lucene.search.FreeTextSearchItemImplementation;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+public class SearchBackendProviderTest {
+    @Rule
+    public JenkinsRule rule = new JenkinsRule();
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SearchBackendManager manager;
+
+    @Before
+    public void setUp() {
+        manager = rule.jenkins.getExtensionList(SearchBackendManager.class).get(0);
+    }
+
+    /**
+     * Stores nothing and doesn't find anything.
+     */
+    private static class EmptyBackend extends SearchBackend<Object> {
+        @Override
+        public void storeBuild(Run<?, ?> run) {
+        }
+
+        @Override
+        public void storeRunningBuildChunk(Run<?, ?> run, int chunkNumber, int firstLine, String console) {
+        }
+
+        @Override
+        public boolean findRunIndex(Run<?, ?> run) {
+            return false;
+        }
+
+        @Override
+        public List<FreeTextSearchItemImplementation> getHits(String query, boolean searchNext) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public SearchBackend<?> reconfigure(Map<String, Object> config) {
+            return this;
+        }
+
+        @Override
+        public void removeBuild(Run<?, ?> run) {
+        }
+
+        @Override
+        public void deleteJob(String jobName) {
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void cleanAllJob(ManagerProgress progress) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @TestExtension
+    public static class FacetsOnlyProvider extends SearchBackendProvider {
+        static final String ID = "FACETS_ONLY";
+
+        @Override
+        public String getId() {
+            return ID;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Facets only";
+        }
+
+        @Override
+        public SearchBackend<?> create(Map<String, Object> config) {
+            return new EmptyBackend() {
+                @Override
+                public Set<Capability> getCapabilities() {
+                    return EnumSet.of(Capability.FACETS);
+                }
+            };
+        }
+    }
+
+    private Map<String, Object> config(String provider) throws IOException {
+        Map<String, Object> config = new HashMap<>();
+        config.put(SearchBackendManager.BACKEND, provider);
+        config.put("lucenePath", folder.newFolder());
+        return config;
+    }
+
+    @Test
+    public void providersAreFoundById() {
+        assertTrue(SearchBackendProvider.get(LuceneSearchBackendProvider.ID) instanceof LuceneSearchBackendProvider);
+        assertTrue(SearchBackendProvider.get(SolrSearchBackendProvider.ID) instanceof SolrSearchBackendProvider);
+        assertTrue(SearchBackendProvider.get(FacetsOnlyProvider.ID) instanceof FacetsOnlyProvider);
+        assertNull(SearchBackendProvider.get("MISSING"));
+    }
+
+    @Test
+    public void managerUsesTheConfiguredProvider() throws IOException {
+        manager.reconfigure(config(FacetsOnlyProvider.ID));
+        assertEquals(EnumSet.of(SearchBackend.Capability.FACETS), manager.getCapabilities());
+        assertTrue(manager.hasCapability(SearchBackend.Capability.FACETS));
+        assertFalse(manager.hasCapability(SearchBackend.Capability.NEAR_REAL_TIME));
+
+        manager.reconfigure(config(LuceneSearchBackendProvider.ID));
+        assertEquals(EnumSet.allOf(SearchBackend.Capability.class), manager.getCapabilities());
+    }
+
+    @Test
+    public void missingProviderFallsBackToLucene() throws IOException {
+        manager.reconfigure(config("MISSING"));
+        assertEquals(EnumSet.allOf(SearchBackend.Capability.class), manager.getCapabilities());
+    }
+
+    @Test
+    public void backendsHaveNoCapabilitiesByDefault() {
+        assertTrue(new EmptyBackend().getCapabilities().isEmpty());
+    }
+}
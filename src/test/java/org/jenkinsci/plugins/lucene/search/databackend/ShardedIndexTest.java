@@ -0,0 +1,48 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardedIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void buildsOfAJobStayInTheirShardAfterARestart() throws IOException {
+        File indexPath = folder.newFolder();
+        Map<String, Object> options = Collections.<String, Object>singletonMap(LuceneSearchBackend.SHARDS, 4);
+        LuceneSearchBackend backend = new LuceneSearchBackend(indexPath, options);
+        try {
+            for (String job : new String[] { "a", "b", "c", "d" }) {
+                for (int number = 1; number <= 3; number++) {
+                    BackendBuilds.store(backend, job, number, "build " + number + "\n");
+                }
+            }
+        } finally {
+            backend.close();
+        }
+        for (int shard = 0; shard < 4; shard++) {
+            assertTrue(new File(indexPath, PartitionLayout.SHARD_PREFIX + shard).isDirectory());
+        }
+        backend = new LuceneSearchBackend(indexPath, options);
+        try {
+            // the search fans out to all shards
+            assertEquals(12, backend.getHits("c:build", false).size());
+            assertEquals(3, backend.getHits("j:b", false).size());
+            // a rebuild of a build replaces it in the shard of its job
+            BackendBuilds.store(backend, "b", 1, "build 1\n");
+            assertEquals(3, backend.getHits("j:b", false).size());
+        } finally {
+            backend.close();
+        }
+    }
+}
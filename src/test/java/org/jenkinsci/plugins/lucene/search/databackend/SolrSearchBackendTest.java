@@ -0,0 +1,233 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.lucene.search.Field;
+import org.jenkinsci.plugins.lucene.search.FreeTextSearchItemImplementation;
+import org.junit.Test;
+
+public class SolrSearchBackendTest {
+
+    /**
+     * Stands in for Solr, records the update requests.
+     */
+    private static class RecordingConnection implements SolrConnection {
+        final List<List<String>> batches = new ArrayList<>();
+        final List<Map<String, String>> params = new ArrayList<>();
+
+        @Override
+        public JSONObject get(String handler, Map<String, String> params) {
+            return new JSONObject();
+        }
+
+        @Override
+        public synchronized void update(List<String> commands, Map<String, String> params) {
+            batches.add(commands);
+            this.params.add(params);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Solr that is down for the first requests.
+     */
+    private static class FailingConnection extends RecordingConnection {
+        int failures;
+
+        FailingConnection(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public synchronized void update(List<String> commands, Map<String, String> params) throws IOException {
+            if (failures > 0) {
+                failures--;
+                throw new IOException("Solr is down");
+            }
+            super.update(commands, params);
+        }
+    }
+
+    /**
+     * Solr that rejects the first request as malformed.
+     */
+    private static class RejectingConnection extends RecordingConnection {
+        boolean rejected;
+
+        @Override
+        public synchronized void update(List<String> commands, Map<String, String> params) throws IOException {
+            if (!rejected) {
+                rejected = true;
+                throw new SolrConnection.StatusException("Bad Request", 400);
+            }
+            super.update(commands, params);
+        }
+    }
+
+    private static Map<String, Object> doc(String id, String console) {
+        Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put("id", id);
+        doc.put("c_t", console);
+        return doc;
+    }
+
+    @Test
+    public void assertAllFieldsAreMapped() {
+        for (Field f : Field.values()) {
+            assertTrue("Field: " + f + " not found", SolrSearchBackend.FIELD_NAMES.containsKey(f));
+        }
+    }
+
+    @Test
+    public void updatesAreSentInBatches() throws Exception {
+        RecordingConnection connection = new RecordingConnection();
+        SolrUpdateQueue updates = new SolrUpdateQueue(connection, 1024, 0, 5000);
+        updates.deleteByQuery("build_s:\"a#1\"");
+        updates.add(doc("a#1", "[INFO] \"quoted\"\n"));
+        assertTrue(connection.batches.isEmpty());
+
+        updates.flush();
+        assertEquals(1, connection.batches.size());
+        assertEquals(Arrays.asList("\"delete\":{\"query\":\"build_s:\\\"a#1\\\"\"}",
+                "\"add\":{\"doc\":{\"id\":\"a#1\",\"c_t\":\"[INFO] \\\"quoted\\\"\\n\"}}"),
+                connection.batches.get(0));
+        // soft commits, made durable by commit
+        assertEquals("5000", connection.params.get(0).get("commitWithin"));
+        updates.commit();
+        assertEquals(Collections.singletonMap("commit", "true"), connection.params.get(1));
+    }
+
+    @Test
+    public void fullBatchIsSentRightAway() throws Exception {
+        RecordingConnection connection = new RecordingConnection();
+        SolrUpdateQueue updates = new SolrUpdateQueue(connection, 100, 0, 5000);
+        updates.add(doc("a#1/0", "short"));
+        assertTrue(connection.batches.isEmpty());
+        updates.add(doc("a#1/1", new String(new char[100]).replace('\0', 'x')));
+        assertEquals(1, connection.batches.size());
+        assertEquals(2, connection.batches.get(0).size());
+    }
+
+    @Test
+    public void failedBatchIsSentAgainBeforeNewUpdates() throws Exception {
+        FailingConnection connection = new FailingConnection(2);
+        SolrUpdateQueue updates = new SolrUpdateQueue(connection, 1024, 0, 5000);
+        updates.add(doc("a#1", "first"));
+        try {
+            updates.flush();
+            fail("the failed send is reported");
+        } catch (IOException expected) {
+            // still pending
+        }
+        try {
+            // a failed batch is sent again by the next update
+            updates.add(doc("a#2", "second"));
+            fail("the failed send is reported");
+        } catch (IOException expected) {
+            // still pending
+        }
+        assertTrue(connection.batches.isEmpty());
+
+        updates.commit();
+        assertEquals(2, connection.batches.size());
+        assertEquals(2, connection.batches.get(0).size());
+        assertTrue(connection.batches.get(0).get(0).contains("\"a#1\""));
+        assertTrue(connection.batches.get(0).get(1).contains("\"a#2\""));
+        assertEquals(Collections.singletonMap("commit", "true"), connection.params.get(1));
+    }
+
+    @Test
+    public void commitFailsWhileUpdatesCantBeSent() throws Exception {
+        FailingConnection connection = new FailingConnection(1);
+        SolrUpdateQueue updates = new SolrUpdateQueue(connection, 1024, 0, 5000);
+        updates.add(doc("a#1", "first"));
+        try {
+            updates.commit();
+            fail("the commit is not durable");
+        } catch (IOException expected) {
+            // no commit without the updates
+        }
+        assertTrue(connection.batches.isEmpty());
+        updates.commit();
+        assertEquals(1, connection.batches.get(0).size());
+    }
+
+    @Test
+    public void updatesAreDroppedWhenTooManyArePending() throws Exception {
+        FailingConnection connection = new FailingConnection(Integer.MAX_VALUE);
+        SolrUpdateQueue updates = new SolrUpdateQueue(connection, 100, 0, 5000);
+        for (int number = 1; number <= 100; number++) {
+            try {
+                updates.add(doc("a#" + number, "console"));
+            } catch (IOException expected) {
+                // Solr is down
+            }
+        }
+        connection.failures = 0;
+        updates.flush();
+        assertEquals(1, connection.batches.size());
+        List<String> sent = connection.batches.get(0);
+        // the oldest updates are kept up to the limit, the newer ones are dropped
+        assertTrue(sent.size() > 1 && sent.size() < 100);
+        assertTrue(sent.get(0).contains("\"a#1\""));
+        assertTrue(sent.get(sent.size() - 1).contains("\"a#" + sent.size() + "\""));
+
+        // once Solr is back updates are queued again
+        updates.add(doc("a#101", "console"));
+        updates.flush();
+        assertEquals(1, connection.batches.get(1).size());
+        assertTrue(connection.batches.get(1).get(0).contains("\"a#101\""));
+    }
+
+    @Test
+    public void rejectedBatchIsNotSentAgain() throws Exception {
+        RejectingConnection connection = new RejectingConnection();
+        SolrUpdateQueue updates = new SolrUpdateQueue(connection, 1024, 0, 5000);
+        updates.add(doc("a#1", "first"));
+        try {
+            updates.flush();
+            fail("the rejection is reported");
+        } catch (SolrConnection.StatusException expected) {
+            assertEquals(400, expected.getStatus());
+        }
+        updates.add(doc("a#2", "second"));
+        updates.flush();
+        assertEquals(1, connection.batches.size());
+        assertEquals(1, connection.batches.get(0).size());
+        assertTrue(connection.batches.get(0).get(0).contains("\"a#2\""));
+    }
+
+    @Test
+    public void hitsAreBuildGroupsWithFragments() {
+        JSONObject response = JSONObject.fromObject("{'grouped':{'build_s':{'matches':3,'groups':["
+                + "{'groupValue':'a#2','doclist':{'numFound':2,'docs':["
+                + "{'id':'a#2/livechunk/0','j_s':'a','n_l':2,'d_t':'#2','doctype_s':'livechunk'}]}},"
+                + "{'groupValue':'a#1','doclist':{'numFound':1,'docs':["
+                + "{'id':'a#1/0','j_s':'a','n_l':1,'d_t':'#1','doctype_s':'chunk'},"
+                + "{'id':'a#1/3','j_s':'a','n_l':1,'d_t':'#1','doctype_s':'chunk'}]}}]}},"
+                + "'highlighting':{'a#1/0':{'c_t':['an <B>error</B>']},'a#1/3':{'c_t':['<B>error</B> again']},"
+                + "'a#2/livechunk/0':{}}}");
+        List<FreeTextSearchItemImplementation> items = SolrSearchBackend.toSearchItems(response);
+        assertEquals(2, items.size());
+        assertEquals("#2 (running)", items.get(0).getSearchName());
+        assertEquals("/job/a/2/", items.get(0).getSearchUrl());
+        assertEquals("#1", items.get(1).getSearchName());
+        assertArrayEquals(new String[] { "an <B>error</B>", "<B>error</B> again" }, items.get(1).getBestFragments());
+    }
+}
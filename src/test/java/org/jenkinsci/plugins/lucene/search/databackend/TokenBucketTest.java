@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private static long millisToAcquire(TokenBucket bucket, long permits) throws InterruptedException {
+        long start = System.nanoTime();
+        bucket.acquire(permits);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    public void unlimitedNeverBlocks() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(0);
+        for (int i = 0; i < 1000; i++) {
+            bucket.acquire(Long.MAX_VALUE / 2);
+        }
+        assertTrue(millisToAcquire(bucket, Long.MAX_VALUE / 2) < 100);
+    }
+
+    @Test
+    public void largeRequestGoesIntoDebtAndTheNextOneWaits() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100);
+        assertTrue(millisToAcquire(bucket, 50) < 100);
+        // 50 tokens of debt at 100 per second
+        assertTrue(millisToAcquire(bucket, 1) >= 400);
+    }
+
+    @Test
+    public void refillsAtTheRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000);
+        bucket.acquire(1000);
+        Thread.sleep(1100);
+        assertTrue(millisToAcquire(bucket, 1) < 100);
+    }
+
+    @Test
+    public void refillIsCappedToOneSecond() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100);
+        Thread.sleep(1500);
+        bucket.acquire(100);
+        bucket.acquire(100);
+        // the idle time only saved up 100 tokens, so the second request left a debt of 100
+        assertTrue(millisToAcquire(bucket, 1) >= 800);
+    }
+
+    @Test
+    public void raisingTheRateWakesABlockedCaller() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(1);
+        bucket.acquire(1000);
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    bucket.acquire(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        waiter.start();
+        Thread.sleep(100);
+        assertTrue(waiter.isAlive());
+        bucket.setRate(0);
+        waiter.join(1000);
+        assertFalse(waiter.isAlive());
+    }
+
+    @Test
+    public void mergeLimitOnlyAppliesWhileActive() {
+        RebuildThrottle throttle = new RebuildThrottle();
+        throttle.setLimits(1000, 2, 5);
+        assertEquals(1000, throttle.getBytesPerSecond());
+        assertEquals(2, throttle.getBuildsPerSecond());
+        assertEquals(Double.POSITIVE_INFINITY, throttle.mergeRateLimiter().getMBPerSec(), 0);
+        throttle.activate();
+        assertEquals(5, throttle.mergeRateLimiter().getMBPerSec(), 0);
+        throttle.deactivate();
+        assertEquals(Double.POSITIVE_INFINITY, throttle.mergeRateLimiter().getMBPerSec(), 0);
+    }
+}
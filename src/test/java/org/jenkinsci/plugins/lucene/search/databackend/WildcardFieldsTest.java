@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.lucene.search.databackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+public class WildcardFieldsTest {
+
+    private static List<String> tokens(String field, String text) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (Analyzer analyzer = WildcardFields.wrap(new WhitespaceAnalyzer());
+                TokenStream stream = analyzer.tokenStream(field, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(term.toString());
+            }
+            stream.end();
+        }
+        return tokens;
+    }
+
+    @Test
+    public void leadingWildcardBecomesAPrefixOnTheReversedTokens() {
+        assertEquals(new PrefixQuery(new Term(WildcardFields.REVERSED, "noitpecxE")),
+                WildcardFields.rewrite("*Exception"));
+        assertEquals(new WildcardQuery(new Term(WildcardFields.REVERSED, "noitpec?xE*")),
+                WildcardFields.rewrite("*Ex?ception"));
+    }
+
+    @Test
+    public void infixWildcardBecomesASubstringTerm() {
+        assertEquals(new BooleanQuery.Builder()
+                .add(new TermQuery(new Term(WildcardFields.SUBSTRINGS, "Pointer")), BooleanClause.Occur.SHOULD)
+                .add(new WildcardQuery(new Term(WildcardFields.LONG_TOKENS, "*Pointer*")),
+                        BooleanClause.Occur.SHOULD)
+                .build(), WildcardFields.rewrite("*Pointer*"));
+    }
+
+    @Test
+    public void infixWildcardFindsTokensTooLongForSubstrings() throws IOException {
+        String longToken = "a1b2c3d4e5f6g7h8i9j0NullPointerk1l2m3n4o5p6q7r8s9t0u1v2w3x4y5z6a7b8c9";
+        assertTrue(longToken.length() > WildcardFields.MAX_SUBSTRING_TOKEN_LENGTH);
+        assertEquals(Arrays.asList(longToken), tokens(WildcardFields.LONG_TOKENS, "short " + longToken));
+
+        try (RAMDirectory directory = new RAMDirectory();
+                IndexWriter writer = new IndexWriter(directory,
+                        new IndexWriterConfig(WildcardFields.wrap(new WhitespaceAnalyzer())))) {
+            Document doc = new Document();
+            WildcardFields.addTo(doc, "found " + longToken);
+            writer.addDocument(doc);
+            doc = new Document();
+            WildcardFields.addTo(doc, "found NullPointerException");
+            writer.addDocument(doc);
+            try (DirectoryReader reader = DirectoryReader.open(writer, true)) {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                assertEquals(2, searcher.count(WildcardFields.rewrite("*Pointer*")));
+                assertEquals("only the short token has substrings", 1,
+                        searcher.count(new TermQuery(new Term(WildcardFields.SUBSTRINGS, "Pointer"))));
+            }
+        }
+    }
+
+    @Test
+    public void wildcardsThatCantBeRoutedAreLeftAlone() {
+        assertNull("no leading wildcard", WildcardFields.rewrite("Exception*"));
+        assertNull("substring too short", WildcardFields.rewrite("*ab*"));
+        assertNull("substring too long", WildcardFields.rewrite("*abcdefghijklmnopq*"));
+        assertNull("wildcards at both ends", WildcardFields.rewrite("*Null?"));
+        assertNull("escaped", WildcardFields.rewrite("*foo\\*"));
+        assertNull(WildcardFields.rewrite(""));
+    }
+
+    @Test
+    public void reversedFieldReversesTheTokens() throws IOException {
+        assertEquals(Arrays.asList("noitpecxE", "rorre"), tokens(WildcardFields.REVERSED, "Exception error"));
+    }
+
+    @Test
+    public void substringFieldHoldsTheSubstringsOfTheTokens() throws IOException {
+        List<String> tokens = tokens(WildcardFields.SUBSTRINGS, "NullPointer ab");
+        assertTrue(tokens.contains("Pointer"));
+        assertTrue(tokens.contains("llPo"));
+        assertTrue(tokens.contains("Nul"));
+        assertTrue(tokens.contains("ter"));
+        assertFalse("shorter than the minimum substring", tokens.contains("ab"));
+        assertFalse(tokens.contains("er"));
+    }
+}